@@ -0,0 +1,65 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.benchmarks;
+
+import net.sourceforge.blowfishj.crypt.BinConverter;
+import net.sourceforge.blowfishj.crypt.BlowfishECB;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scrambling 64bit IDs: encryptBlock(long) against the round trip through a
+ * fresh byte array, which is what callers had to do before.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockPrimitiveBenchmark {
+    private BlowfishECB bfe;
+    private long lId;
+
+    @Setup
+    public void setUp() {
+        bfe = new BlowfishECB(Payloads.KEY, 0, Payloads.KEY.length);
+    }
+
+    @Benchmark
+    public long encryptBlock() {
+        return bfe.encryptBlock(lId++);
+    }
+
+    @Benchmark
+    public long byteArray() {
+        byte[] block = new byte[BlowfishECB.BLOCKSIZE];
+        BinConverter.longToByteArray(lId++, block, 0);
+        bfe.encrypt(block, 0, block, 0, block.length);
+        return BinConverter.byteArrayToLong(block, 0);
+    }
+}
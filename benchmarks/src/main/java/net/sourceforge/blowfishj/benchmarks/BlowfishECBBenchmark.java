@@ -0,0 +1,82 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.benchmarks;
+
+import net.sourceforge.blowfishj.crypt.BlowfishECB;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the ECB byte array routines. Every thread works on its own
+ * instance and buffers, so running with more threads shows how well the
+ * engine scales across cores.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlowfishECBBenchmark {
+    @Param({"8", "64", "1024", "65536", "1048576", "67108864"})
+    public int size;
+
+    private BlowfishECB bfe;
+    private byte[] plain;
+    private byte[] cipher;
+    private byte[] work;
+
+    @Setup
+    public void setUp() {
+        bfe = new BlowfishECB(Payloads.KEY, 0, Payloads.KEY.length);
+        plain = Payloads.create(size);
+        cipher = new byte[size];
+        bfe.encrypt(plain, 0, cipher, 0, size);
+        work = new byte[size];
+    }
+
+    @Benchmark
+    public int encrypt() {
+        return bfe.encrypt(plain, 0, work, 0, size);
+    }
+
+    @Benchmark
+    public int decrypt() {
+        return bfe.decrypt(cipher, 0, work, 0, size);
+    }
+
+    @Benchmark
+    public int encryptParallel() {
+        return bfe.encryptParallel(plain, 0, work, 0, size);
+    }
+
+    @Benchmark
+    public int decryptParallel() {
+        return bfe.decryptParallel(cipher, 0, work, 0, size);
+    }
+}
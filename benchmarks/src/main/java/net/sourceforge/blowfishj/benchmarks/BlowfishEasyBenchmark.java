@@ -0,0 +1,80 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.benchmarks;
+
+import net.sourceforge.blowfishj.tools.BlowfishEasy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the string encryption in BlowfishEasy. The size is the payload
+ * in bytes (two per character); the hex encoded cipher text is four times
+ * larger, so the default sizes stop at 1 MB to keep the heap requirements per
+ * thread sane (pass -p size=... for more).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlowfishEasyBenchmark {
+    @Param({"8", "64", "1024", "65536", "1048576"})
+    public int size;
+
+    private BlowfishEasy bfes;
+    private String sPlain;
+    private String sCipher;
+    private Random rnd;
+
+    @Setup
+    public void setUp() {
+        bfes = new BlowfishEasy("benchmark".toCharArray());
+
+        StringBuilder sbuf = new StringBuilder(size >> 1);
+        for (int nI = 0, nC = size >> 1; nI < nC; nI++) {
+            sbuf.append((char) (nI * 31 + 7));
+        }
+        sPlain = sbuf.toString();
+
+        // (a plain generator, the SecureRandom lock is not what we measure)
+        rnd = new Random(42);
+        sCipher = bfes.encryptString(sPlain, rnd);
+    }
+
+    @Benchmark
+    public String encryptString() {
+        return bfes.encryptString(sPlain, rnd);
+    }
+
+    @Benchmark
+    public String decryptString() {
+        return bfes.decryptString(sCipher);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.benchmarks;
+
+import net.sourceforge.blowfishj.crypt.BinConverter;
+import net.sourceforge.blowfishj.crypt.BlowfishECB;
+import net.sourceforge.blowfishj.crypt.BlowfishKeySchedule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keys expanded per second: the key setup of BlowfishECB, which keeps the
+ * halves in locals, against the former one going through a block buffer and
+ * encryptPrv() for every one of the 521 blocks. Plus a batch of keys expanded
+ * one after the other against BlowfishKeySchedule.expandAll() (the scores of
+ * those two are batches per second).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeySetupBenchmark {
+    private static final int BATCH = 256;
+
+    private BlowfishECB bfe;
+    private BlockBufECB bbe;
+    private byte[][] keys;
+
+    @Setup
+    public void setUp() {
+        bfe = new BlowfishECB(Payloads.KEY, 0, Payloads.KEY.length);
+        bbe = new BlockBufECB();
+        keys = new byte[BATCH][];
+        for (int nI = 0; nI < BATCH; nI++) {
+            keys[nI] = Payloads.create(16);
+            keys[nI][0] = (byte) nI;
+        }
+    }
+
+    @Benchmark
+    public BlowfishECB registers() {
+        bfe.initialize(Payloads.KEY, 0, Payloads.KEY.length);
+        return bfe;
+    }
+
+    @Benchmark
+    public BlowfishECB blockBuffer() {
+        bbe.rekey(Payloads.KEY, 0, Payloads.KEY.length);
+        return bbe;
+    }
+
+    @Benchmark
+    public BlowfishKeySchedule batchSequential() {
+        BlowfishKeySchedule last = null;
+        for (byte[] key : keys) {
+            last = new BlowfishKeySchedule(key, 0, key.length);
+        }
+        return last;
+    }
+
+    @Benchmark
+    public BlowfishKeySchedule batchParallel() throws InterruptedException, ExecutionException {
+        List<Future<BlowfishKeySchedule>> schedules = BlowfishKeySchedule.expandAll(keys);
+        BlowfishKeySchedule last = null;
+        for (Future<BlowfishKeySchedule> ks : schedules) {
+            last = ks.get();
+        }
+        return last;
+    }
+
+    // the key setup as it used to be, on the live boxes of the instance
+
+    static final class BlockBufECB extends BlowfishECB {
+        private final byte[] blockBuf = new byte[BLOCKSIZE];
+
+        BlockBufECB() {
+            super(new byte[0], 0, 0);
+        }
+
+        void rekey(
+                byte[] key,
+                int nOfs,
+                int nLen) {
+            // (an empty key restores the initial boxes)
+            initialize(key, 0, 0);
+
+            int[] pbox = getPbox();
+            int[][] sboxes = {getSbox1(), getSbox2(), getSbox3(), getSbox4()};
+
+            int nBuild = 0;
+            int nPos = nOfs;
+            for (int nI = 0; nI < pbox.length; nI++) {
+                for (int nJ = 0; nJ < 4; nJ++) {
+                    nBuild = nBuild << 8 | key[nPos] & 0x0ff;
+                    if (++nPos == nOfs + nLen) {
+                        nPos = nOfs;
+                    }
+                }
+                pbox[nI] ^= nBuild;
+            }
+
+            for (int nI = 0; nI < BLOCKSIZE; nI++) {
+                blockBuf[nI] = 0;
+            }
+
+            for (int nI = 0; nI < pbox.length; nI += 2) {
+                encryptPrv(blockBuf, 0, blockBuf, 0, BLOCKSIZE);
+                pbox[nI] = BinConverter.byteArrayToInt(blockBuf, 0);
+                pbox[nI + 1] = BinConverter.byteArrayToInt(blockBuf, 4);
+            }
+
+            for (int[] sbox : sboxes) {
+                for (int nI = 0; nI < sbox.length; nI += 2) {
+                    encryptPrv(blockBuf, 0, blockBuf, 0, BLOCKSIZE);
+                    sbox[nI] = BinConverter.byteArrayToInt(blockBuf, 0);
+                    sbox[nI + 1] = BinConverter.byteArrayToInt(blockBuf, 4);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.benchmarks;
+
+import net.sourceforge.blowfishj.crypt.BlowfishECB;
+import net.sourceforge.blowfishj.crypt.BlowfishKeySchedule;
+import net.sourceforge.blowfishj.crypt.BlowfishKeyScheduleStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Many tenants, one message each: engines on heap schedules against engines
+ * on slots of a BlowfishKeyScheduleStore.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyStoreBenchmark {
+    private static final int SIZE = 256;
+
+    @Param({"1024", "65536"})
+    public int tenants;
+
+    private BlowfishKeySchedule[] schedules;
+    private BlowfishKeyScheduleStore store;
+    private int[] slots;
+    private byte[] plain;
+    private byte[] work;
+    private int nTenant;
+
+    @Setup
+    public void setUp() {
+        schedules = new BlowfishKeySchedule[tenants];
+        store = new BlowfishKeyScheduleStore(4096);
+        slots = new int[tenants];
+        for (int nI = 0; nI < tenants; nI++) {
+            byte[] key = Payloads.create(16);
+            key[0] = (byte) nI;
+            key[1] = (byte) (nI >> 8);
+            schedules[nI] = new BlowfishKeySchedule(key, 0, key.length);
+            slots[nI] = store.put(schedules[nI]);
+        }
+        plain = Payloads.create(SIZE);
+        work = new byte[SIZE];
+    }
+
+    private int nextTenant() {
+        // (a stride, so the schedules come from all over the place)
+        nTenant = (nTenant + 7919) % tenants;
+        return nTenant;
+    }
+
+    @Benchmark
+    public int heap() {
+        return new BlowfishECB(schedules[nextTenant()]).encrypt(plain, 0, work, 0, SIZE);
+    }
+
+    @Benchmark
+    public int offHeap() {
+        return store.engine(slots[nextTenant()]).encrypt(plain, 0, work, 0, SIZE);
+    }
+}
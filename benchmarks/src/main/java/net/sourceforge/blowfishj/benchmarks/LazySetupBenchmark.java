@@ -0,0 +1,78 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.benchmarks;
+
+import net.sourceforge.blowfishj.crypt.BlowfishCBC;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creating instances with and without lazy key setup, plus what the check
+ * for a pending key costs once the key is expanded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LazySetupBenchmark {
+    private static final int SIZE = 64;
+
+    private BlowfishCBC eager;
+    private BlowfishCBC lazy;
+    private byte[] plain;
+    private byte[] work;
+
+    @Setup
+    public void setUp() {
+        eager = new BlowfishCBC(Payloads.KEY, 0, Payloads.KEY.length, 0L);
+        lazy = new BlowfishCBC(Payloads.KEY, 0, Payloads.KEY.length, 0L, true);
+        plain = Payloads.create(SIZE);
+        work = new byte[SIZE];
+    }
+
+    @Benchmark
+    public BlowfishCBC createEager() {
+        return new BlowfishCBC(Payloads.KEY, 0, Payloads.KEY.length, 0L);
+    }
+
+    @Benchmark
+    public BlowfishCBC createLazy() {
+        return new BlowfishCBC(Payloads.KEY, 0, Payloads.KEY.length, 0L, true);
+    }
+
+    @Benchmark
+    public int encryptEager() {
+        return eager.encrypt(plain, 0, work, 0, SIZE);
+    }
+
+    @Benchmark
+    public int encryptLazy() {
+        return lazy.encrypt(plain, 0, work, 0, SIZE);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.benchmarks;
+
+import java.io.OutputStream;
+
+/**
+ * Shared test data for the benchmarks.
+ */
+final class Payloads {
+    /**
+     * key material used by all benchmarks (the exact value doesn't matter)
+     */
+    static final byte[] KEY =
+            {
+                    (byte) 0x1c, (byte) 0x58, (byte) 0x7f, (byte) 0x1c,
+                    (byte) 0x13, (byte) 0x92, (byte) 0x4f, (byte) 0xef,
+                    (byte) 0x01, (byte) 0x23, (byte) 0x45, (byte) 0x67,
+                    (byte) 0x89, (byte) 0xab, (byte) 0xcd, (byte) 0xef
+            };
+
+    private Payloads() {
+    }
+
+    /**
+     * Creates a buffer filled with a simple, non-zero pattern.
+     *
+     * @param nSize number of bytes
+     * @return the buffer
+     */
+    static byte[] create(
+            int nSize) {
+        byte[] result = new byte[nSize];
+
+        for (int nI = 0; nI < nSize; nI++) {
+            result[nI] = (byte) (nI * 31 + 7);
+        }
+        return result;
+    }
+
+    /**
+     * Output stream dropping everything, so the wrapped stream doesn't
+     * dominate the measurement.
+     */
+    static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(
+                int nByte) {
+        }
+
+        @Override
+        public void write(
+                byte[] buf,
+                int nOfs,
+                int nLen) {
+        }
+    }
+}
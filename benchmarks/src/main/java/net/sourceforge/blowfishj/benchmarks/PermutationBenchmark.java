@@ -0,0 +1,67 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.benchmarks;
+
+import net.sourceforge.blowfishj.crypt.BlowfishPermutation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Values permuted per second, for a domain just above a power of two (where
+ * cycle walking hurts the most) and for 32bit numbers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermutationBenchmark {
+    @Param({"1000000", "1048577", "4294967296"})
+    public long domain;
+
+    private BlowfishPermutation bp;
+    private long lValue;
+
+    @Setup
+    public void setUp() {
+        bp = new BlowfishPermutation(Payloads.KEY, 0, Payloads.KEY.length, domain);
+    }
+
+    @Benchmark
+    public long permute() {
+        lValue = lValue + 1 == domain ? 0 : lValue + 1;
+        return bp.permute(lValue);
+    }
+
+    @Benchmark
+    public long invert() {
+        lValue = lValue + 1 == domain ? 0 : lValue + 1;
+        return bp.invert(lValue);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.benchmarks;
+
+import net.sourceforge.blowfishj.crypt.BlowfishCBC;
+import net.sourceforge.blowfishj.crypt.BlowfishCBCPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Short messages under changing keys: a new instance per message, rekeying
+ * one instance in place and borrowing from a BlowfishCBCPool. Run with
+ * -prof gc to see the allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RekeyBenchmark {
+    private static final long IV = 0x0102030405060708L;
+    private static final int KEYS = 64;
+    private static final int SIZE = 256;
+
+    private byte[][] keys;
+    private byte[] plain;
+    private byte[] work;
+    private BlowfishCBC bfc;
+    private BlowfishCBCPool pool;
+    private int nKey;
+
+    @Setup
+    public void setUp() {
+        keys = new byte[KEYS][];
+        for (int nI = 0; nI < KEYS; nI++) {
+            keys[nI] = Payloads.create(16);
+            keys[nI][0] = (byte) nI;
+        }
+        plain = Payloads.create(SIZE);
+        work = new byte[SIZE];
+        bfc = new BlowfishCBC(keys[0], 0, keys[0].length, IV);
+        pool = new BlowfishCBCPool(4);
+    }
+
+    private byte[] nextKey() {
+        nKey = (nKey + 1) % KEYS;
+        return keys[nKey];
+    }
+
+    @Benchmark
+    public int newInstance() {
+        byte[] key = nextKey();
+        return new BlowfishCBC(key, 0, key.length, IV).encrypt(plain, 0, work, 0, SIZE);
+    }
+
+    @Benchmark
+    public int rekey() {
+        byte[] key = nextKey();
+        bfc.initialize(key, 0, key.length);
+        bfc.setCBCIV(IV);
+        return bfc.encrypt(plain, 0, work, 0, SIZE);
+    }
+
+    @Benchmark
+    public int pooled() {
+        byte[] key = nextKey();
+        BlowfishCBC borrowed = pool.borrow(key, 0, key.length, IV);
+        try {
+            return borrowed.encrypt(plain, 0, work, 0, SIZE);
+        } finally {
+            pool.release(borrowed);
+        }
+    }
+}
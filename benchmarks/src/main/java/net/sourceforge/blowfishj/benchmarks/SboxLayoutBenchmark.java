@@ -0,0 +1,89 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.benchmarks;
+
+import net.sourceforge.blowfishj.crypt.BlowfishFlatECB;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packed 1024 entry s-box table (BlowfishFlatECB) against the four separate
+ * s-boxes of BlowfishECB, both with the single block loop and with the
+ * interleaved one BlowfishECB uses for larger buffers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SboxLayoutBenchmark {
+    @Param({"64", "1024", "65536"})
+    public int size;
+
+    private BlowfishFlatECB flat;
+    private ECBKernelBenchmark.SingleBlockECB split;
+    private byte[] plain;
+    private byte[] cipher;
+    private byte[] work;
+
+    @Setup
+    public void setUp() {
+        flat = new BlowfishFlatECB(Payloads.KEY, 0, Payloads.KEY.length);
+        split = new ECBKernelBenchmark.SingleBlockECB(Payloads.KEY);
+        plain = Payloads.create(size);
+        cipher = new byte[size];
+        flat.encrypt(plain, 0, cipher, 0, size);
+        work = new byte[size];
+    }
+
+    @Benchmark
+    public int encryptFlat() {
+        return flat.encrypt(plain, 0, work, 0, size);
+    }
+
+    @Benchmark
+    public int encryptSplit() {
+        return split.encryptSingle(plain, 0, work, 0, size);
+    }
+
+    @Benchmark
+    public int encryptSplitInterleaved() {
+        return split.encrypt(plain, 0, work, 0, size);
+    }
+
+    @Benchmark
+    public int decryptFlat() {
+        return flat.decrypt(cipher, 0, work, 0, size);
+    }
+
+    @Benchmark
+    public int decryptSplit() {
+        return split.decryptSingle(cipher, 0, work, 0, size);
+    }
+}
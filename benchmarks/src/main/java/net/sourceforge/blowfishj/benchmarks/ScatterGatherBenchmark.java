@@ -0,0 +1,119 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.benchmarks;
+
+import net.sourceforge.blowfishj.crypt.BlowfishCBC;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A network frame arriving as direct buffers of odd sizes: encrypting the
+ * ByteBuffer[] sequence directly against coalescing it into a byte array
+ * first (and spreading the result back out), which is what callers had to
+ * do before.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScatterGatherBenchmark {
+    @Param({"1500", "65536"})
+    public int frameSize;
+
+    private BlowfishCBC bfc;
+    private ByteBuffer[] srcs;
+    private ByteBuffer[] dsts;
+
+    @Setup
+    public void setUp() {
+        bfc = new BlowfishCBC(Payloads.KEY, 0, Payloads.KEY.length, 0L);
+
+        // (split into pieces of 13 and 500 or so bytes, so nearly every
+        // buffer edge cuts through a block)
+
+        int nCount = 0;
+        for (int nRest = frameSize, nI = 0; nRest > 0; nI++) {
+            nRest -= pieceSize(nI);
+            nCount++;
+        }
+
+        srcs = new ByteBuffer[nCount];
+        dsts = new ByteBuffer[nCount];
+        for (int nRest = frameSize, nI = 0; nI < nCount; nI++) {
+            int nSize = Math.min(nRest, pieceSize(nI));
+            srcs[nI] = ByteBuffer.allocateDirect(nSize);
+            dsts[nI] = ByteBuffer.allocateDirect(nSize);
+            nRest -= nSize;
+        }
+    }
+
+    private static int pieceSize(
+            int nI) {
+        return nI % 2 == 0 ? 13 : 501;
+    }
+
+    private void rewind() {
+        for (int nI = 0; nI < srcs.length; nI++) {
+            srcs[nI].clear();
+            dsts[nI].clear();
+        }
+    }
+
+    @Benchmark
+    public long scatterGather() {
+        rewind();
+        return bfc.encrypt(srcs, dsts);
+    }
+
+    @Benchmark
+    public long coalesce() {
+        rewind();
+
+        byte[] frame = new byte[frameSize];
+        int nPos = 0;
+        for (ByteBuffer src : srcs) {
+            int nSize = src.remaining();
+            src.get(frame, nPos, nSize);
+            nPos += nSize;
+        }
+
+        int nLen = bfc.encrypt(frame, 0, frame, 0, frame.length);
+
+        nPos = 0;
+        for (ByteBuffer dst : dsts) {
+            int nSize = dst.remaining();
+            dst.put(frame, nPos, nSize);
+            nPos += nSize;
+        }
+
+        return nLen;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.benchmarks;
+
+import net.sourceforge.blowfishj.streams.BlowfishInputStream;
+import net.sourceforge.blowfishj.streams.BlowfishOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of BlowfishOutputStream and BlowfishInputStream for a complete
+ * message, i.e. including the key hashing, key setup, IV and padding costs
+ * which every stream pays once.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamBenchmark {
+    private static final int CHUNK_SIZE = 8192;
+
+    @Param({"8", "64", "1024", "65536", "1048576", "67108864"})
+    public int size;
+
+    private byte[] plain;
+    private byte[] enc;
+    private byte[] chunk;
+
+    @Setup
+    public void setUp() throws IOException {
+        plain = Payloads.create(size);
+        chunk = new byte[CHUNK_SIZE];
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(size + 16);
+
+        try (BlowfishOutputStream bfos = new BlowfishOutputStream(
+                Payloads.KEY,
+                0,
+                Payloads.KEY.length,
+                baos)) {
+            bfos.write(plain, 0, plain.length);
+        }
+        enc = baos.toByteArray();
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        try (BlowfishOutputStream bfos = new BlowfishOutputStream(
+                Payloads.KEY,
+                0,
+                Payloads.KEY.length,
+                new Payloads.NullOutputStream())) {
+            bfos.write(plain, 0, plain.length);
+        }
+    }
+
+    @Benchmark
+    public long read() throws IOException {
+        long lTotal = 0;
+
+        try (BlowfishInputStream bfis = new BlowfishInputStream(
+                Payloads.KEY,
+                0,
+                Payloads.KEY.length,
+                new ByteArrayInputStream(enc))) {
+            int nRead;
+            while ((nRead = bfis.read(chunk, 0, chunk.length)) != -1) {
+                lTotal += nRead;
+            }
+        }
+        return lTotal;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.benchmarks;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the selected benchmarks once per thread count. Accepts the usual JMH
+ * command line, the thread counts are taken from the system property
+ * "benchmark.threads" (comma separated, defaults to 1, 2, 4, ... up to the
+ * number of available processors).
+ */
+public final class ThreadSweep {
+    private ThreadSweep() {
+    }
+
+    /**
+     * the application entry point
+     *
+     * @param args JMH command line
+     */
+    public static void main(
+            String... args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions cmdOpts = new CommandLineOptions(args);
+
+        for (int nThreads : threadCounts()) {
+            new Runner(new OptionsBuilder()
+                    .parent(cmdOpts)
+                    .threads(nThreads)
+                    .build()).run();
+        }
+    }
+
+    private static int[] threadCounts() {
+        String sThreads = System.getProperty("benchmark.threads");
+
+        if (sThreads == null) {
+            int nCPUs = Runtime.getRuntime().availableProcessors();
+            int nCount = 1;
+            for (int nT = 1; nT < nCPUs; nT <<= 1) {
+                nCount++;
+            }
+
+            int[] result = new int[nCount];
+            for (int nI = 0, nT = 1; nI < nCount; nI++, nT <<= 1) {
+                result[nI] = Math.min(nT, nCPUs);
+            }
+            return result;
+        }
+
+        String[] parts = sThreads.split(",");
+        int[] result = new int[parts.length];
+        for (int nI = 0; nI < parts.length; nI++) {
+            result[nI] = Integer.parseInt(parts[nI].trim());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.benchmarks;
+
+import net.sourceforge.blowfishj.crypt.BlowfishECB;
+import net.sourceforge.blowfishj.crypt.BlowfishVectorECB;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vector API engine against the scalar one. Needs Java 17+, without it (or
+ * with the library built on an older JDK) both sides run the scalar code.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class VectorBenchmark {
+    @Param({"1024", "65536", "1048576"})
+    public int size;
+
+    private BlowfishECB scalar;
+    private BlowfishVectorECB vector;
+    private byte[] plain;
+    private byte[] cipher;
+    private byte[] work;
+
+    @Setup
+    public void setUp() {
+        scalar = new BlowfishECB(Payloads.KEY, 0, Payloads.KEY.length);
+        vector = new BlowfishVectorECB(Payloads.KEY, 0, Payloads.KEY.length);
+        if (!BlowfishVectorECB.isVectorized()) {
+            System.err.println("Vector API not available, measuring the scalar code twice");
+        }
+        plain = Payloads.create(size);
+        cipher = new byte[size];
+        scalar.encrypt(plain, 0, cipher, 0, size);
+        work = new byte[size];
+    }
+
+    @Benchmark
+    public int encryptScalar() {
+        return scalar.encrypt(plain, 0, work, 0, size);
+    }
+
+    @Benchmark
+    public int encryptVector() {
+        return vector.encrypt(plain, 0, work, 0, size);
+    }
+
+    @Benchmark
+    public int decryptScalar() {
+        return scalar.decrypt(cipher, 0, work, 0, size);
+    }
+
+    @Benchmark
+    public int decryptVector() {
+        return vector.decrypt(cipher, 0, work, 0, size);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.benchmarks;
+
+import net.sourceforge.blowfishj.crypt.BlowfishECB;
+import net.sourceforge.blowfishj.crypt.BlowfishKeySchedule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Weak key detection: the sorting check of BlowfishECB against comparing all
+ * the pairs (the former implementation), plus screening a batch of keys.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WeakKeyBenchmark {
+    private static final int BATCH = 1024;
+
+    private BlowfishKeySchedule ks;
+    private int[][] sboxes;
+    private byte[][] keys;
+
+    @Setup
+    public void setUp() {
+        ks = new BlowfishKeySchedule(Payloads.KEY, 0, Payloads.KEY.length);
+        sboxes = new int[][]{ks.getSbox1(), ks.getSbox2(), ks.getSbox3(), ks.getSbox4()};
+        keys = new byte[BATCH][];
+        for (int nI = 0; nI < BATCH; nI++) {
+            keys[nI] = Payloads.create(16 + nI % 40);
+            keys[nI][0] = (byte) nI;
+            keys[nI][1] = (byte) (nI >> 8);
+        }
+    }
+
+    @Benchmark
+    public boolean sorted() {
+        // (a fresh instance, the result gets cached otherwise)
+        return new BlowfishECB(ks).weakKeyCheck();
+    }
+
+    @Benchmark
+    public boolean pairwise() {
+        for (int[] sbox : sboxes) {
+            for (int nI = 0; nI < sbox.length - 1; nI++) {
+                for (int nJ = nI + 1; nJ < sbox.length; nJ++) {
+                    if (sbox[nI] == sbox[nJ]) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    @Benchmark
+    public boolean[] batch() {
+        return BlowfishECB.weakKeyCheck(keys);
+    }
+}
@@ -0,0 +1,491 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.crypt;
+
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Password hashing with bcrypt, i.e. the EksBlowfish key setup of Provos and
+ * Mazieres, which repeats the regular Blowfish key expansion 2^cost times.
+ * Hashes come in the usual modular crypt format, like
+ * <code>$2b$10$</code> followed by 22 characters of salt and 31 characters
+ * of hash. Passwords are taken as UTF-8, of which (plus the terminating
+ * zero) only the first 72 bytes count. The prefixes $2a$ and $2y$ are
+ * accepted as well and treated just like $2b$.
+ */
+public final class BCrypt {
+    /**
+     * lowest cost factor allowed
+     */
+    public static final int MIN_COST = 4;
+
+    /**
+     * highest cost factor allowed
+     */
+    public static final int MAX_COST = 31;
+
+    /**
+     * cost factor gensalt() uses if none is given
+     */
+    public static final int DEFAULT_COST = 10;
+
+    private static final int SALT_SIZE = 16;
+    private static final int MAX_KEY_SIZE = 72;
+
+    // "OrpheanBeholderScryDoubt", encrypted 64 times to get the hash
+    private static final int[] CTEXT =
+            {
+                    0x4f727068, 0x65616e42, 0x65686f6c, 0x64657253, 0x63727944, 0x6f756274
+            };
+
+    // (the bcrypt flavor of base64)
+    private static final char[] BASE64 =
+            "./ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+    private static final byte[] BASE64_INDEX = new byte[128];
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static SecureRandom _srnd = new SecureRandom();
+
+    static {
+        for (int nI = 0; nI < BASE64_INDEX.length; nI++) {
+            BASE64_INDEX[nI] = -1;
+        }
+        for (int nI = 0; nI < BASE64.length; nI++) {
+            BASE64_INDEX[BASE64[nI]] = (byte) nI;
+        }
+    }
+
+    private BCrypt() {
+    }
+
+    /**
+     * Creates a new salt with the default cost.
+     *
+     * @return salt, e.g. "$2b$10$" plus 22 characters
+     */
+    public static String gensalt() {
+        return gensalt(DEFAULT_COST);
+    }
+
+    /**
+     * Creates a new salt.
+     *
+     * @param nCost cost factor, between MIN_COST and MAX_COST
+     * @return salt, e.g. "$2b$12$" plus 22 characters
+     */
+    public static String gensalt(
+            int nCost) {
+        return gensalt(nCost, _srnd);
+    }
+
+    /**
+     * Creates a new salt with the given random generator.
+     *
+     * @param nCost cost factor, between MIN_COST and MAX_COST
+     * @param rnd   where to get the salt bytes from
+     * @return salt, e.g. "$2b$12$" plus 22 characters
+     */
+    public static String gensalt(
+            int nCost,
+            SecureRandom rnd) {
+        checkCost(nCost);
+
+        byte[] salt = new byte[SALT_SIZE];
+        rnd.nextBytes(salt);
+
+        StringBuilder sb = new StringBuilder(29);
+        sb.append("$2b$");
+        sb.append((char) ('0' + nCost / 10));
+        sb.append((char) ('0' + nCost % 10));
+        sb.append('$');
+        encodeBase64(salt, salt.length, sb);
+
+        return sb.toString();
+    }
+
+    /**
+     * Hashes a password with a new salt.
+     *
+     * @param password the password
+     * @param nCost    cost factor, between MIN_COST and MAX_COST
+     * @return the hash, including prefix, cost and salt
+     */
+    public static String hash(
+            String password,
+            int nCost) {
+        return hash(password, gensalt(nCost));
+    }
+
+    /**
+     * Hashes a password.
+     *
+     * @param password the password
+     * @param salt     salt from gensalt(), or a complete hash to take the
+     *                 prefix, cost and salt of
+     * @return the hash, including prefix, cost and salt
+     * @throws IllegalArgumentException if the salt is malformed
+     */
+    public static String hash(
+            String password,
+            String salt) {
+        if (salt.length() < 29
+                || salt.charAt(0) != '$'
+                || salt.charAt(1) != '2'
+                || "aby".indexOf(salt.charAt(2)) == -1
+                || salt.charAt(3) != '$'
+                || salt.charAt(6) != '$') {
+            throw new IllegalArgumentException("invalid salt");
+        }
+
+        int nCost = digit(salt.charAt(4)) * 10 + digit(salt.charAt(5));
+        checkCost(nCost);
+
+        byte[] saltBytes = decodeBase64(salt.substring(7, 29));
+
+        // the key is the password including its terminating zero
+
+        byte[] passw = password.getBytes(UTF_8);
+        byte[] key = new byte[Math.min(passw.length + 1, MAX_KEY_SIZE)];
+        System.arraycopy(passw, 0, key, 0, Math.min(passw.length, key.length));
+
+        byte[] raw = crypt(key, saltBytes, nCost);
+
+        zero(passw);
+        zero(key);
+
+        StringBuilder sb = new StringBuilder(60);
+        sb.append(salt, 0, 29);
+        encodeBase64(raw, raw.length - 1, sb);
+
+        return sb.toString();
+    }
+
+    /**
+     * Checks a password against a hash. The comparison takes the same time
+     * no matter where the hashes differ.
+     *
+     * @param password the password
+     * @param hash     the hash, as made by hash()
+     * @return true if the password matches
+     * @throws IllegalArgumentException if the hash is malformed
+     */
+    public static boolean verify(
+            String password,
+            String hash) {
+        String test = hash(password, hash);
+
+        if (test.length() != hash.length()) {
+            return false;
+        }
+
+        int nDiff = 0;
+        for (int nI = 0; nI < test.length(); nI++) {
+            nDiff |= test.charAt(nI) ^ hash.charAt(nI);
+        }
+
+        return nDiff == 0;
+    }
+
+    /**
+     * Checks a batch of passwords against their hashes on the default
+     * fork/join pool, e.g. for a pile of login attempts.
+     *
+     * @param passwords the passwords
+     * @param hashes    the hashes, one for each password
+     * @return for every password, true if it matches
+     * @throws IllegalArgumentException if any hash is malformed
+     */
+    public static boolean[] verify(
+            String[] passwords,
+            String[] hashes) {
+        return verify(passwords, hashes, BlowfishECB.DefaultPool.POOL);
+    }
+
+    /**
+     * Checks a batch of passwords against their hashes on the given pool.
+     *
+     * @param passwords the passwords
+     * @param hashes    the hashes, one for each password
+     * @param pool      the pool to run on
+     * @return for every password, true if it matches
+     * @throws IllegalArgumentException if any hash is malformed
+     */
+    public static boolean[] verify(
+            String[] passwords,
+            String[] hashes,
+            ForkJoinPool pool) {
+        if (passwords.length != hashes.length) {
+            throw new IllegalArgumentException("number of passwords and hashes differ");
+        }
+
+        boolean[] result = new boolean[passwords.length];
+
+        pool.invoke(new VerifyTask(passwords, hashes, result, 0, passwords.length));
+
+        return result;
+    }
+
+    // checks a range of passwords, every single one is worth its own task
+
+    private static final class VerifyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] passwords;
+        private final String[] hashes;
+        private final boolean[] result;
+        private final int nFrom;
+        private final int nTo;
+
+        VerifyTask(
+                String[] passwords,
+                String[] hashes,
+                boolean[] result,
+                int nFrom,
+                int nTo) {
+            this.passwords = passwords;
+            this.hashes = hashes;
+            this.result = result;
+            this.nFrom = nFrom;
+            this.nTo = nTo;
+        }
+
+        @Override
+        protected void compute() {
+            if (nTo - nFrom == 1) {
+                result[nFrom] = verify(passwords[nFrom], hashes[nFrom]);
+                return;
+            }
+            if (nTo == nFrom) {
+                return;
+            }
+
+            int nMid = nFrom + nTo >>> 1;
+
+            invokeAll(
+                    new VerifyTask(passwords, hashes, result, nFrom, nMid),
+                    new VerifyTask(passwords, hashes, result, nMid, nTo));
+        }
+    }
+
+    // the actual bcrypt, returns the 24 bytes of encrypted text
+
+    static byte[] crypt(
+            byte[] key,
+            byte[] salt,
+            int nCost) {
+        int[] p = (int[]) BlowfishECB.PBOX_INIT.clone();
+        int[] sbox1 = (int[]) BlowfishECB.SBOX_INIT_1.clone();
+        int[] sbox2 = (int[]) BlowfishECB.SBOX_INIT_2.clone();
+        int[] sbox3 = (int[]) BlowfishECB.SBOX_INIT_3.clone();
+        int[] sbox4 = (int[]) BlowfishECB.SBOX_INIT_4.clone();
+
+        // both the key and the salt get cycled over the P-array
+
+        int[] keyWords = cycle(key);
+        int[] saltWords = cycle(salt);
+
+        expand(p, sbox1, sbox2, sbox3, sbox4, keyWords, saltWords);
+
+        for (long lI = 1L << nCost; lI > 0; lI--) {
+            expand(p, sbox1, sbox2, sbox3, sbox4, keyWords, null);
+            expand(p, sbox1, sbox2, sbox3, sbox4, saltWords, null);
+        }
+
+        int[] text = (int[]) CTEXT.clone();
+        for (int nI = 0; nI < 64; nI++) {
+            for (int nJ = 0; nJ < text.length; nJ += 2) {
+                long lBlock = encipher(p, sbox1, sbox2, sbox3, sbox4, text[nJ], text[nJ + 1]);
+                text[nJ] = (int) (lBlock >>> 32);
+                text[nJ + 1] = (int) lBlock;
+            }
+        }
+
+        byte[] result = new byte[text.length * 4];
+        for (int nI = 0; nI < text.length; nI++) {
+            BinConverter.intToByteArray(text[nI], result, nI * 4);
+        }
+
+        zero(keyWords);
+        zero(saltWords);
+
+        return result;
+    }
+
+    // the key expansion of Blowfish, with the 16 salt bytes (first 4 words
+    // of saltWords) mixed into every block if given
+
+    private static void expand(
+            int[] p,
+            int[] sbox1,
+            int[] sbox2,
+            int[] sbox3,
+            int[] sbox4,
+            int[] keyWords,
+            int[] saltWords) {
+        for (int nI = 0; nI < 18; nI++) {
+            p[nI] ^= keyWords[nI];
+        }
+
+        BlowfishECB.expandBoxes(p, sbox1, sbox2, sbox3, sbox4, saltWords);
+    }
+
+    // encrypts a single block, returned as one long (L in the upper half)
+
+    private static long encipher(
+            int[] p,
+            int[] sbox1,
+            int[] sbox2,
+            int[] sbox3,
+            int[] sbox4,
+            int nL,
+            int nR) {
+        nL ^= p[0];
+        nR ^= (sbox1[nL >>> 24] + sbox2[nL >>> 16 & 0x0ff] ^ sbox3[nL >>> 8 & 0x0ff]) + sbox4[nL & 0x0ff] ^ p[1];
+        nL ^= (sbox1[nR >>> 24] + sbox2[nR >>> 16 & 0x0ff] ^ sbox3[nR >>> 8 & 0x0ff]) + sbox4[nR & 0x0ff] ^ p[2];
+        nR ^= (sbox1[nL >>> 24] + sbox2[nL >>> 16 & 0x0ff] ^ sbox3[nL >>> 8 & 0x0ff]) + sbox4[nL & 0x0ff] ^ p[3];
+        nL ^= (sbox1[nR >>> 24] + sbox2[nR >>> 16 & 0x0ff] ^ sbox3[nR >>> 8 & 0x0ff]) + sbox4[nR & 0x0ff] ^ p[4];
+        nR ^= (sbox1[nL >>> 24] + sbox2[nL >>> 16 & 0x0ff] ^ sbox3[nL >>> 8 & 0x0ff]) + sbox4[nL & 0x0ff] ^ p[5];
+        nL ^= (sbox1[nR >>> 24] + sbox2[nR >>> 16 & 0x0ff] ^ sbox3[nR >>> 8 & 0x0ff]) + sbox4[nR & 0x0ff] ^ p[6];
+        nR ^= (sbox1[nL >>> 24] + sbox2[nL >>> 16 & 0x0ff] ^ sbox3[nL >>> 8 & 0x0ff]) + sbox4[nL & 0x0ff] ^ p[7];
+        nL ^= (sbox1[nR >>> 24] + sbox2[nR >>> 16 & 0x0ff] ^ sbox3[nR >>> 8 & 0x0ff]) + sbox4[nR & 0x0ff] ^ p[8];
+        nR ^= (sbox1[nL >>> 24] + sbox2[nL >>> 16 & 0x0ff] ^ sbox3[nL >>> 8 & 0x0ff]) + sbox4[nL & 0x0ff] ^ p[9];
+        nL ^= (sbox1[nR >>> 24] + sbox2[nR >>> 16 & 0x0ff] ^ sbox3[nR >>> 8 & 0x0ff]) + sbox4[nR & 0x0ff] ^ p[10];
+        nR ^= (sbox1[nL >>> 24] + sbox2[nL >>> 16 & 0x0ff] ^ sbox3[nL >>> 8 & 0x0ff]) + sbox4[nL & 0x0ff] ^ p[11];
+        nL ^= (sbox1[nR >>> 24] + sbox2[nR >>> 16 & 0x0ff] ^ sbox3[nR >>> 8 & 0x0ff]) + sbox4[nR & 0x0ff] ^ p[12];
+        nR ^= (sbox1[nL >>> 24] + sbox2[nL >>> 16 & 0x0ff] ^ sbox3[nL >>> 8 & 0x0ff]) + sbox4[nL & 0x0ff] ^ p[13];
+        nL ^= (sbox1[nR >>> 24] + sbox2[nR >>> 16 & 0x0ff] ^ sbox3[nR >>> 8 & 0x0ff]) + sbox4[nR & 0x0ff] ^ p[14];
+        nR ^= (sbox1[nL >>> 24] + sbox2[nL >>> 16 & 0x0ff] ^ sbox3[nL >>> 8 & 0x0ff]) + sbox4[nL & 0x0ff] ^ p[15];
+        nL ^= (sbox1[nR >>> 24] + sbox2[nR >>> 16 & 0x0ff] ^ sbox3[nR >>> 8 & 0x0ff]) + sbox4[nR & 0x0ff] ^ p[16];
+
+        nR ^= p[17];
+
+        return (long) nR << 32 | nL & 0x0ffffffffL;
+    }
+
+    // turns bytes into the 18 words to xor over the P-array, starting over
+    // with the first byte whenever the data runs out
+
+    private static int[] cycle(
+            byte[] data) {
+        int[] words = new int[18];
+
+        int nPos = 0;
+        for (int nI = 0; nI < words.length; nI++) {
+            int nWord = 0;
+            for (int nJ = 0; nJ < 4; nJ++) {
+                nWord = nWord << 8 | data[nPos] & 0x0ff;
+                nPos = (nPos + 1) % data.length;
+            }
+            words[nI] = nWord;
+        }
+
+        return words;
+    }
+
+    private static void checkCost(
+            int nCost) {
+        if (nCost < MIN_COST || nCost > MAX_COST) {
+            throw new IllegalArgumentException("cost must be between "
+                    + MIN_COST + " and " + MAX_COST);
+        }
+    }
+
+    private static int digit(
+            char cDigit) {
+        if (cDigit < '0' || cDigit > '9') {
+            throw new IllegalArgumentException("invalid cost");
+        }
+        return cDigit - '0';
+    }
+
+    private static void encodeBase64(
+            byte[] data,
+            int nLen,
+            StringBuilder sb) {
+        int nPos = 0;
+        while (nPos < nLen) {
+            int nC1 = data[nPos++] & 0x0ff;
+            sb.append(BASE64[nC1 >>> 2]);
+            nC1 = (nC1 & 0x03) << 4;
+            if (nPos >= nLen) {
+                sb.append(BASE64[nC1]);
+                break;
+            }
+
+            int nC2 = data[nPos++] & 0x0ff;
+            sb.append(BASE64[nC1 | nC2 >>> 4]);
+            nC1 = (nC2 & 0x0f) << 2;
+            if (nPos >= nLen) {
+                sb.append(BASE64[nC1]);
+                break;
+            }
+
+            nC2 = data[nPos++] & 0x0ff;
+            sb.append(BASE64[nC1 | nC2 >>> 6]);
+            sb.append(BASE64[nC2 & 0x3f]);
+        }
+    }
+
+    // decodes the 22 characters of a salt into its 16 bytes
+
+    private static byte[] decodeBase64(
+            String salt) {
+        int[] sextets = new int[salt.length()];
+        for (int nI = 0; nI < sextets.length; nI++) {
+            char cChar = salt.charAt(nI);
+            int nVal = cChar < BASE64_INDEX.length ? BASE64_INDEX[cChar] : -1;
+            if (nVal == -1) {
+                throw new IllegalArgumentException("invalid salt");
+            }
+            sextets[nI] = nVal;
+        }
+
+        byte[] result = new byte[SALT_SIZE];
+
+        int nPos = 0;
+        int nI = 0;
+        while (nPos < SALT_SIZE) {
+            result[nPos++] = (byte) (sextets[nI] << 2 | sextets[nI + 1] >>> 4);
+            if (nPos == SALT_SIZE) {
+                break;
+            }
+            result[nPos++] = (byte) (sextets[nI + 1] << 4 | sextets[nI + 2] >>> 2);
+            result[nPos++] = (byte) (sextets[nI + 2] << 6 | sextets[nI + 3]);
+            nI += 4;
+        }
+
+        return result;
+    }
+
+    private static void zero(
+            byte[] data) {
+        for (int nI = 0; nI < data.length; nI++) {
+            data[nI] = 0;
+        }
+    }
+
+    private static void zero(
+            int[] data) {
+        for (int nI = 0; nI < data.length; nI++) {
+            data[nI] = 0;
+        }
+    }
+}
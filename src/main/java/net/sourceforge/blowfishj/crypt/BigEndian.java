@@ -0,0 +1,61 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.crypt;
+
+/**
+ * Big endian access to byte arrays, plain Java 7 version. The multi-release
+ * jar carries a replacement for newer runtimes, so the two must not differ
+ * in anything but their implementation.
+ */
+final class BigEndian {
+    private BigEndian() {
+    }
+
+    static int getInt(
+            byte[] buf,
+            int nOfs) {
+        return buf[nOfs] << 24
+                | (buf[nOfs + 1] & 0x0ff) << 16
+                | (buf[nOfs + 2] & 0x0ff) << 8
+                | buf[nOfs + 3] & 0x0ff;
+    }
+
+    static void putInt(
+            byte[] buf,
+            int nOfs,
+            int nValue) {
+        buf[nOfs] = (byte) (nValue >>> 24);
+        buf[nOfs + 1] = (byte) (nValue >>> 16);
+        buf[nOfs + 2] = (byte) (nValue >>> 8);
+        buf[nOfs + 3] = (byte) nValue;
+    }
+
+    static long getLong(
+            byte[] buf,
+            int nOfs) {
+        return (long) getInt(buf, nOfs) << 32
+                | getInt(buf, nOfs + 4) & 0x0ffffffffL;
+    }
+
+    static void putLong(
+            byte[] buf,
+            int nOfs,
+            long lValue) {
+        putInt(buf, nOfs, (int) (lValue >>> 32));
+        putInt(buf, nOfs + 4, (int) lValue);
+    }
+}
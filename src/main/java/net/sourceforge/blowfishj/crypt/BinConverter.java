@@ -38,10 +38,7 @@ public class BinConverter {
     public static final int byteArrayToInt(
             byte[] buf,
             int nOfs) {
-        return buf[nOfs] << 24
-                | (buf[nOfs + 1] & 0x0ff) << 16
-                | (buf[nOfs + 2] & 0x0ff) << 8
-                | buf[nOfs + 3] & 0x0ff;
+        return BigEndian.getInt(buf, nOfs);
     }
 
     /**
@@ -55,10 +52,7 @@ public class BinConverter {
             int nValue,
             byte[] buf,
             int nOfs) {
-        buf[nOfs] = (byte) (nValue >>> 24 & 0x0ff);
-        buf[nOfs + 1] = (byte) (nValue >>> 16 & 0x0ff);
-        buf[nOfs + 2] = (byte) (nValue >>> 8 & 0x0ff);
-        buf[nOfs + 3] = (byte) nValue;
+        BigEndian.putInt(buf, nOfs, nValue);
     }
 
     /**
@@ -71,17 +65,7 @@ public class BinConverter {
     public static final long byteArrayToLong(
             byte[] buf,
             int nOfs) {
-        // Looks more complex - but it is faster (at least on 32bit platforms).
-
-        return
-                (long) (buf[nOfs] << 24 |
-                        (buf[nOfs + 1] & 0x0ff) << 16 |
-                        (buf[nOfs + 2] & 0x0ff) << 8 |
-                        buf[nOfs + 3] & 0x0ff) << 32 |
-                        (buf[nOfs + 4] << 24 |
-                                (buf[nOfs + 5] & 0x0ff) << 16 |
-                                (buf[nOfs + 6] & 0x0ff) << 8 |
-                                buf[nOfs + 7] & 0x0ff) & 0x0ffffffffL;
+        return BigEndian.getLong(buf, nOfs);
     }
 
     /**
@@ -95,19 +79,7 @@ public class BinConverter {
             long lValue,
             byte[] buf,
             int nOfs) {
-        int nTmp = (int) (lValue >>> 32);
-
-        buf[nOfs] = (byte) (nTmp >>> 24);
-        buf[nOfs + 1] = (byte) (nTmp >>> 16 & 0x0ff);
-        buf[nOfs + 2] = (byte) (nTmp >>> 8 & 0x0ff);
-        buf[nOfs + 3] = (byte) nTmp;
-
-        nTmp = (int) lValue;
-
-        buf[nOfs + 4] = (byte) (nTmp >>> 24);
-        buf[nOfs + 5] = (byte) (nTmp >>> 16 & 0x0ff);
-        buf[nOfs + 6] = (byte) (nTmp >>> 8 & 0x0ff);
-        buf[nOfs + 7] = (byte) nTmp;
+        BigEndian.putLong(buf, nOfs, lValue);
     }
 
     /**
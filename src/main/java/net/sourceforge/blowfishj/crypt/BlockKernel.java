@@ -0,0 +1,78 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.crypt;
+
+/**
+ * Bulk block routine, for implementations which need a newer runtime and
+ * thus get loaded by reflection. An implementation may process fewer bytes
+ * than asked for, the caller has to take care of the rest.
+ */
+interface BlockKernel {
+    /**
+     * Encrypts blocks in ECB mode.
+     *
+     * @param pbox    the P-array
+     * @param sbox1   first S-box
+     * @param sbox2   second S-box
+     * @param sbox3   third S-box
+     * @param sbox4   fourth S-box
+     * @param inBuf   buffer with plaintext data
+     * @param nInPos  where to start reading the plaintext data
+     * @param outBuf  buffer to put the ciphertext data
+     * @param nOutPos where to start writing the ciphertext data
+     * @param nLen    number of bytes available (a multiple of the block size)
+     * @return number of bytes actually encrypted, counted from the start
+     */
+    int encrypt(
+            int[] pbox,
+            int[] sbox1,
+            int[] sbox2,
+            int[] sbox3,
+            int[] sbox4,
+            byte[] inBuf,
+            int nInPos,
+            byte[] outBuf,
+            int nOutPos,
+            int nLen);
+
+    /**
+     * Decrypts blocks in ECB mode.
+     *
+     * @param pbox    the P-array
+     * @param sbox1   first S-box
+     * @param sbox2   second S-box
+     * @param sbox3   third S-box
+     * @param sbox4   fourth S-box
+     * @param inBuf   buffer with ciphertext data
+     * @param nInPos  where to start reading the ciphertext data
+     * @param outBuf  buffer to put the plaintext data
+     * @param nOutPos where to start writing the plaintext data
+     * @param nLen    number of bytes available (a multiple of the block size)
+     * @return number of bytes actually decrypted, counted from the start
+     */
+    int decrypt(
+            int[] pbox,
+            int[] sbox1,
+            int[] sbox2,
+            int[] sbox3,
+            int[] sbox4,
+            byte[] inBuf,
+            int nInPos,
+            byte[] outBuf,
+            int nOutPos,
+            int nLen);
+}
@@ -16,6 +16,9 @@
 
 package net.sourceforge.blowfishj.crypt;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * Implementation of the Blowfish encryption algorithm in CBC mode.
  */
@@ -61,6 +64,27 @@ public class BlowfishCBC extends BlowfishECB {
         setCBCIV(lInitCBCIV);
     }
 
+    /**
+     * Constructor to define the CBC IV, with optional lazy key setup.
+     *
+     * @param key        key material, up to MAXKEYLENGTH bytes
+     * @param nOfs       where to start reading the key
+     * @param nLen       size of the key in bytes
+     * @param lInitCBCIV the CBC IV
+     * @param blLazy     true: expand the key on first use
+     * @see BlowfishECB#BlowfishECB(byte[], int, int, boolean)
+     */
+    public BlowfishCBC(
+            byte[] key,
+            int nOfs,
+            int nLen,
+            long lInitCBCIV,
+            boolean blLazy) {
+        super(key, nOfs, nLen, blLazy);
+
+        setCBCIV(lInitCBCIV);
+    }
+
 
     /**
      * Constructor to define the CBC IV.
@@ -82,6 +106,34 @@ public class BlowfishCBC extends BlowfishECB {
         setCBCIV(initCBCIV, nIVOfs);
     }
 
+    /**
+     * Constructor to run on an already expanded key, uses a zero CBC IV.
+     *
+     * @param ks the key schedule
+     * @see BlowfishECB#BlowfishECB(BlowfishKeySchedule)
+     */
+    public BlowfishCBC(
+            BlowfishKeySchedule ks) {
+        super(ks);
+
+        m_nIVHi = m_nIVLo = 0;
+    }
+
+    /**
+     * Constructor to run on an already expanded key and to define the CBC IV.
+     *
+     * @param ks         the key schedule
+     * @param lInitCBCIV the CBC IV
+     * @see BlowfishECB#BlowfishECB(BlowfishKeySchedule)
+     */
+    public BlowfishCBC(
+            BlowfishKeySchedule ks,
+            long lInitCBCIV) {
+        super(ks);
+
+        setCBCIV(lInitCBCIV);
+    }
+
     /**
      * Gets the current CBC IV.
      *
@@ -128,6 +180,42 @@ public class BlowfishCBC extends BlowfishECB {
         m_nIVLo = BinConverter.byteArrayToInt(newCBCIV, nOfs + 4);
     }
 
+    /**
+     * Encrypts a single block and chains it, i.e. the result becomes the new
+     * CBC IV.
+     *
+     * @param lPlain the plaintext block
+     * @return the ciphertext block
+     * @see BlowfishECB#encryptBlock(long)
+     */
+    @Override
+    public long encryptBlock(
+            long lPlain) {
+        long lCipher = super.encryptBlock(lPlain ^ getCBCIV());
+
+        setCBCIV(lCipher);
+
+        return lCipher;
+    }
+
+    /**
+     * Decrypts a single block and chains it, i.e. the input becomes the new
+     * CBC IV.
+     *
+     * @param lCipher the ciphertext block
+     * @return the plaintext block
+     * @see BlowfishECB#decryptBlock(long)
+     */
+    @Override
+    public long decryptBlock(
+            long lCipher) {
+        long lPlain = super.decryptBlock(lCipher) ^ getCBCIV();
+
+        setCBCIV(lCipher);
+
+        return lPlain;
+    }
+
     /**
      * see net.sourceforge.blowfishj.BlowfishECB#cleanUp()
      */
@@ -145,6 +233,8 @@ public class BlowfishCBC extends BlowfishECB {
             byte[] outBuf,
             int nOutPos,
             int nLen) {
+        checkKey();
+
         // same speed tricks than in the ECB variant ...
 
         nLen -= nLen % BLOCKSIZE;
@@ -152,7 +242,7 @@ public class BlowfishCBC extends BlowfishECB {
         int nInPos1 = nInPos;
         int nC = nInPos1 + nLen;
 
-        int[] pbox = this.getPbox();
+        int[] pbox = this.livePbox();
         int nPBox00 = pbox[0];
         int nPBox01 = pbox[1];
         int nPBox02 = pbox[2];
@@ -172,25 +262,19 @@ public class BlowfishCBC extends BlowfishECB {
         int nPBox16 = pbox[16];
         int nPBox17 = pbox[17];
 
-        int[] sbox1 = this.getSbox1();
-        int[] sbox2 = this.getSbox2();
-        int[] sbox3 = this.getSbox3();
-        int[] sbox4 = this.getSbox4();
+        int[] sbox1 = this.liveSbox1();
+        int[] sbox2 = this.liveSbox2();
+        int[] sbox3 = this.liveSbox3();
+        int[] sbox4 = this.liveSbox4();
 
         int nIVHi = m_nIVHi;
         int nIVLo = m_nIVLo;
 
         int nOutPos1 = nOutPos;
         while (nInPos1 < nC) {
-            int nHi = inBuf[nInPos1++] << 24;
-            nHi |= inBuf[nInPos1++] << 16 & 0x0ff0000;
-            nHi |= inBuf[nInPos1++] << 8 & 0x000ff00;
-            nHi |= inBuf[nInPos1++] & 0x00000ff;
-
-            int nLo = inBuf[nInPos1++] << 24;
-            nLo |= inBuf[nInPos1++] << 16 & 0x0ff0000;
-            nLo |= inBuf[nInPos1++] << 8 & 0x000ff00;
-            nLo |= inBuf[nInPos1++] & 0x00000ff;
+            int nHi = BigEndian.getInt(inBuf, nInPos1);
+            int nLo = BigEndian.getInt(inBuf, nInPos1 + 4);
+            nInPos1 += BLOCKSIZE;
 
             // extra step: chain with IV
 
@@ -217,16 +301,9 @@ public class BlowfishCBC extends BlowfishECB {
 
             nLo ^= nPBox17;
 
-            outBuf[nOutPos1++] = (byte) (nLo >>> 24);
-            outBuf[nOutPos1++] = (byte) (nLo >>> 16);
-            outBuf[nOutPos1++] = (byte) (nLo >>> 8);
-            outBuf[nOutPos1++] = (byte) nLo;
-
-            outBuf[nOutPos1++] = (byte) (nHi >>> 24);
-            outBuf[nOutPos1++] = (byte) (nHi >>> 16);
-            outBuf[nOutPos1++] = (byte) (nHi >>> 8);
-            outBuf[nOutPos1] = (byte) nHi;
-            nOutPos1++;
+            BigEndian.putInt(outBuf, nOutPos1, nLo);
+            BigEndian.putInt(outBuf, nOutPos1 + 4, nHi);
+            nOutPos1 += BLOCKSIZE;
 
             // (the encrypted block becomes the new IV)
 
@@ -247,20 +324,78 @@ public class BlowfishCBC extends BlowfishECB {
             int[] outBuf,
             int nOutPos,
             int nLen) {
-        int nInPos1 = nInPos;
-        int nOutPos1 = nOutPos;
-        int nC = nInPos1 + nLen;
+        checkKey();
 
-        while (nInPos1 < nC) {
-            BinConverter.intToByteArray(inBuf[nInPos1++], blockBuf, 0);
-            BinConverter.intToByteArray(inBuf[nInPos1++], blockBuf, 4);
+        int nC = nInPos + (nLen & ~1);
 
-            encrypt(blockBuf, 0, blockBuf, 0, blockBuf.length);
+        int[] pbox = this.livePbox();
+        int nPBox00 = pbox[0];
+        int nPBox01 = pbox[1];
+        int nPBox02 = pbox[2];
+        int nPBox03 = pbox[3];
+        int nPBox04 = pbox[4];
+        int nPBox05 = pbox[5];
+        int nPBox06 = pbox[6];
+        int nPBox07 = pbox[7];
+        int nPBox08 = pbox[8];
+        int nPBox09 = pbox[9];
+        int nPBox10 = pbox[10];
+        int nPBox11 = pbox[11];
+        int nPBox12 = pbox[12];
+        int nPBox13 = pbox[13];
+        int nPBox14 = pbox[14];
+        int nPBox15 = pbox[15];
+        int nPBox16 = pbox[16];
+        int nPBox17 = pbox[17];
+
+        int[] sbox1 = this.liveSbox1();
+        int[] sbox2 = this.liveSbox2();
+        int[] sbox3 = this.liveSbox3();
+        int[] sbox4 = this.liveSbox4();
+
+        int nIVHi = m_nIVHi;
+        int nIVLo = m_nIVLo;
 
-            outBuf[nOutPos1++] = BinConverter.byteArrayToInt(blockBuf, 0);
-            outBuf[nOutPos1] = BinConverter.byteArrayToInt(blockBuf, 4);
-            nOutPos1++;
+        while (nInPos < nC) {
+            int nHi = inBuf[nInPos++];
+            int nLo = inBuf[nInPos++];
+
+            // extra step: chain with IV
+
+            nHi ^= nIVHi;
+            nLo ^= nIVLo;
+
+            nHi ^= nPBox00;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox01;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox02;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox03;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox04;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox05;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox06;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox07;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox08;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox09;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox10;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox11;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox12;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox13;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox14;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox15;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox16;
+
+            nLo ^= nPBox17;
+
+            outBuf[nOutPos++] = nLo;
+            outBuf[nOutPos++] = nHi;
+
+            // (the encrypted block becomes the new IV)
+
+            nIVHi = nLo;
+            nIVLo = nHi;
         }
+
+        m_nIVHi = nIVHi;
+        m_nIVLo = nIVLo;
     }
 
     @Override
@@ -270,18 +405,78 @@ public class BlowfishCBC extends BlowfishECB {
             long[] outBuf,
             int nOutPos,
             int nLen) {
-        int nInPos1 = nInPos;
-        int nOutPos1 = nOutPos;
-        int nC = nInPos1 + nLen;
+        checkKey();
 
-        while (nInPos1 < nC) {
-            BinConverter.longToByteArray(inBuf[nInPos1++], blockBuf, 0);
+        int nC = nInPos + nLen;
 
-            encrypt(blockBuf, 0, blockBuf, 0, blockBuf.length);
+        int[] pbox = this.livePbox();
+        int nPBox00 = pbox[0];
+        int nPBox01 = pbox[1];
+        int nPBox02 = pbox[2];
+        int nPBox03 = pbox[3];
+        int nPBox04 = pbox[4];
+        int nPBox05 = pbox[5];
+        int nPBox06 = pbox[6];
+        int nPBox07 = pbox[7];
+        int nPBox08 = pbox[8];
+        int nPBox09 = pbox[9];
+        int nPBox10 = pbox[10];
+        int nPBox11 = pbox[11];
+        int nPBox12 = pbox[12];
+        int nPBox13 = pbox[13];
+        int nPBox14 = pbox[14];
+        int nPBox15 = pbox[15];
+        int nPBox16 = pbox[16];
+        int nPBox17 = pbox[17];
+
+        int[] sbox1 = this.liveSbox1();
+        int[] sbox2 = this.liveSbox2();
+        int[] sbox3 = this.liveSbox3();
+        int[] sbox4 = this.liveSbox4();
 
-            outBuf[nOutPos1] = BinConverter.byteArrayToInt(blockBuf, 0);
-            nOutPos1++;
+        int nIVHi = m_nIVHi;
+        int nIVLo = m_nIVLo;
+
+        while (nInPos < nC) {
+            long lBlock = inBuf[nInPos++];
+            int nHi = (int) (lBlock >>> 32);
+            int nLo = (int) lBlock;
+
+            // extra step: chain with IV
+
+            nHi ^= nIVHi;
+            nLo ^= nIVLo;
+
+            nHi ^= nPBox00;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox01;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox02;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox03;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox04;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox05;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox06;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox07;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox08;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox09;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox10;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox11;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox12;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox13;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox14;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox15;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox16;
+
+            nLo ^= nPBox17;
+
+            outBuf[nOutPos++] = (long) nLo << 32 | nHi & 0x0ffffffffL;
+
+            // (the encrypted block becomes the new IV)
+
+            nIVHi = nLo;
+            nIVLo = nHi;
         }
+
+        m_nIVHi = nIVHi;
+        m_nIVLo = nIVLo;
     }
 
     @Override
@@ -291,12 +486,14 @@ public class BlowfishCBC extends BlowfishECB {
             byte[] outBuf,
             int nOutPos,
             int nLen) {
+        checkKey();
+
         nLen -= nLen % BLOCKSIZE;
 
         int nInPos1 = nInPos;
         int nC = nInPos1 + nLen;
 
-        int[] pbox = this.getPbox();
+        int[] pbox = this.livePbox();
         int nPBox00 = pbox[0];
         int nPBox01 = pbox[1];
         int nPBox02 = pbox[2];
@@ -316,25 +513,19 @@ public class BlowfishCBC extends BlowfishECB {
         int nPBox16 = pbox[16];
         int nPBox17 = pbox[17];
 
-        int[] sbox1 = this.getSbox1();
-        int[] sbox2 = this.getSbox2();
-        int[] sbox3 = this.getSbox3();
-        int[] sbox4 = this.getSbox4();
+        int[] sbox1 = this.liveSbox1();
+        int[] sbox2 = this.liveSbox2();
+        int[] sbox3 = this.liveSbox3();
+        int[] sbox4 = this.liveSbox4();
 
         int nIVHi = m_nIVHi;
         int nIVLo = m_nIVLo;
 
         int nOutPos1 = nOutPos;
         while (nInPos1 < nC) {
-            int nHi = inBuf[nInPos1++] << 24;
-            nHi |= inBuf[nInPos1++] << 16 & 0x0ff0000;
-            nHi |= inBuf[nInPos1++] << 8 & 0x000ff00;
-            nHi |= inBuf[nInPos1++] & 0x00000ff;
-
-            int nLo = inBuf[nInPos1++] << 24;
-            nLo |= inBuf[nInPos1++] << 16 & 0x0ff0000;
-            nLo |= inBuf[nInPos1++] << 8 & 0x000ff00;
-            nLo |= inBuf[nInPos1++] & 0x00000ff;
+            int nHi = BigEndian.getInt(inBuf, nInPos1);
+            int nLo = BigEndian.getInt(inBuf, nInPos1 + 4);
+            nInPos1 += BLOCKSIZE;
 
             // (save the current block, it will become the new IV)
             int nTmpHi = nHi;
@@ -365,16 +556,9 @@ public class BlowfishCBC extends BlowfishECB {
             nHi ^= nIVLo;
             nLo ^= nIVHi;
 
-            outBuf[nOutPos1++] = (byte) (nLo >>> 24);
-            outBuf[nOutPos1++] = (byte) (nLo >>> 16);
-            outBuf[nOutPos1++] = (byte) (nLo >>> 8);
-            outBuf[nOutPos1++] = (byte) nLo;
-
-            outBuf[nOutPos1++] = (byte) (nHi >>> 24);
-            outBuf[nOutPos1++] = (byte) (nHi >>> 16);
-            outBuf[nOutPos1++] = (byte) (nHi >>> 8);
-            outBuf[nOutPos1] = (byte) nHi;
-            nOutPos1++;
+            BigEndian.putInt(outBuf, nOutPos1, nLo);
+            BigEndian.putInt(outBuf, nOutPos1 + 4, nHi);
+            nOutPos1 += BLOCKSIZE;
 
             // (now set the new IV)
             nIVHi = nTmpHi;
@@ -394,20 +578,81 @@ public class BlowfishCBC extends BlowfishECB {
             int[] outBuf,
             int nOutPos,
             int nLen) {
-        int nInPos1 = nInPos;
-        int nOutPos1 = nOutPos;
-        int nC = nInPos1 + nLen;
+        checkKey();
 
-        while (nInPos1 < nC) {
-            BinConverter.intToByteArray(inBuf[nInPos1++], blockBuf, 0);
-            BinConverter.intToByteArray(inBuf[nInPos1++], blockBuf, 4);
+        int nC = nInPos + (nLen & ~1);
+
+        int[] pbox = this.livePbox();
+        int nPBox00 = pbox[0];
+        int nPBox01 = pbox[1];
+        int nPBox02 = pbox[2];
+        int nPBox03 = pbox[3];
+        int nPBox04 = pbox[4];
+        int nPBox05 = pbox[5];
+        int nPBox06 = pbox[6];
+        int nPBox07 = pbox[7];
+        int nPBox08 = pbox[8];
+        int nPBox09 = pbox[9];
+        int nPBox10 = pbox[10];
+        int nPBox11 = pbox[11];
+        int nPBox12 = pbox[12];
+        int nPBox13 = pbox[13];
+        int nPBox14 = pbox[14];
+        int nPBox15 = pbox[15];
+        int nPBox16 = pbox[16];
+        int nPBox17 = pbox[17];
 
-            decrypt(blockBuf, 0, blockBuf, 0, blockBuf.length);
+        int[] sbox1 = this.liveSbox1();
+        int[] sbox2 = this.liveSbox2();
+        int[] sbox3 = this.liveSbox3();
+        int[] sbox4 = this.liveSbox4();
+
+        int nIVHi = m_nIVHi;
+        int nIVLo = m_nIVLo;
+
+        while (nInPos < nC) {
+            int nHi = inBuf[nInPos++];
+            int nLo = inBuf[nInPos++];
+
+            // (save the current block, it will become the new IV)
+            int nTmpHi = nHi;
+            int nTmpLo = nLo;
+
+            nHi ^= nPBox17;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox16;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox15;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox14;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox13;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox12;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox11;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox10;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox09;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox08;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox07;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox06;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox05;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox04;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox03;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox02;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox01;
+
+            nLo ^= nPBox00;
 
-            outBuf[nOutPos1++] = BinConverter.byteArrayToInt(blockBuf, 0);
-            outBuf[nOutPos1] = BinConverter.byteArrayToInt(blockBuf, 4);
-            nOutPos1++;
+            // extra step: unchain
+
+            nHi ^= nIVLo;
+            nLo ^= nIVHi;
+
+            outBuf[nOutPos++] = nLo;
+            outBuf[nOutPos++] = nHi;
+
+            // (now set the new IV)
+            nIVHi = nTmpHi;
+            nIVLo = nTmpLo;
         }
+
+        m_nIVHi = nIVHi;
+        m_nIVLo = nIVLo;
     }
 
     @Override
@@ -417,18 +662,279 @@ public class BlowfishCBC extends BlowfishECB {
             long[] outBuf,
             int nOutPos,
             int nLen) {
-        int nInPos1 = nInPos;
-        int nOutPos1 = nOutPos;
-        int nC = nInPos1 + nLen;
+        checkKey();
 
-        while (nInPos1 < nC) {
-            BinConverter.longToByteArray(inBuf[nInPos1++], blockBuf, 0);
+        int nC = nInPos + nLen;
+
+        int[] pbox = this.livePbox();
+        int nPBox00 = pbox[0];
+        int nPBox01 = pbox[1];
+        int nPBox02 = pbox[2];
+        int nPBox03 = pbox[3];
+        int nPBox04 = pbox[4];
+        int nPBox05 = pbox[5];
+        int nPBox06 = pbox[6];
+        int nPBox07 = pbox[7];
+        int nPBox08 = pbox[8];
+        int nPBox09 = pbox[9];
+        int nPBox10 = pbox[10];
+        int nPBox11 = pbox[11];
+        int nPBox12 = pbox[12];
+        int nPBox13 = pbox[13];
+        int nPBox14 = pbox[14];
+        int nPBox15 = pbox[15];
+        int nPBox16 = pbox[16];
+        int nPBox17 = pbox[17];
+
+        int[] sbox1 = this.liveSbox1();
+        int[] sbox2 = this.liveSbox2();
+        int[] sbox3 = this.liveSbox3();
+        int[] sbox4 = this.liveSbox4();
+
+        int nIVHi = m_nIVHi;
+        int nIVLo = m_nIVLo;
+
+        while (nInPos < nC) {
+            long lBlock = inBuf[nInPos++];
+            int nHi = (int) (lBlock >>> 32);
+            int nLo = (int) lBlock;
+
+            // (save the current block, it will become the new IV)
+            int nTmpHi = nHi;
+            int nTmpLo = nLo;
+
+            nHi ^= nPBox17;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox16;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox15;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox14;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox13;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox12;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox11;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox10;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox09;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox08;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox07;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox06;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox05;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox04;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox03;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox02;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox01;
+
+            nLo ^= nPBox00;
+
+            // extra step: unchain
+
+            nHi ^= nIVLo;
+            nLo ^= nIVHi;
+
+            outBuf[nOutPos++] = (long) nLo << 32 | nHi & 0x0ffffffffL;
+
+            // (now set the new IV)
+            nIVHi = nTmpHi;
+            nIVLo = nTmpLo;
+        }
+
+        m_nIVHi = nIVHi;
+        m_nIVLo = nIVLo;
+    }
+
+    /**
+     * CBC chains every block to the previous one, so the data gets encrypted
+     * by the calling thread in one go, the pool is not used.
+     */
+    @Override
+    public int encryptParallel(
+            byte[] inBuf,
+            int nInPos,
+            byte[] outBuf,
+            int nOutPos,
+            int nLen,
+            ForkJoinPool pool) {
+        return encrypt(inBuf, nInPos, outBuf, nOutPos, nLen);
+    }
+
+    /**
+     * The data gets decrypted by the calling thread in one go, the pool is
+     * not used (the blocks of an in-place decryption can't be split because
+     * each of them needs the ciphertext of its predecessor).
+     */
+    @Override
+    public int decryptParallel(
+            byte[] inBuf,
+            int nInPos,
+            byte[] outBuf,
+            int nOutPos,
+            int nLen,
+            ForkJoinPool pool) {
+        return decrypt(inBuf, nInPos, outBuf, nOutPos, nLen);
+    }
+
+    @Override
+    protected void encryptPrv(
+            ByteBuffer src,
+            int nSrcPos,
+            ByteBuffer dst,
+            int nDstPos,
+            int nLen) {
+        int nC = nSrcPos + nLen;
+
+        int[] pbox = this.livePbox();
+        int nPBox00 = pbox[0];
+        int nPBox01 = pbox[1];
+        int nPBox02 = pbox[2];
+        int nPBox03 = pbox[3];
+        int nPBox04 = pbox[4];
+        int nPBox05 = pbox[5];
+        int nPBox06 = pbox[6];
+        int nPBox07 = pbox[7];
+        int nPBox08 = pbox[8];
+        int nPBox09 = pbox[9];
+        int nPBox10 = pbox[10];
+        int nPBox11 = pbox[11];
+        int nPBox12 = pbox[12];
+        int nPBox13 = pbox[13];
+        int nPBox14 = pbox[14];
+        int nPBox15 = pbox[15];
+        int nPBox16 = pbox[16];
+        int nPBox17 = pbox[17];
 
-            decrypt(blockBuf, 0, blockBuf, 0, blockBuf.length);
+        int[] sbox1 = this.liveSbox1();
+        int[] sbox2 = this.liveSbox2();
+        int[] sbox3 = this.liveSbox3();
+        int[] sbox4 = this.liveSbox4();
 
-            outBuf[nOutPos1] = BinConverter.byteArrayToInt(blockBuf, 0);
-            nOutPos1++;
+        int nIVHi = m_nIVHi;
+        int nIVLo = m_nIVLo;
+
+        while (nSrcPos < nC) {
+            int nHi = src.getInt(nSrcPos);
+            int nLo = src.getInt(nSrcPos + 4);
+
+            // extra step: chain with IV
+
+            nHi ^= nIVHi;
+            nLo ^= nIVLo;
+
+            nHi ^= nPBox00;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox01;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox02;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox03;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox04;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox05;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox06;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox07;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox08;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox09;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox10;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox11;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox12;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox13;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox14;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox15;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox16;
+
+            nLo ^= nPBox17;
+
+            dst.putInt(nDstPos, nLo);
+            dst.putInt(nDstPos + 4, nHi);
+
+            nSrcPos += BLOCKSIZE;
+            nDstPos += BLOCKSIZE;
+
+            // (the encrypted block becomes the new IV)
+
+            nIVHi = nLo;
+            nIVLo = nHi;
         }
+
+        m_nIVHi = nIVHi;
+        m_nIVLo = nIVLo;
+    }
+
+    @Override
+    protected void decryptPrv(
+            ByteBuffer src,
+            int nSrcPos,
+            ByteBuffer dst,
+            int nDstPos,
+            int nLen) {
+        int nC = nSrcPos + nLen;
+
+        int[] pbox = this.livePbox();
+        int nPBox00 = pbox[0];
+        int nPBox01 = pbox[1];
+        int nPBox02 = pbox[2];
+        int nPBox03 = pbox[3];
+        int nPBox04 = pbox[4];
+        int nPBox05 = pbox[5];
+        int nPBox06 = pbox[6];
+        int nPBox07 = pbox[7];
+        int nPBox08 = pbox[8];
+        int nPBox09 = pbox[9];
+        int nPBox10 = pbox[10];
+        int nPBox11 = pbox[11];
+        int nPBox12 = pbox[12];
+        int nPBox13 = pbox[13];
+        int nPBox14 = pbox[14];
+        int nPBox15 = pbox[15];
+        int nPBox16 = pbox[16];
+        int nPBox17 = pbox[17];
+
+        int[] sbox1 = this.liveSbox1();
+        int[] sbox2 = this.liveSbox2();
+        int[] sbox3 = this.liveSbox3();
+        int[] sbox4 = this.liveSbox4();
+
+        int nIVHi = m_nIVHi;
+        int nIVLo = m_nIVLo;
+
+        while (nSrcPos < nC) {
+            int nHi = src.getInt(nSrcPos);
+            int nLo = src.getInt(nSrcPos + 4);
+
+            // (save the current block, it will become the new IV)
+            int nTmpHi = nHi;
+            int nTmpLo = nLo;
+
+            nHi ^= nPBox17;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox16;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox15;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox14;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox13;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox12;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox11;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox10;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox09;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox08;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox07;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox06;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox05;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox04;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox03;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox02;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox01;
+
+            nLo ^= nPBox00;
+
+            // extra step: unchain
+
+            nHi ^= nIVLo;
+            nLo ^= nIVHi;
+
+            dst.putInt(nDstPos, nLo);
+            dst.putInt(nDstPos + 4, nHi);
+
+            nSrcPos += BLOCKSIZE;
+            nDstPos += BLOCKSIZE;
+
+            // (now set the new IV)
+            nIVHi = nTmpHi;
+            nIVLo = nTmpLo;
+        }
+
+        m_nIVHi = nIVHi;
+        m_nIVLo = nIVLo;
     }
 
 }
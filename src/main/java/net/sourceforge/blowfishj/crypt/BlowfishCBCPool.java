@@ -0,0 +1,158 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.crypt;
+
+import java.util.ArrayDeque;
+
+/**
+ * A size bounded pool of BlowfishCBC instances, for applications running lots
+ * of short operations with changing keys. A borrowed instance gets rekeyed in
+ * place, i.e. the boxes are restored from the initial values and expanded
+ * again, so apart from the first few instances nothing gets allocated. The key
+ * setup itself still has to run every time; for keys seen over and over again
+ * a BlowfishKeyScheduleCache is the better choice.
+ * <p>
+ * All methods are thread safe, the key setup runs outside of the lock.
+ * Returned instances get cleaned up, so the pool never holds on to any key
+ * material.
+ */
+public class BlowfishCBCPool {
+    private final ArrayDeque<BlowfishCBC> m_idle;
+    private final int m_nMaxIdle;
+
+    private long m_lCreated;
+
+
+    /**
+     * Constructor.
+     *
+     * @param nMaxIdle maximum number of instances to keep for reuse
+     */
+    public BlowfishCBCPool(
+            int nMaxIdle) {
+        if (nMaxIdle < 1) {
+            throw new IllegalArgumentException("pool size must be positive");
+        }
+
+        m_idle = new ArrayDeque<BlowfishCBC>(nMaxIdle);
+        m_nMaxIdle = nMaxIdle;
+    }
+
+    /**
+     * Borrows an instance, set up for the given key and a zero CBC IV.
+     *
+     * @param key  key material, up to BlowfishECB.MAXKEYLENGTH bytes
+     * @param nOfs where to start reading the key
+     * @param nLen size of the key in bytes
+     * @return the instance, to be handed back via release()
+     */
+    public BlowfishCBC borrow(
+            byte[] key,
+            int nOfs,
+            int nLen) {
+        return borrow(key, nOfs, nLen, 0L);
+    }
+
+    /**
+     * Borrows an instance, set up for the given key and CBC IV.
+     *
+     * @param key        key material, up to BlowfishECB.MAXKEYLENGTH bytes
+     * @param nOfs       where to start reading the key
+     * @param nLen       size of the key in bytes
+     * @param lInitCBCIV the CBC IV
+     * @return the instance, to be handed back via release()
+     */
+    public BlowfishCBC borrow(
+            byte[] key,
+            int nOfs,
+            int nLen,
+            long lInitCBCIV) {
+        BlowfishCBC result;
+
+        synchronized (m_idle) {
+            result = m_idle.pollFirst();
+            if (result == null) {
+                m_lCreated++;
+            }
+        }
+
+        if (result == null) {
+            result = new BlowfishCBC(key, nOfs, nLen, lInitCBCIV);
+        } else {
+            result.initialize(key, nOfs, nLen);
+            result.setCBCIV(lInitCBCIV);
+        }
+
+        return result;
+    }
+
+    /**
+     * Hands an instance back. It gets cleaned up and kept for the next
+     * borrow() if the pool isn't full yet; the caller must not use it
+     * anymore either way.
+     *
+     * @param bfc the instance, as returned by borrow()
+     * @throws IllegalStateException if the instance is idle already, i.e. it
+     *                               got released twice
+     */
+    public void release(
+            BlowfishCBC bfc) {
+        synchronized (m_idle) {
+            // (otherwise it would sit in the pool twice and two borrowers
+            // could end up sharing it; the check and the cleanup must not be
+            // split, a concurrent second release would slip through)
+            for (BlowfishCBC idle : m_idle) {
+                if (idle == bfc) {
+                    throw new IllegalStateException("instance released twice");
+                }
+            }
+
+            bfc.cleanUp();
+
+            if (m_idle.size() < m_nMaxIdle) {
+                m_idle.addFirst(bfc);
+            }
+        }
+    }
+
+    /**
+     * @return number of instances which had to be created
+     */
+    public long getCreated() {
+        synchronized (m_idle) {
+            return m_lCreated;
+        }
+    }
+
+    /**
+     * @return number of instances currently waiting for reuse
+     */
+    public int size() {
+        synchronized (m_idle) {
+            return m_idle.size();
+        }
+    }
+
+    /**
+     * Drops all idle instances.
+     */
+    public void clear() {
+        synchronized (m_idle) {
+            m_idle.clear();
+        }
+    }
+}
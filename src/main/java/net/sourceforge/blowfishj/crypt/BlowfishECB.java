@@ -16,6 +16,14 @@
 
 package net.sourceforge.blowfishj.crypt;
 
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 /**
  * Implementation of the Blowfish encryption algorithm in ECB mode.
  */
@@ -30,16 +38,29 @@ public class BlowfishECB {
      */
     public static final int BLOCKSIZE = 8;
 
+    /**
+     * buffers (in bytes) from which on the parallel routines split the work
+     */
+    public static final int PARALLEL_THRESHOLD = 1 << 18;
+
+    // from this size on the byte array routines run two blocks at a time
+    private static final int INTERLEAVE_THRESHOLD = 64;
+
+    // the parallel routines don't split pieces smaller than this any further
+    private static final int PARALLEL_SLICE = 1 << 16;
+
     // size of the single boxes
     private static final int PBOX_ENTRIES = 18;
     private static final int SBOX_ENTRIES = 256;
-    private static final int[] PBOX_INIT =
+
+    // (the initial boxes are package visible for BCrypt, never modify them)
+    static final int[] PBOX_INIT =
             {
                     0x243f6a88, 0x85a308d3, 0x13198a2e, 0x03707344, 0xa4093822, 0x299f31d0,
                     0x082efa98, 0xec4e6c89, 0x452821e6, 0x38d01377, 0xbe5466cf, 0x34e90c6c,
                     0xc0ac29b7, 0xc97c50dd, 0x3f84d5b5, 0xb5470917, 0x9216d5d9, 0x8979fb1b
             };
-    private static final int[] SBOX_INIT_1 =
+    static final int[] SBOX_INIT_1 =
             {
                     0xd1310ba6, 0x98dfb5ac, 0x2ffd72db, 0xd01adfb7, 0xb8e1afed, 0x6a267e96,
                     0xba7c9045, 0xf12c7f99, 0x24a19947, 0xb3916cf7, 0x0801f2e2, 0x858efc16,
@@ -85,7 +106,7 @@ public class BlowfishECB {
                     0xf296ec6b, 0x2a0dd915, 0xb6636521, 0xe7b9f9b6, 0xff34052e, 0xc5855664,
                     0x53b02d5d, 0xa99f8fa1, 0x08ba4799, 0x6e85076a
             };
-    private static final int[] SBOX_INIT_2 =
+    static final int[] SBOX_INIT_2 =
             {
                     0x4b7a70e9, 0xb5b32944,
                     0xdb75092e, 0xc4192623, 0xad6ea6b0, 0x49a7df7d, 0x9cee60b8, 0x8fedb266,
@@ -132,7 +153,7 @@ public class BlowfishECB {
                     0xc5c43465, 0x713e38d8, 0x3d28f89e, 0xf16dff20, 0x153e21e7, 0x8fb03d4a,
                     0xe6e39f2b, 0xdb83adf7
             };
-    private static final int[] SBOX_INIT_3 =
+    static final int[] SBOX_INIT_3 =
             {
                     0xe93d5a68, 0x948140f7, 0xf64c261c, 0x94692934,
                     0x411520f7, 0x7602d4f7, 0xbcf46b2e, 0xd4a20068, 0xd4082471, 0x3320f46a,
@@ -178,7 +199,7 @@ public class BlowfishECB {
                     0x1e50ef5e, 0xb161e6f8, 0xa28514d9, 0x6c51133c, 0x6fd5c7e7, 0x56e14ec4,
                     0x362abfce, 0xddc6c837, 0xd79a3234, 0x92638212, 0x670efa8e, 0x406000e0
             };
-    private static final int[] SBOX_INIT_4 =
+    static final int[] SBOX_INIT_4 =
             {
                     0x3a39ce37, 0xd3faf5cf, 0xabc27737, 0x5ac52d1b, 0x5cb0679e, 0x4fa33742,
                     0xd3822740, 0x99bc9bbe, 0xd5118e9d, 0xbf0f7315, 0xd62d1c7e, 0xc700c47b,
@@ -225,15 +246,23 @@ public class BlowfishECB {
                     0xb74e6132, 0xce77e25b, 0x578fdfe3, 0x3ac372e6
             };
     // the boxes
-    private final int[] pbox = (int[]) PBOX_INIT.clone();
-    private final int[] sbox1 = (int[]) SBOX_INIT_1.clone();
-    private final int[] sbox2 = (int[]) SBOX_INIT_2.clone();
-    private final int[] sbox3 = (int[]) SBOX_INIT_3.clone();
-    private final int[] sbox4 = (int[]) SBOX_INIT_4.clone();
-    // object local block cache to speed up integer and long buffer handling
-    byte[] blockBuf = new byte[BLOCKSIZE];
+    private int[] pbox;
+    private int[] sbox1;
+    private int[] sbox2;
+    private int[] sbox3;
+    private int[] sbox4;
+    // set if the boxes belong to a key schedule and must not be touched
+    private boolean blShared;
     // weak key indicator
     private int nWeakKey;
+    // lazy key setup: the key waits in pendingKey until the first use, the
+    // state gets checked at every entry point (volatile, so the thread which
+    // finds the key ready also sees the boxes completely)
+    private static final int KEY_READY = 0;
+    private static final int KEY_PENDING = 1;
+    private static final int KEY_EXPANDING = 2;
+    private volatile int nKeyState;
+    private byte[] pendingKey;
 
     /**
      * @see BlowfishECB#initialize(byte[], int, int)
@@ -242,11 +271,66 @@ public class BlowfishECB {
             byte[] key,
             int nOfs,
             int nLen) {
-        initialize(key, nOfs, nLen);
+        this(key, nOfs, nLen, false);
+    }
+
+    /**
+     * Constructor with optional lazy key setup. If enabled a copy of the key
+     * gets stored and expanded on first use only, by whatever thread comes
+     * first; this is for applications creating lots of instances up front,
+     * of which only a few may be used. Other threads may use a lazy instance
+     * just like a fully set up one.
+     *
+     * @param key    key material, up to MAXKEYLENGTH bytes
+     * @param nOfs   where to start reading
+     * @param nLen   number of bytes
+     * @param blLazy true: expand the key on first use
+     */
+    public BlowfishECB(
+            byte[] key,
+            int nOfs,
+            int nLen,
+            boolean blLazy) {
+        // (initialize() fills the boxes)
+        pbox = new int[PBOX_ENTRIES];
+        sbox1 = new int[SBOX_ENTRIES];
+        sbox2 = new int[SBOX_ENTRIES];
+        sbox3 = new int[SBOX_ENTRIES];
+        sbox4 = new int[SBOX_ENTRIES];
+
+        if (blLazy) {
+            pendingKey = Arrays.copyOfRange(key, nOfs, nOfs + nLen);
+            nKeyState = KEY_PENDING;
+        } else {
+            initialize(key, nOfs, nLen);
+        }
     }
 
     /**
-     * Initializes (or resets) the instances.
+     * Constructor to run on an already expanded key. No key setup happens and
+     * the boxes are not copied, so this is cheap enough to create an instance
+     * per thread or even per message. The schedule itself stays untouched,
+     * initialize() and cleanUp() only detach the instance from it.
+     *
+     * @param ks the key schedule
+     */
+    public BlowfishECB(
+            BlowfishKeySchedule ks) {
+        pbox = ks.pbox;
+        sbox1 = ks.sbox1;
+        sbox2 = ks.sbox2;
+        sbox3 = ks.sbox3;
+        sbox4 = ks.sbox4;
+
+        blShared = true;
+
+        nWeakKey = -1;
+    }
+
+    /**
+     * Initializes (or resets) the instances. The boxes get restored from the
+     * initial values first, so an instance can be rekeyed in place as often
+     * as needed, without allocating anything.
      *
      * @param key  key material, up to MAXKEYLENGTH bytes
      * @param nOfs where to start reading
@@ -256,14 +340,37 @@ public class BlowfishECB {
             byte[] key,
             int nOfs,
             int nLen) {
+        if (nKeyState == KEY_PENDING) {
+            // (a new key replaces one still waiting to be expanded)
+            dropPendingKey();
+        }
 
+        if (blShared) {
+            // (start over with our own boxes)
+            pbox = new int[PBOX_ENTRIES];
+            sbox1 = new int[SBOX_ENTRIES];
+            sbox2 = new int[SBOX_ENTRIES];
+            sbox3 = new int[SBOX_ENTRIES];
+            sbox4 = new int[SBOX_ENTRIES];
 
-        // xor the key over the p-boxes
+            blShared = false;
+        }
+
+        System.arraycopy(PBOX_INIT, 0, pbox, 0, PBOX_ENTRIES);
+        System.arraycopy(SBOX_INIT_1, 0, sbox1, 0, SBOX_ENTRIES);
+        System.arraycopy(SBOX_INIT_2, 0, sbox2, 0, SBOX_ENTRIES);
+        System.arraycopy(SBOX_INIT_3, 0, sbox3, 0, SBOX_ENTRIES);
+        System.arraycopy(SBOX_INIT_4, 0, sbox4, 0, SBOX_ENTRIES);
+
+        // (determined on demand only)
+        nWeakKey = -1;
 
         if (nLen == 0) {
             return; // such a setup is also valid (zero key is possible)
         }
 
+        // xor the key over the p-boxes
+
         int nBuild = 0;
         int nOfsBak = nOfs;
         int nEnd = nOfs + nLen;
@@ -283,79 +390,198 @@ public class BlowfishECB {
 
         // encrypt all boxes with the all zero string
 
-        for (nI = 0; nI < BLOCKSIZE; nI++) {
-            blockBuf[nI] = 0;
-        }
+        expandBoxes(pbox, sbox1, sbox2, sbox3, sbox4, null);
+    }
 
-        // (same as above)
+    /**
+     * To clear data in the boxes before an instance is freed, the
+     * actual value of this call can be argued, yet still nice to
+     * have it.
+     */
+    public void cleanUp() {
+        int nI;
 
-        for (nI = 0; nI < PBOX_ENTRIES; ) {
-            encryptPrv(blockBuf, 0, blockBuf, 0, BLOCKSIZE);
-            pbox[nI] = BinConverter.byteArrayToInt(blockBuf, 0);
-            nI++;
-            pbox[nI] = BinConverter.byteArrayToInt(blockBuf, 4);
-            nI++;
+        if (nKeyState == KEY_PENDING) {
+            dropPendingKey();
         }
 
-        for (nI = 0; nI < SBOX_ENTRIES; ) {
-            encryptPrv(blockBuf, 0, blockBuf, 0, BLOCKSIZE);
-            sbox1[nI] = BinConverter.byteArrayToInt(blockBuf, 0);
-            nI++;
-            sbox1[nI] = BinConverter.byteArrayToInt(blockBuf, 4);
-            nI++;
+        if (blShared) {
+            // (the boxes belong to the key schedule, so just let go of them,
+            // the fresh ones are all zero already)
+            pbox = new int[PBOX_ENTRIES];
+            sbox1 = new int[SBOX_ENTRIES];
+            sbox2 = new int[SBOX_ENTRIES];
+            sbox3 = new int[SBOX_ENTRIES];
+            sbox4 = new int[SBOX_ENTRIES];
+
+            blShared = false;
+            nWeakKey = -1;
+            return;
         }
 
-        for (nI = 0; nI < SBOX_ENTRIES; ) {
-            encryptPrv(blockBuf, 0, blockBuf, 0, BLOCKSIZE);
-            sbox2[nI] = BinConverter.byteArrayToInt(blockBuf, 0);
-            nI++;
-            sbox2[nI] = BinConverter.byteArrayToInt(blockBuf, 4);
-            nI++;
+        for (nI = 0; nI < PBOX_ENTRIES; nI++) {
+            pbox[nI] = 0;
         }
 
-        for (nI = 0; nI < SBOX_ENTRIES; ) {
-            encryptPrv(blockBuf, 0, blockBuf, 0, BLOCKSIZE);
-            sbox3[nI] = BinConverter.byteArrayToInt(blockBuf, 0);
-            nI++;
-            sbox3[nI] = BinConverter.byteArrayToInt(blockBuf, 4);
-            nI++;
+        for (nI = 0; nI < SBOX_ENTRIES; nI++) {
+            sbox1[nI] = sbox2[nI] = sbox3[nI] = sbox4[nI] = 0;
         }
 
-        for (nI = 0; nI < SBOX_ENTRIES; ) {
-            encryptPrv(blockBuf, 0, blockBuf, 0, BLOCKSIZE);
-            sbox4[nI] = BinConverter.byteArrayToInt(blockBuf, 0);
-            nI++;
-            sbox4[nI] = BinConverter.byteArrayToInt(blockBuf, 4);
-            nI++;
+        nWeakKey = -1;
+    }
+
+    // the second half of the key setup: encrypts the all zero block over and
+    // over again, replacing the P-array and then the S-boxes with the output;
+    // the halves stay in locals all the time (the P-array still changes while
+    // it gets replaced, so it is read from the array in the first loop only);
+    // bcrypt's EksBlowfish shares this, mixing the salt (its first four
+    // words, alternating halves) into every block, for the plain key setup
+    // saltWords is null
+
+    static void expandBoxes(
+            int[] pbox,
+            int[] sbox1,
+            int[] sbox2,
+            int[] sbox3,
+            int[] sbox4,
+            int[] saltWords) {
+        int nL = 0;
+        int nR = 0;
+        int nSalt = 0;
+
+        for (int nI = 0; nI < PBOX_ENTRIES; nI += 2) {
+            if (saltWords != null) {
+                nL ^= saltWords[nSalt];
+                nR ^= saltWords[nSalt + 1];
+                nSalt ^= 2;
+            }
+
+            nL ^= pbox[0];
+            nR ^= (sbox1[nL >>> 24] + sbox2[nL >>> 16 & 0x0ff] ^ sbox3[nL >>> 8 & 0x0ff]) + sbox4[nL & 0x0ff] ^ pbox[1];
+            nL ^= (sbox1[nR >>> 24] + sbox2[nR >>> 16 & 0x0ff] ^ sbox3[nR >>> 8 & 0x0ff]) + sbox4[nR & 0x0ff] ^ pbox[2];
+            nR ^= (sbox1[nL >>> 24] + sbox2[nL >>> 16 & 0x0ff] ^ sbox3[nL >>> 8 & 0x0ff]) + sbox4[nL & 0x0ff] ^ pbox[3];
+            nL ^= (sbox1[nR >>> 24] + sbox2[nR >>> 16 & 0x0ff] ^ sbox3[nR >>> 8 & 0x0ff]) + sbox4[nR & 0x0ff] ^ pbox[4];
+            nR ^= (sbox1[nL >>> 24] + sbox2[nL >>> 16 & 0x0ff] ^ sbox3[nL >>> 8 & 0x0ff]) + sbox4[nL & 0x0ff] ^ pbox[5];
+            nL ^= (sbox1[nR >>> 24] + sbox2[nR >>> 16 & 0x0ff] ^ sbox3[nR >>> 8 & 0x0ff]) + sbox4[nR & 0x0ff] ^ pbox[6];
+            nR ^= (sbox1[nL >>> 24] + sbox2[nL >>> 16 & 0x0ff] ^ sbox3[nL >>> 8 & 0x0ff]) + sbox4[nL & 0x0ff] ^ pbox[7];
+            nL ^= (sbox1[nR >>> 24] + sbox2[nR >>> 16 & 0x0ff] ^ sbox3[nR >>> 8 & 0x0ff]) + sbox4[nR & 0x0ff] ^ pbox[8];
+            nR ^= (sbox1[nL >>> 24] + sbox2[nL >>> 16 & 0x0ff] ^ sbox3[nL >>> 8 & 0x0ff]) + sbox4[nL & 0x0ff] ^ pbox[9];
+            nL ^= (sbox1[nR >>> 24] + sbox2[nR >>> 16 & 0x0ff] ^ sbox3[nR >>> 8 & 0x0ff]) + sbox4[nR & 0x0ff] ^ pbox[10];
+            nR ^= (sbox1[nL >>> 24] + sbox2[nL >>> 16 & 0x0ff] ^ sbox3[nL >>> 8 & 0x0ff]) + sbox4[nL & 0x0ff] ^ pbox[11];
+            nL ^= (sbox1[nR >>> 24] + sbox2[nR >>> 16 & 0x0ff] ^ sbox3[nR >>> 8 & 0x0ff]) + sbox4[nR & 0x0ff] ^ pbox[12];
+            nR ^= (sbox1[nL >>> 24] + sbox2[nL >>> 16 & 0x0ff] ^ sbox3[nL >>> 8 & 0x0ff]) + sbox4[nL & 0x0ff] ^ pbox[13];
+            nL ^= (sbox1[nR >>> 24] + sbox2[nR >>> 16 & 0x0ff] ^ sbox3[nR >>> 8 & 0x0ff]) + sbox4[nR & 0x0ff] ^ pbox[14];
+            nR ^= (sbox1[nL >>> 24] + sbox2[nL >>> 16 & 0x0ff] ^ sbox3[nL >>> 8 & 0x0ff]) + sbox4[nL & 0x0ff] ^ pbox[15];
+            nL ^= (sbox1[nR >>> 24] + sbox2[nR >>> 16 & 0x0ff] ^ sbox3[nR >>> 8 & 0x0ff]) + sbox4[nR & 0x0ff] ^ pbox[16];
+
+            nR ^= pbox[17];
+
+            // (the halves get swapped at the end)
+            int nTmp = nL;
+            nL = nR;
+            nR = nTmp;
+
+            pbox[nI] = nL;
+            pbox[nI + 1] = nR;
         }
 
-        // (determined on demand only)
-        nWeakKey = -1;
+        int nPBox00 = pbox[0];
+        int nPBox01 = pbox[1];
+        int nPBox02 = pbox[2];
+        int nPBox03 = pbox[3];
+        int nPBox04 = pbox[4];
+        int nPBox05 = pbox[5];
+        int nPBox06 = pbox[6];
+        int nPBox07 = pbox[7];
+        int nPBox08 = pbox[8];
+        int nPBox09 = pbox[9];
+        int nPBox10 = pbox[10];
+        int nPBox11 = pbox[11];
+        int nPBox12 = pbox[12];
+        int nPBox13 = pbox[13];
+        int nPBox14 = pbox[14];
+        int nPBox15 = pbox[15];
+        int nPBox16 = pbox[16];
+        int nPBox17 = pbox[17];
+
+        int[][] sboxes = {sbox1, sbox2, sbox3, sbox4};
+        for (int[] sbox : sboxes) {
+            for (int nI = 0; nI < SBOX_ENTRIES; nI += 2) {
+                if (saltWords != null) {
+                    nL ^= saltWords[nSalt];
+                    nR ^= saltWords[nSalt + 1];
+                    nSalt ^= 2;
+                }
+
+                nL ^= nPBox00;
+                nR ^= (sbox1[nL >>> 24] + sbox2[nL >>> 16 & 0x0ff] ^ sbox3[nL >>> 8 & 0x0ff]) + sbox4[nL & 0x0ff] ^ nPBox01;
+                nL ^= (sbox1[nR >>> 24] + sbox2[nR >>> 16 & 0x0ff] ^ sbox3[nR >>> 8 & 0x0ff]) + sbox4[nR & 0x0ff] ^ nPBox02;
+                nR ^= (sbox1[nL >>> 24] + sbox2[nL >>> 16 & 0x0ff] ^ sbox3[nL >>> 8 & 0x0ff]) + sbox4[nL & 0x0ff] ^ nPBox03;
+                nL ^= (sbox1[nR >>> 24] + sbox2[nR >>> 16 & 0x0ff] ^ sbox3[nR >>> 8 & 0x0ff]) + sbox4[nR & 0x0ff] ^ nPBox04;
+                nR ^= (sbox1[nL >>> 24] + sbox2[nL >>> 16 & 0x0ff] ^ sbox3[nL >>> 8 & 0x0ff]) + sbox4[nL & 0x0ff] ^ nPBox05;
+                nL ^= (sbox1[nR >>> 24] + sbox2[nR >>> 16 & 0x0ff] ^ sbox3[nR >>> 8 & 0x0ff]) + sbox4[nR & 0x0ff] ^ nPBox06;
+                nR ^= (sbox1[nL >>> 24] + sbox2[nL >>> 16 & 0x0ff] ^ sbox3[nL >>> 8 & 0x0ff]) + sbox4[nL & 0x0ff] ^ nPBox07;
+                nL ^= (sbox1[nR >>> 24] + sbox2[nR >>> 16 & 0x0ff] ^ sbox3[nR >>> 8 & 0x0ff]) + sbox4[nR & 0x0ff] ^ nPBox08;
+                nR ^= (sbox1[nL >>> 24] + sbox2[nL >>> 16 & 0x0ff] ^ sbox3[nL >>> 8 & 0x0ff]) + sbox4[nL & 0x0ff] ^ nPBox09;
+                nL ^= (sbox1[nR >>> 24] + sbox2[nR >>> 16 & 0x0ff] ^ sbox3[nR >>> 8 & 0x0ff]) + sbox4[nR & 0x0ff] ^ nPBox10;
+                nR ^= (sbox1[nL >>> 24] + sbox2[nL >>> 16 & 0x0ff] ^ sbox3[nL >>> 8 & 0x0ff]) + sbox4[nL & 0x0ff] ^ nPBox11;
+                nL ^= (sbox1[nR >>> 24] + sbox2[nR >>> 16 & 0x0ff] ^ sbox3[nR >>> 8 & 0x0ff]) + sbox4[nR & 0x0ff] ^ nPBox12;
+                nR ^= (sbox1[nL >>> 24] + sbox2[nL >>> 16 & 0x0ff] ^ sbox3[nL >>> 8 & 0x0ff]) + sbox4[nL & 0x0ff] ^ nPBox13;
+                nL ^= (sbox1[nR >>> 24] + sbox2[nR >>> 16 & 0x0ff] ^ sbox3[nR >>> 8 & 0x0ff]) + sbox4[nR & 0x0ff] ^ nPBox14;
+                nR ^= (sbox1[nL >>> 24] + sbox2[nL >>> 16 & 0x0ff] ^ sbox3[nL >>> 8 & 0x0ff]) + sbox4[nL & 0x0ff] ^ nPBox15;
+                nL ^= (sbox1[nR >>> 24] + sbox2[nR >>> 16 & 0x0ff] ^ sbox3[nR >>> 8 & 0x0ff]) + sbox4[nR & 0x0ff] ^ nPBox16;
+
+                nR ^= nPBox17;
+
+                int nTmp = nL;
+                nL = nR;
+                nR = nTmp;
+
+                sbox[nI] = nL;
+                sbox[nI + 1] = nR;
+            }
+        }
     }
 
     /**
-     * To clear data in the boxes before an instance is freed, the
-     * actual value of this call can be argued, yet still nice to
-     * have it.
+     * Makes sure the key is expanded, must be called by every method working
+     * on the boxes (except for the ones called by initialize()), so lazy
+     * instances get set up on first use.
      */
-    public void cleanUp() {
-        int nI;
-
-
-        for (nI = 0; nI < PBOX_ENTRIES; nI++) {
-            pbox[nI] = 0;
+    protected final void checkKey() {
+        if (nKeyState != KEY_READY) {
+            expandPendingKey();
         }
+    }
 
-        for (nI = 0; nI < SBOX_ENTRIES; nI++) {
-            sbox1[nI] = sbox2[nI] = sbox3[nI] = sbox4[nI] = 0;
+    private synchronized void expandPendingKey() {
+        // (nothing to do if another thread was faster, or if this thread is
+        // already expanding, further up the stack)
+        if (nKeyState != KEY_PENDING) {
+            return;
         }
 
-        int nC;
-        for (nI = 0, nC = blockBuf.length; nI < nC; nI++) {
-            blockBuf[nI] = 0;
+        nKeyState = KEY_EXPANDING;
+
+        byte[] key = pendingKey;
+        pendingKey = null;
+
+        initialize(key, 0, key.length);
+
+        Arrays.fill(key, (byte) 0);
+
+        nKeyState = KEY_READY;
+    }
+
+    private synchronized void dropPendingKey() {
+        if (nKeyState != KEY_PENDING) {
+            return;
         }
 
-        nWeakKey = -1;
+        Arrays.fill(pendingKey, (byte) 0);
+        pendingKey = null;
+
+        nKeyState = KEY_READY;
     }
 
     /**
@@ -366,32 +592,123 @@ public class BlowfishECB {
      * @return true: weak key detected / false: key is fine
      */
     public boolean weakKeyCheck() {
-
+        checkKey();
 
         if (nWeakKey != -1) {
             return nWeakKey == 1;
         }
 
-        // a weak key is defined to create identical entries in
-        // at least one of the s-boxes...
+        boolean blWeak = weakSboxes(sbox1, sbox2, sbox3, sbox4);
 
-        for (int nI = 0; nI < SBOX_ENTRIES - 1; nI++) {
-            for (int nJ = nI + 1; nJ < SBOX_ENTRIES; nJ++) {
-                if (sbox1[nI] == sbox1[nJ]
-                        || sbox2[nI] == sbox2[nJ]
-                        || sbox3[nI] == sbox3[nJ]
-                        || sbox4[nI] == sbox4[nJ]) {
-                    nWeakKey = 1;
-                    return true;
-                }
+        nWeakKey = blWeak ? 1 : 0;
+
+        return blWeak;
+    }
+
+    /**
+     * Screens a whole batch of keys for weak ones on the default fork/join
+     * pool. Each key gets expanded on its own, so this is about as expensive
+     * as creating an instance for every key.
+     *
+     * @param keys the keys to check, each one all of its array
+     * @return for every key, true if it is weak
+     */
+    public static boolean[] weakKeyCheck(
+            byte[][] keys) {
+        return weakKeyCheck(keys, DefaultPool.POOL);
+    }
+
+    /**
+     * Screens a whole batch of keys for weak ones on the given pool.
+     *
+     * @param keys the keys to check, each one all of its array
+     * @param pool the pool to run on
+     * @return for every key, true if it is weak
+     */
+    public static boolean[] weakKeyCheck(
+            byte[][] keys,
+            ForkJoinPool pool) {
+        boolean[] result = new boolean[keys.length];
+
+        pool.invoke(new WeakKeyTask(keys, result, 0, keys.length));
+
+        return result;
+    }
+
+    // a weak key is defined to create identical entries in at least one of
+    // the s-boxes; sorting a copy of each box finds them in O(n log n)
+    // instead of comparing all the pairs
+
+    static boolean weakSboxes(
+            int[] sbox1,
+            int[] sbox2,
+            int[] sbox3,
+            int[] sbox4) {
+        int[] sorted = new int[SBOX_ENTRIES];
+
+        return hasTwins(sbox1, sorted)
+                || hasTwins(sbox2, sorted)
+                || hasTwins(sbox3, sorted)
+                || hasTwins(sbox4, sorted);
+    }
+
+    private static boolean hasTwins(
+            int[] sbox,
+            int[] sorted) {
+        System.arraycopy(sbox, 0, sorted, 0, SBOX_ENTRIES);
+        Arrays.sort(sorted);
+
+        for (int nI = 1; nI < SBOX_ENTRIES; nI++) {
+            if (sorted[nI - 1] == sorted[nI]) {
+                return true;
             }
         }
 
-        nWeakKey = 0;
-
         return false;
     }
 
+    // checks a range of keys, halving it while there's more than a few
+
+    private static final class WeakKeyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private static final int SLICE = 16;
+
+        private final byte[][] keys;
+        private final boolean[] result;
+        private final int nFrom;
+        private final int nTo;
+
+        WeakKeyTask(
+                byte[][] keys,
+                boolean[] result,
+                int nFrom,
+                int nTo) {
+            this.keys = keys;
+            this.result = result;
+            this.nFrom = nFrom;
+            this.nTo = nTo;
+        }
+
+        @Override
+        protected void compute() {
+            if (nTo - nFrom <= SLICE) {
+                for (int nI = nFrom; nI < nTo; nI++) {
+                    BlowfishECB bfe = new BlowfishECB(keys[nI], 0, keys[nI].length);
+                    result[nI] = bfe.weakKeyCheck();
+                    bfe.cleanUp();
+                }
+                return;
+            }
+
+            int nMid = nFrom + nTo >>> 1;
+
+            invokeAll(
+                    new WeakKeyTask(keys, result, nFrom, nMid),
+                    new WeakKeyTask(keys, result, nMid, nTo));
+        }
+    }
+
     protected int encryptPrv(
             byte[] inBuf,
             int nInPos,
@@ -435,17 +752,12 @@ public class BlowfishECB {
 
         int nOutPos1 = nOutPos;
         while (nInPos1 < nC) {
-            // full speed here, so we don't use BinConverter
-
-            int nHi = inBuf[nInPos1++] << 24;
-            nHi |= inBuf[nInPos1++] << 16 & 0x0ff0000;
-            nHi |= inBuf[nInPos1++] << 8 & 0x000ff00;
-            nHi |= inBuf[nInPos1++] & 0x00000ff;
+            // full speed here, BigEndian gets inlined (and turns into a
+            // single load per word on Java 9+)
 
-            int nLo = inBuf[nInPos1++] << 24;
-            nLo |= inBuf[nInPos1++] << 16 & 0x0ff0000;
-            nLo |= inBuf[nInPos1++] << 8 & 0x000ff00;
-            nLo |= inBuf[nInPos1++] & 0x00000ff;
+            int nHi = BigEndian.getInt(inBuf, nInPos1);
+            int nLo = BigEndian.getInt(inBuf, nInPos1 + 4);
+            nInPos1 += BLOCKSIZE;
 
             nHi ^= nPBox00;
             nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox01;
@@ -467,16 +779,9 @@ public class BlowfishECB {
 
             nLo ^= nPBox17;
 
-            outBuf[nOutPos1++] = (byte) (nLo >>> 24);
-            outBuf[nOutPos1++] = (byte) (nLo >>> 16);
-            outBuf[nOutPos1++] = (byte) (nLo >>> 8);
-            outBuf[nOutPos1++] = (byte) nLo;
-
-            outBuf[nOutPos1++] = (byte) (nHi >>> 24);
-            outBuf[nOutPos1++] = (byte) (nHi >>> 16);
-            outBuf[nOutPos1++] = (byte) (nHi >>> 8);
-            outBuf[nOutPos1] = (byte) nHi;
-            nOutPos1++;
+            BigEndian.putInt(outBuf, nOutPos1, nLo);
+            BigEndian.putInt(outBuf, nOutPos1 + 4, nHi);
+            nOutPos1 += BLOCKSIZE;
         }
 
         return nLen;
@@ -499,91 +804,230 @@ public class BlowfishECB {
             byte[] outBuf,
             int nOutPos,
             int nLen) {
-        return encryptPrv(inBuf, nInPos, outBuf, nOutPos, nLen);
+        checkKey();
+
+        nLen -= nLen % BLOCKSIZE;
+
+        encryptBlocks(inBuf, nInPos, outBuf, nOutPos, nLen);
+
+        return nLen;
+    }
+
+    // encrypts whole blocks in ECB mode, derived classes can't change that
+    private void encryptBlocks(
+            byte[] inBuf,
+            int nInPos,
+            byte[] outBuf,
+            int nOutPos,
+            int nLen) {
+        if (nLen < INTERLEAVE_THRESHOLD) {
+            encryptPrv(inBuf, nInPos, outBuf, nOutPos, nLen);
+            return;
+        }
+
+        int nPairs = nLen & ~((BLOCKSIZE << 1) - 1);
+
+        encryptInterleaved(inBuf, nInPos, outBuf, nOutPos, nPairs);
+        encryptPrv(inBuf, nInPos + nPairs, outBuf, nOutPos + nPairs, nLen - nPairs);
     }
 
     /**
-     * Encrypts an integer buffer to another integer buffer.
+     * Encrypts a byte buffer to another buffer on the default fork/join pool,
+     * extra misaligned data will not be processed. Buffers smaller than
+     * PARALLEL_THRESHOLD bytes are encrypted right away by the calling thread.
      *
      * @param inBuf   buffer with plaintext data
      * @param nInPos  where to start reading the plaintext data
-     * @param outBuf  buffer to write the ciphertext data
+     * @param outBuf  buffer to put the ciphertext data (either the same range
+     *                as the plaintext or one not overlapping it)
      * @param nOutPos where to start writing the ciphertext data
-     * @param nLen    number of integers to encrypt
+     * @param nLen    number of bytes to encrypt
+     * @return number of bytes to encrypted
      */
-    public void encrypt(
-            int[] inBuf,
+    public int encryptParallel(
+            byte[] inBuf,
             int nInPos,
-            int[] outBuf,
+            byte[] outBuf,
             int nOutPos,
             int nLen) {
-        int nC = nInPos + nLen;
-
-        while (nInPos < nC) {
-            BinConverter.intToByteArray(inBuf[nInPos], blockBuf, 0);
-            nInPos++;
-            BinConverter.intToByteArray(inBuf[nInPos], blockBuf, 4);
-            nInPos++;
-
-            encrypt(blockBuf, 0, blockBuf, 0, blockBuf.length);
-
-            outBuf[nOutPos] = BinConverter.byteArrayToInt(blockBuf, 0);
-            nOutPos++;
-            outBuf[nOutPos] = BinConverter.byteArrayToInt(blockBuf, 4);
-            nOutPos++;
-        }
+        return encryptParallel(inBuf, nInPos, outBuf, nOutPos, nLen, DefaultPool.POOL);
     }
 
     /**
-     * Encrypts an long buffer to another long buffer.
+     * Encrypts a byte buffer to another buffer on the given fork/join pool,
+     * extra misaligned data will not be processed. Buffers smaller than
+     * PARALLEL_THRESHOLD bytes are encrypted right away by the calling thread.
      *
      * @param inBuf   buffer with plaintext data
      * @param nInPos  where to start reading the plaintext data
-     * @param outBuf  buffer to write the ciphertext data
+     * @param outBuf  buffer to put the ciphertext data (either the same range
+     *                as the plaintext or one not overlapping it)
      * @param nOutPos where to start writing the ciphertext data
-     * @param nLen    number of longs to decrypt
+     * @param nLen    number of bytes to encrypt
+     * @param pool    the pool to run on
+     * @return number of bytes to encrypted
      */
-    public void encrypt(
-            long[] inBuf,
+    public int encryptParallel(
+            byte[] inBuf,
             int nInPos,
-            long[] outBuf,
+            byte[] outBuf,
             int nOutPos,
-            int nLen) {
-        int nC = nInPos + nLen;
-
-        while (nInPos < nC) {
-            BinConverter.longToByteArray(inBuf[nInPos], blockBuf, 0);
-            nInPos++;
+            int nLen,
+            ForkJoinPool pool) {
+        checkKey();
 
-            encrypt(blockBuf, 0, blockBuf, 0, blockBuf.length);
+        nLen -= nLen % BLOCKSIZE;
 
-            outBuf[nOutPos] = BinConverter.byteArrayToInt(blockBuf, 0);
-            nOutPos++;
+        if (nLen < PARALLEL_THRESHOLD || pool.getParallelism() < 2) {
+            encrypt(inBuf, nInPos, outBuf, nOutPos, nLen);
+        } else {
+            pool.invoke(new ParallelTask(true, inBuf, nInPos, outBuf, nOutPos, nLen));
         }
+
+        return nLen;
     }
 
     /**
-     * Decrypts a byte buffer to another buffer, extra misaligned data
-     * will not be processed.
+     * Decrypts a byte buffer to another buffer on the default fork/join pool,
+     * extra misaligned data will not be processed. Buffers smaller than
+     * PARALLEL_THRESHOLD bytes are decrypted right away by the calling thread.
      *
      * @param inBuf   buffer with ciphertext data
      * @param nInPos  where to start reading the ciphertext data
-     * @param outBuf  buffer to put the plaintext data
+     * @param outBuf  buffer to put the plaintext data (either the same range
+     *                as the ciphertext or one not overlapping it)
      * @param nOutPos where to start writing the plaintext data
      * @param nLen    number of bytes to decrypt
-     * @return number of bytes to encrypted
+     * @return number of bytes to decrypted
      */
-    public int decrypt(
+    public int decryptParallel(
             byte[] inBuf,
             int nInPos,
             byte[] outBuf,
             int nOutPos,
             int nLen) {
-        // (same methodology as above)
+        return decryptParallel(inBuf, nInPos, outBuf, nOutPos, nLen, DefaultPool.POOL);
+    }
+
+    /**
+     * Decrypts a byte buffer to another buffer on the given fork/join pool,
+     * extra misaligned data will not be processed. Buffers smaller than
+     * PARALLEL_THRESHOLD bytes are decrypted right away by the calling thread.
+     *
+     * @param inBuf   buffer with ciphertext data
+     * @param nInPos  where to start reading the ciphertext data
+     * @param outBuf  buffer to put the plaintext data (either the same range
+     *                as the ciphertext or one not overlapping it)
+     * @param nOutPos where to start writing the plaintext data
+     * @param nLen    number of bytes to decrypt
+     * @param pool    the pool to run on
+     * @return number of bytes to decrypted
+     */
+    public int decryptParallel(
+            byte[] inBuf,
+            int nInPos,
+            byte[] outBuf,
+            int nOutPos,
+            int nLen,
+            ForkJoinPool pool) {
+        checkKey();
 
         nLen -= nLen % BLOCKSIZE;
 
-        int nC = nInPos + nLen;
+        if (nLen < PARALLEL_THRESHOLD || pool.getParallelism() < 2) {
+            decrypt(inBuf, nInPos, outBuf, nOutPos, nLen);
+        } else {
+            pool.invoke(new ParallelTask(false, inBuf, nInPos, outBuf, nOutPos, nLen));
+        }
+
+        return nLen;
+    }
+
+    // splits a block aligned range in halves until the pieces are small
+    // enough, ECB blocks don't depend on each other so any split works; the
+    // pieces go through the overridable routines, so derived engines like
+    // BlowfishFlatECB or BlowfishVectorECB run them on their own kernels
+    // (chaining modes must override the parallel methods, as BlowfishCBC
+    // does)
+
+    private final class ParallelTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final boolean blEncrypt;
+        private final byte[] inBuf;
+        private final int nInPos;
+        private final byte[] outBuf;
+        private final int nOutPos;
+        private final int nLen;
+
+        ParallelTask(
+                boolean blEncrypt,
+                byte[] inBuf,
+                int nInPos,
+                byte[] outBuf,
+                int nOutPos,
+                int nLen) {
+            this.blEncrypt = blEncrypt;
+            this.inBuf = inBuf;
+            this.nInPos = nInPos;
+            this.outBuf = outBuf;
+            this.nOutPos = nOutPos;
+            this.nLen = nLen;
+        }
+
+        @Override
+        protected void compute() {
+            if (nLen <= PARALLEL_SLICE) {
+                if (blEncrypt) {
+                    encrypt(inBuf, nInPos, outBuf, nOutPos, nLen);
+                } else {
+                    decrypt(inBuf, nInPos, outBuf, nOutPos, nLen);
+                }
+                return;
+            }
+
+            int nHalf = nLen >>> 1 & ~(BLOCKSIZE - 1);
+
+            invokeAll(
+                    new ParallelTask(blEncrypt, inBuf, nInPos, outBuf, nOutPos, nHalf),
+                    new ParallelTask(blEncrypt, inBuf, nInPos + nHalf,
+                            outBuf, nOutPos + nHalf, nLen - nHalf));
+        }
+    }
+
+    // the common pool exists since Java 8 only, older runtimes get their own
+
+    static final class DefaultPool {
+        static final ForkJoinPool POOL = commonPool();
+
+        private static ForkJoinPool commonPool() {
+            try {
+                return (ForkJoinPool) ForkJoinPool.class.getMethod("commonPool").invoke(null);
+            } catch (Exception e) {
+                return new ForkJoinPool();
+            }
+        }
+    }
+
+    /**
+     * Encrypts an integer buffer to another integer buffer.
+     *
+     * @param inBuf   buffer with plaintext data
+     * @param nInPos  where to start reading the plaintext data
+     * @param outBuf  buffer to write the ciphertext data
+     * @param nOutPos where to start writing the ciphertext data
+     * @param nLen    number of integers to encrypt (two make a block, an odd
+     *                one at the end will not be processed)
+     */
+    public void encrypt(
+            int[] inBuf,
+            int nInPos,
+            int[] outBuf,
+            int nOutPos,
+            int nLen) {
+        checkKey();
+
+        int nC = nInPos + (nLen & ~1);
 
         int[] pbox = this.pbox;
         int nPBox00 = pbox[0];
@@ -611,141 +1055,1198 @@ public class BlowfishECB {
         int[] sbox4 = this.sbox4;
 
         while (nInPos < nC) {
-            int nHi = inBuf[nInPos] << 24;
-            nInPos++;
-            nHi |= inBuf[nInPos] << 16 & 0x0ff0000;
-            nInPos++;
-            nHi |= inBuf[nInPos] << 8 & 0x000ff00;
-            nInPos++;
-            nHi |= inBuf[nInPos] & 0x00000ff;
-            nInPos++;
-
-            int nLo = inBuf[nInPos] << 24;
-            nInPos++;
-            nLo |= inBuf[nInPos] << 16 & 0x0ff0000;
-            nInPos++;
-            nLo |= inBuf[nInPos] << 8 & 0x000ff00;
-            nInPos++;
-            nLo |= inBuf[nInPos] & 0x00000ff;
-            nInPos++;
-
-            nHi ^= nPBox17;
-            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox16;
-            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox15;
-            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox14;
-            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox13;
-            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox12;
-            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox11;
-            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox10;
-            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox09;
-            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox08;
-            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox07;
-            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox06;
-            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox05;
-            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox04;
-            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox03;
-            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox02;
-            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox01;
-
-            nLo ^= nPBox00;
-
-            outBuf[nOutPos] = (byte) (nLo >>> 24);
-            nOutPos++;
-            outBuf[nOutPos] = (byte) (nLo >>> 16);
-            nOutPos++;
-            outBuf[nOutPos] = (byte) (nLo >>> 8);
-            nOutPos++;
-            outBuf[nOutPos] = (byte) nLo;
-            nOutPos++;
-
-            outBuf[nOutPos] = (byte) (nHi >>> 24);
-            nOutPos++;
-            outBuf[nOutPos] = (byte) (nHi >>> 16);
-            nOutPos++;
-            outBuf[nOutPos] = (byte) (nHi >>> 8);
-            nOutPos++;
-            outBuf[nOutPos] = (byte) nHi;
-            nOutPos++;
-        }
+            int nHi = inBuf[nInPos++];
+            int nLo = inBuf[nInPos++];
 
-        return nLen;
+            nHi ^= nPBox00;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox01;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox02;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox03;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox04;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox05;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox06;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox07;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox08;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox09;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox10;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox11;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox12;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox13;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox14;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox15;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox16;
+
+            nLo ^= nPBox17;
+
+            outBuf[nOutPos++] = nLo;
+            outBuf[nOutPos++] = nHi;
+        }
     }
 
     /**
-     * Decrypts an integer buffer to another integer buffer.
+     * Encrypts a long buffer to another long buffer.
      *
-     * @param inBuf   buffer with ciphertext data
-     * @param nInPos  where to start reading the ciphertext data
-     * @param outBuf  buffer to get the plaintext data
-     * @param nOutPos where to start writing the plaintext data
-     * @param nLen    number of integers to decrypt
+     * @param inBuf   buffer with plaintext data
+     * @param nInPos  where to start reading the plaintext data
+     * @param outBuf  buffer to write the ciphertext data
+     * @param nOutPos where to start writing the ciphertext data
+     * @param nLen    number of longs to encrypt
      */
-    public void decrypt(
-            int[] inBuf,
+    public void encrypt(
+            long[] inBuf,
             int nInPos,
-            int[] outBuf,
+            long[] outBuf,
             int nOutPos,
             int nLen) {
+        checkKey();
+
         int nC = nInPos + nLen;
 
+        int[] pbox = this.pbox;
+        int nPBox00 = pbox[0];
+        int nPBox01 = pbox[1];
+        int nPBox02 = pbox[2];
+        int nPBox03 = pbox[3];
+        int nPBox04 = pbox[4];
+        int nPBox05 = pbox[5];
+        int nPBox06 = pbox[6];
+        int nPBox07 = pbox[7];
+        int nPBox08 = pbox[8];
+        int nPBox09 = pbox[9];
+        int nPBox10 = pbox[10];
+        int nPBox11 = pbox[11];
+        int nPBox12 = pbox[12];
+        int nPBox13 = pbox[13];
+        int nPBox14 = pbox[14];
+        int nPBox15 = pbox[15];
+        int nPBox16 = pbox[16];
+        int nPBox17 = pbox[17];
+
+        int[] sbox1 = this.sbox1;
+        int[] sbox2 = this.sbox2;
+        int[] sbox3 = this.sbox3;
+        int[] sbox4 = this.sbox4;
+
         while (nInPos < nC) {
-            BinConverter.intToByteArray(inBuf[nInPos], blockBuf, 0);
-            nInPos++;
-            BinConverter.intToByteArray(inBuf[nInPos], blockBuf, 4);
-            nInPos++;
+            long lBlock = inBuf[nInPos++];
+            int nHi = (int) (lBlock >>> 32);
+            int nLo = (int) lBlock;
+
+            nHi ^= nPBox00;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox01;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox02;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox03;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox04;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox05;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox06;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox07;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox08;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox09;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox10;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox11;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox12;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox13;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox14;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox15;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox16;
 
-            decrypt(blockBuf, 0, blockBuf, 0, blockBuf.length);
+            nLo ^= nPBox17;
 
-            outBuf[nOutPos] = BinConverter.byteArrayToInt(blockBuf, 0);
-            nOutPos++;
-            outBuf[nOutPos] = BinConverter.byteArrayToInt(blockBuf, 4);
-            nOutPos++;
+            outBuf[nOutPos++] = (long) nLo << 32 | nHi & 0x0ffffffffL;
         }
     }
 
     /**
-     * Decrypts an long buffer to another long buffer.
+     * Encrypts a single block, given as a long (the first four bytes of the block
+     * in the upper half). Nothing gets allocated or copied, this is e.g. for
+     * scrambling 64bit numbers like database IDs.
+     *
+     * @param lPlain the plaintext block
+     * @return the ciphertext block
+     */
+    public long encryptBlock(
+            long lPlain) {
+        checkKey();
+
+        // (the P-array is read from the array, worth preloading for more
+        // than one block only)
+
+        int[] pbox = this.pbox;
+        int[] sbox1 = this.sbox1;
+        int[] sbox2 = this.sbox2;
+        int[] sbox3 = this.sbox3;
+        int[] sbox4 = this.sbox4;
+
+        int nHi = (int) (lPlain >>> 32);
+        int nLo = (int) lPlain;
+
+        nHi ^= pbox[0];
+        nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ pbox[1];
+        nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ pbox[2];
+        nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ pbox[3];
+        nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ pbox[4];
+        nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ pbox[5];
+        nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ pbox[6];
+        nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ pbox[7];
+        nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ pbox[8];
+        nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ pbox[9];
+        nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ pbox[10];
+        nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ pbox[11];
+        nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ pbox[12];
+        nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ pbox[13];
+        nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ pbox[14];
+        nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ pbox[15];
+        nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ pbox[16];
+
+        nLo ^= pbox[17];
+
+        return (long) nLo << 32 | nHi & 0x0ffffffffL;
+    }
+
+    /**
+     * Decrypts a single block, given as a long (the first four bytes of the block
+     * in the upper half). Nothing gets allocated or copied, this is e.g. for
+     * scrambling 64bit numbers like database IDs.
+     *
+     * @param lCipher the ciphertext block
+     * @return the plaintext block
+     */
+    public long decryptBlock(
+            long lCipher) {
+        checkKey();
+
+        // (the P-array is read from the array, worth preloading for more
+        // than one block only)
+
+        int[] pbox = this.pbox;
+        int[] sbox1 = this.sbox1;
+        int[] sbox2 = this.sbox2;
+        int[] sbox3 = this.sbox3;
+        int[] sbox4 = this.sbox4;
+
+        int nHi = (int) (lCipher >>> 32);
+        int nLo = (int) lCipher;
+
+        nHi ^= pbox[17];
+        nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ pbox[16];
+        nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ pbox[15];
+        nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ pbox[14];
+        nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ pbox[13];
+        nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ pbox[12];
+        nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ pbox[11];
+        nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ pbox[10];
+        nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ pbox[9];
+        nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ pbox[8];
+        nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ pbox[7];
+        nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ pbox[6];
+        nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ pbox[5];
+        nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ pbox[4];
+        nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ pbox[3];
+        nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ pbox[2];
+        nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ pbox[1];
+
+        nLo ^= pbox[0];
+
+        return (long) nLo << 32 | nHi & 0x0ffffffffL;
+    }
+
+    /**
+     * Decrypts a byte buffer to another buffer, extra misaligned data
+     * will not be processed.
      *
      * @param inBuf   buffer with ciphertext data
      * @param nInPos  where to start reading the ciphertext data
-     * @param outBuf  buffer to write the plaintext data
+     * @param outBuf  buffer to put the plaintext data
      * @param nOutPos where to start writing the plaintext data
-     * @param nLen    number of longs to decrypt
+     * @param nLen    number of bytes to decrypt
+     * @return number of bytes to encrypted
      */
-    public void decrypt(
-            long[] inBuf,
+    public int decrypt(
+            byte[] inBuf,
             int nInPos,
-            long[] outBuf,
+            byte[] outBuf,
             int nOutPos,
             int nLen) {
-        while (nInPos < nInPos + nLen) {
-            BinConverter.longToByteArray(inBuf[nInPos], blockBuf, 0);
-            nInPos++;
+        checkKey();
 
-            decrypt(blockBuf, 0, blockBuf, 0, blockBuf.length);
+        nLen -= nLen % BLOCKSIZE;
 
-            outBuf[nOutPos] = BinConverter.byteArrayToInt(blockBuf, 0);
-            nOutPos++;
-        }
-    }
+        decryptBlocks(inBuf, nInPos, outBuf, nOutPos, nLen);
 
-    public int[] getPbox() {
-        return pbox;
+        return nLen;
     }
 
-    public int[] getSbox1() {
-        return sbox1;
+    // decrypts whole blocks in ECB mode, derived classes can't change that
+    private void decryptBlocks(
+            byte[] inBuf,
+            int nInPos,
+            byte[] outBuf,
+            int nOutPos,
+            int nLen) {
+        if (nLen < INTERLEAVE_THRESHOLD) {
+            decryptPrv(inBuf, nInPos, outBuf, nOutPos, nLen);
+            return;
+        }
+
+        int nPairs = nLen & ~((BLOCKSIZE << 1) - 1);
+
+        decryptInterleaved(inBuf, nInPos, outBuf, nOutPos, nPairs);
+        decryptPrv(inBuf, nInPos + nPairs, outBuf, nOutPos + nPairs, nLen - nPairs);
     }
 
-    public int[] getSbox2() {
-        return sbox2;
+    protected int decryptPrv(
+            byte[] inBuf,
+            int nInPos,
+            byte[] outBuf,
+            int nOutPos,
+            int nLen) {
+        // (same methodology as encryptPrv)
+
+        nLen -= nLen % BLOCKSIZE;
+
+        int nC = nInPos + nLen;
+
+        int[] pbox = this.pbox;
+        int nPBox00 = pbox[0];
+        int nPBox01 = pbox[1];
+        int nPBox02 = pbox[2];
+        int nPBox03 = pbox[3];
+        int nPBox04 = pbox[4];
+        int nPBox05 = pbox[5];
+        int nPBox06 = pbox[6];
+        int nPBox07 = pbox[7];
+        int nPBox08 = pbox[8];
+        int nPBox09 = pbox[9];
+        int nPBox10 = pbox[10];
+        int nPBox11 = pbox[11];
+        int nPBox12 = pbox[12];
+        int nPBox13 = pbox[13];
+        int nPBox14 = pbox[14];
+        int nPBox15 = pbox[15];
+        int nPBox16 = pbox[16];
+        int nPBox17 = pbox[17];
+
+        int[] sbox1 = this.sbox1;
+        int[] sbox2 = this.sbox2;
+        int[] sbox3 = this.sbox3;
+        int[] sbox4 = this.sbox4;
+
+        while (nInPos < nC) {
+            int nHi = BigEndian.getInt(inBuf, nInPos);
+            int nLo = BigEndian.getInt(inBuf, nInPos + 4);
+            nInPos += BLOCKSIZE;
+
+            nHi ^= nPBox17;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox16;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox15;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox14;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox13;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox12;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox11;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox10;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox09;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox08;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox07;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox06;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox05;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox04;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox03;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox02;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox01;
+
+            nLo ^= nPBox00;
+
+            BigEndian.putInt(outBuf, nOutPos, nLo);
+            BigEndian.putInt(outBuf, nOutPos + 4, nHi);
+            nOutPos += BLOCKSIZE;
+        }
+
+        return nLen;
     }
 
-    public int[] getSbox3() {
-        return sbox3;
+    // encrypts two blocks per iteration; the rounds of the blocks don't depend on
+    // each other, so the CPU can overlap their s-box lookups (nLen must be a
+    // multiple of 2 * BLOCKSIZE)
+
+    private void encryptInterleaved(
+            byte[] inBuf,
+            int nInPos,
+            byte[] outBuf,
+            int nOutPos,
+            int nLen) {
+        int nC = nInPos + nLen;
+
+        int[] pbox = this.pbox;
+        int nPBox00 = pbox[0];
+        int nPBox01 = pbox[1];
+        int nPBox02 = pbox[2];
+        int nPBox03 = pbox[3];
+        int nPBox04 = pbox[4];
+        int nPBox05 = pbox[5];
+        int nPBox06 = pbox[6];
+        int nPBox07 = pbox[7];
+        int nPBox08 = pbox[8];
+        int nPBox09 = pbox[9];
+        int nPBox10 = pbox[10];
+        int nPBox11 = pbox[11];
+        int nPBox12 = pbox[12];
+        int nPBox13 = pbox[13];
+        int nPBox14 = pbox[14];
+        int nPBox15 = pbox[15];
+        int nPBox16 = pbox[16];
+        int nPBox17 = pbox[17];
+
+        int[] sbox1 = this.sbox1;
+        int[] sbox2 = this.sbox2;
+        int[] sbox3 = this.sbox3;
+        int[] sbox4 = this.sbox4;
+
+        while (nInPos < nC) {
+            int nHiA = BigEndian.getInt(inBuf, nInPos);
+            int nLoA = BigEndian.getInt(inBuf, nInPos + 4);
+            nInPos += BLOCKSIZE;
+
+            int nHiB = BigEndian.getInt(inBuf, nInPos);
+            int nLoB = BigEndian.getInt(inBuf, nInPos + 4);
+            nInPos += BLOCKSIZE;
+
+            nHiA ^= nPBox00;
+            nHiB ^= nPBox00;
+            nLoA ^= (sbox1[nHiA >>> 24] + sbox2[nHiA >>> 16 & 0x0ff] ^ sbox3[nHiA >>> 8 & 0x0ff]) + sbox4[nHiA & 0x0ff] ^ nPBox01;
+            nLoB ^= (sbox1[nHiB >>> 24] + sbox2[nHiB >>> 16 & 0x0ff] ^ sbox3[nHiB >>> 8 & 0x0ff]) + sbox4[nHiB & 0x0ff] ^ nPBox01;
+            nHiA ^= (sbox1[nLoA >>> 24] + sbox2[nLoA >>> 16 & 0x0ff] ^ sbox3[nLoA >>> 8 & 0x0ff]) + sbox4[nLoA & 0x0ff] ^ nPBox02;
+            nHiB ^= (sbox1[nLoB >>> 24] + sbox2[nLoB >>> 16 & 0x0ff] ^ sbox3[nLoB >>> 8 & 0x0ff]) + sbox4[nLoB & 0x0ff] ^ nPBox02;
+            nLoA ^= (sbox1[nHiA >>> 24] + sbox2[nHiA >>> 16 & 0x0ff] ^ sbox3[nHiA >>> 8 & 0x0ff]) + sbox4[nHiA & 0x0ff] ^ nPBox03;
+            nLoB ^= (sbox1[nHiB >>> 24] + sbox2[nHiB >>> 16 & 0x0ff] ^ sbox3[nHiB >>> 8 & 0x0ff]) + sbox4[nHiB & 0x0ff] ^ nPBox03;
+            nHiA ^= (sbox1[nLoA >>> 24] + sbox2[nLoA >>> 16 & 0x0ff] ^ sbox3[nLoA >>> 8 & 0x0ff]) + sbox4[nLoA & 0x0ff] ^ nPBox04;
+            nHiB ^= (sbox1[nLoB >>> 24] + sbox2[nLoB >>> 16 & 0x0ff] ^ sbox3[nLoB >>> 8 & 0x0ff]) + sbox4[nLoB & 0x0ff] ^ nPBox04;
+            nLoA ^= (sbox1[nHiA >>> 24] + sbox2[nHiA >>> 16 & 0x0ff] ^ sbox3[nHiA >>> 8 & 0x0ff]) + sbox4[nHiA & 0x0ff] ^ nPBox05;
+            nLoB ^= (sbox1[nHiB >>> 24] + sbox2[nHiB >>> 16 & 0x0ff] ^ sbox3[nHiB >>> 8 & 0x0ff]) + sbox4[nHiB & 0x0ff] ^ nPBox05;
+            nHiA ^= (sbox1[nLoA >>> 24] + sbox2[nLoA >>> 16 & 0x0ff] ^ sbox3[nLoA >>> 8 & 0x0ff]) + sbox4[nLoA & 0x0ff] ^ nPBox06;
+            nHiB ^= (sbox1[nLoB >>> 24] + sbox2[nLoB >>> 16 & 0x0ff] ^ sbox3[nLoB >>> 8 & 0x0ff]) + sbox4[nLoB & 0x0ff] ^ nPBox06;
+            nLoA ^= (sbox1[nHiA >>> 24] + sbox2[nHiA >>> 16 & 0x0ff] ^ sbox3[nHiA >>> 8 & 0x0ff]) + sbox4[nHiA & 0x0ff] ^ nPBox07;
+            nLoB ^= (sbox1[nHiB >>> 24] + sbox2[nHiB >>> 16 & 0x0ff] ^ sbox3[nHiB >>> 8 & 0x0ff]) + sbox4[nHiB & 0x0ff] ^ nPBox07;
+            nHiA ^= (sbox1[nLoA >>> 24] + sbox2[nLoA >>> 16 & 0x0ff] ^ sbox3[nLoA >>> 8 & 0x0ff]) + sbox4[nLoA & 0x0ff] ^ nPBox08;
+            nHiB ^= (sbox1[nLoB >>> 24] + sbox2[nLoB >>> 16 & 0x0ff] ^ sbox3[nLoB >>> 8 & 0x0ff]) + sbox4[nLoB & 0x0ff] ^ nPBox08;
+            nLoA ^= (sbox1[nHiA >>> 24] + sbox2[nHiA >>> 16 & 0x0ff] ^ sbox3[nHiA >>> 8 & 0x0ff]) + sbox4[nHiA & 0x0ff] ^ nPBox09;
+            nLoB ^= (sbox1[nHiB >>> 24] + sbox2[nHiB >>> 16 & 0x0ff] ^ sbox3[nHiB >>> 8 & 0x0ff]) + sbox4[nHiB & 0x0ff] ^ nPBox09;
+            nHiA ^= (sbox1[nLoA >>> 24] + sbox2[nLoA >>> 16 & 0x0ff] ^ sbox3[nLoA >>> 8 & 0x0ff]) + sbox4[nLoA & 0x0ff] ^ nPBox10;
+            nHiB ^= (sbox1[nLoB >>> 24] + sbox2[nLoB >>> 16 & 0x0ff] ^ sbox3[nLoB >>> 8 & 0x0ff]) + sbox4[nLoB & 0x0ff] ^ nPBox10;
+            nLoA ^= (sbox1[nHiA >>> 24] + sbox2[nHiA >>> 16 & 0x0ff] ^ sbox3[nHiA >>> 8 & 0x0ff]) + sbox4[nHiA & 0x0ff] ^ nPBox11;
+            nLoB ^= (sbox1[nHiB >>> 24] + sbox2[nHiB >>> 16 & 0x0ff] ^ sbox3[nHiB >>> 8 & 0x0ff]) + sbox4[nHiB & 0x0ff] ^ nPBox11;
+            nHiA ^= (sbox1[nLoA >>> 24] + sbox2[nLoA >>> 16 & 0x0ff] ^ sbox3[nLoA >>> 8 & 0x0ff]) + sbox4[nLoA & 0x0ff] ^ nPBox12;
+            nHiB ^= (sbox1[nLoB >>> 24] + sbox2[nLoB >>> 16 & 0x0ff] ^ sbox3[nLoB >>> 8 & 0x0ff]) + sbox4[nLoB & 0x0ff] ^ nPBox12;
+            nLoA ^= (sbox1[nHiA >>> 24] + sbox2[nHiA >>> 16 & 0x0ff] ^ sbox3[nHiA >>> 8 & 0x0ff]) + sbox4[nHiA & 0x0ff] ^ nPBox13;
+            nLoB ^= (sbox1[nHiB >>> 24] + sbox2[nHiB >>> 16 & 0x0ff] ^ sbox3[nHiB >>> 8 & 0x0ff]) + sbox4[nHiB & 0x0ff] ^ nPBox13;
+            nHiA ^= (sbox1[nLoA >>> 24] + sbox2[nLoA >>> 16 & 0x0ff] ^ sbox3[nLoA >>> 8 & 0x0ff]) + sbox4[nLoA & 0x0ff] ^ nPBox14;
+            nHiB ^= (sbox1[nLoB >>> 24] + sbox2[nLoB >>> 16 & 0x0ff] ^ sbox3[nLoB >>> 8 & 0x0ff]) + sbox4[nLoB & 0x0ff] ^ nPBox14;
+            nLoA ^= (sbox1[nHiA >>> 24] + sbox2[nHiA >>> 16 & 0x0ff] ^ sbox3[nHiA >>> 8 & 0x0ff]) + sbox4[nHiA & 0x0ff] ^ nPBox15;
+            nLoB ^= (sbox1[nHiB >>> 24] + sbox2[nHiB >>> 16 & 0x0ff] ^ sbox3[nHiB >>> 8 & 0x0ff]) + sbox4[nHiB & 0x0ff] ^ nPBox15;
+            nHiA ^= (sbox1[nLoA >>> 24] + sbox2[nLoA >>> 16 & 0x0ff] ^ sbox3[nLoA >>> 8 & 0x0ff]) + sbox4[nLoA & 0x0ff] ^ nPBox16;
+            nHiB ^= (sbox1[nLoB >>> 24] + sbox2[nLoB >>> 16 & 0x0ff] ^ sbox3[nLoB >>> 8 & 0x0ff]) + sbox4[nLoB & 0x0ff] ^ nPBox16;
+
+            nLoA ^= nPBox17;
+            nLoB ^= nPBox17;
+
+            BigEndian.putInt(outBuf, nOutPos, nLoA);
+            BigEndian.putInt(outBuf, nOutPos + 4, nHiA);
+            nOutPos += BLOCKSIZE;
+
+            BigEndian.putInt(outBuf, nOutPos, nLoB);
+            BigEndian.putInt(outBuf, nOutPos + 4, nHiB);
+            nOutPos += BLOCKSIZE;
+        }
     }
 
-    public int[] getSbox4() {
+    // decrypts two blocks per iteration; the rounds of the blocks don't depend on
+    // each other, so the CPU can overlap their s-box lookups (nLen must be a
+    // multiple of 2 * BLOCKSIZE)
+
+    private void decryptInterleaved(
+            byte[] inBuf,
+            int nInPos,
+            byte[] outBuf,
+            int nOutPos,
+            int nLen) {
+        int nC = nInPos + nLen;
+
+        int[] pbox = this.pbox;
+        int nPBox00 = pbox[0];
+        int nPBox01 = pbox[1];
+        int nPBox02 = pbox[2];
+        int nPBox03 = pbox[3];
+        int nPBox04 = pbox[4];
+        int nPBox05 = pbox[5];
+        int nPBox06 = pbox[6];
+        int nPBox07 = pbox[7];
+        int nPBox08 = pbox[8];
+        int nPBox09 = pbox[9];
+        int nPBox10 = pbox[10];
+        int nPBox11 = pbox[11];
+        int nPBox12 = pbox[12];
+        int nPBox13 = pbox[13];
+        int nPBox14 = pbox[14];
+        int nPBox15 = pbox[15];
+        int nPBox16 = pbox[16];
+        int nPBox17 = pbox[17];
+
+        int[] sbox1 = this.sbox1;
+        int[] sbox2 = this.sbox2;
+        int[] sbox3 = this.sbox3;
+        int[] sbox4 = this.sbox4;
+
+        while (nInPos < nC) {
+            int nHiA = BigEndian.getInt(inBuf, nInPos);
+            int nLoA = BigEndian.getInt(inBuf, nInPos + 4);
+            nInPos += BLOCKSIZE;
+
+            int nHiB = BigEndian.getInt(inBuf, nInPos);
+            int nLoB = BigEndian.getInt(inBuf, nInPos + 4);
+            nInPos += BLOCKSIZE;
+
+            nHiA ^= nPBox17;
+            nHiB ^= nPBox17;
+            nLoA ^= (sbox1[nHiA >>> 24] + sbox2[nHiA >>> 16 & 0x0ff] ^ sbox3[nHiA >>> 8 & 0x0ff]) + sbox4[nHiA & 0x0ff] ^ nPBox16;
+            nLoB ^= (sbox1[nHiB >>> 24] + sbox2[nHiB >>> 16 & 0x0ff] ^ sbox3[nHiB >>> 8 & 0x0ff]) + sbox4[nHiB & 0x0ff] ^ nPBox16;
+            nHiA ^= (sbox1[nLoA >>> 24] + sbox2[nLoA >>> 16 & 0x0ff] ^ sbox3[nLoA >>> 8 & 0x0ff]) + sbox4[nLoA & 0x0ff] ^ nPBox15;
+            nHiB ^= (sbox1[nLoB >>> 24] + sbox2[nLoB >>> 16 & 0x0ff] ^ sbox3[nLoB >>> 8 & 0x0ff]) + sbox4[nLoB & 0x0ff] ^ nPBox15;
+            nLoA ^= (sbox1[nHiA >>> 24] + sbox2[nHiA >>> 16 & 0x0ff] ^ sbox3[nHiA >>> 8 & 0x0ff]) + sbox4[nHiA & 0x0ff] ^ nPBox14;
+            nLoB ^= (sbox1[nHiB >>> 24] + sbox2[nHiB >>> 16 & 0x0ff] ^ sbox3[nHiB >>> 8 & 0x0ff]) + sbox4[nHiB & 0x0ff] ^ nPBox14;
+            nHiA ^= (sbox1[nLoA >>> 24] + sbox2[nLoA >>> 16 & 0x0ff] ^ sbox3[nLoA >>> 8 & 0x0ff]) + sbox4[nLoA & 0x0ff] ^ nPBox13;
+            nHiB ^= (sbox1[nLoB >>> 24] + sbox2[nLoB >>> 16 & 0x0ff] ^ sbox3[nLoB >>> 8 & 0x0ff]) + sbox4[nLoB & 0x0ff] ^ nPBox13;
+            nLoA ^= (sbox1[nHiA >>> 24] + sbox2[nHiA >>> 16 & 0x0ff] ^ sbox3[nHiA >>> 8 & 0x0ff]) + sbox4[nHiA & 0x0ff] ^ nPBox12;
+            nLoB ^= (sbox1[nHiB >>> 24] + sbox2[nHiB >>> 16 & 0x0ff] ^ sbox3[nHiB >>> 8 & 0x0ff]) + sbox4[nHiB & 0x0ff] ^ nPBox12;
+            nHiA ^= (sbox1[nLoA >>> 24] + sbox2[nLoA >>> 16 & 0x0ff] ^ sbox3[nLoA >>> 8 & 0x0ff]) + sbox4[nLoA & 0x0ff] ^ nPBox11;
+            nHiB ^= (sbox1[nLoB >>> 24] + sbox2[nLoB >>> 16 & 0x0ff] ^ sbox3[nLoB >>> 8 & 0x0ff]) + sbox4[nLoB & 0x0ff] ^ nPBox11;
+            nLoA ^= (sbox1[nHiA >>> 24] + sbox2[nHiA >>> 16 & 0x0ff] ^ sbox3[nHiA >>> 8 & 0x0ff]) + sbox4[nHiA & 0x0ff] ^ nPBox10;
+            nLoB ^= (sbox1[nHiB >>> 24] + sbox2[nHiB >>> 16 & 0x0ff] ^ sbox3[nHiB >>> 8 & 0x0ff]) + sbox4[nHiB & 0x0ff] ^ nPBox10;
+            nHiA ^= (sbox1[nLoA >>> 24] + sbox2[nLoA >>> 16 & 0x0ff] ^ sbox3[nLoA >>> 8 & 0x0ff]) + sbox4[nLoA & 0x0ff] ^ nPBox09;
+            nHiB ^= (sbox1[nLoB >>> 24] + sbox2[nLoB >>> 16 & 0x0ff] ^ sbox3[nLoB >>> 8 & 0x0ff]) + sbox4[nLoB & 0x0ff] ^ nPBox09;
+            nLoA ^= (sbox1[nHiA >>> 24] + sbox2[nHiA >>> 16 & 0x0ff] ^ sbox3[nHiA >>> 8 & 0x0ff]) + sbox4[nHiA & 0x0ff] ^ nPBox08;
+            nLoB ^= (sbox1[nHiB >>> 24] + sbox2[nHiB >>> 16 & 0x0ff] ^ sbox3[nHiB >>> 8 & 0x0ff]) + sbox4[nHiB & 0x0ff] ^ nPBox08;
+            nHiA ^= (sbox1[nLoA >>> 24] + sbox2[nLoA >>> 16 & 0x0ff] ^ sbox3[nLoA >>> 8 & 0x0ff]) + sbox4[nLoA & 0x0ff] ^ nPBox07;
+            nHiB ^= (sbox1[nLoB >>> 24] + sbox2[nLoB >>> 16 & 0x0ff] ^ sbox3[nLoB >>> 8 & 0x0ff]) + sbox4[nLoB & 0x0ff] ^ nPBox07;
+            nLoA ^= (sbox1[nHiA >>> 24] + sbox2[nHiA >>> 16 & 0x0ff] ^ sbox3[nHiA >>> 8 & 0x0ff]) + sbox4[nHiA & 0x0ff] ^ nPBox06;
+            nLoB ^= (sbox1[nHiB >>> 24] + sbox2[nHiB >>> 16 & 0x0ff] ^ sbox3[nHiB >>> 8 & 0x0ff]) + sbox4[nHiB & 0x0ff] ^ nPBox06;
+            nHiA ^= (sbox1[nLoA >>> 24] + sbox2[nLoA >>> 16 & 0x0ff] ^ sbox3[nLoA >>> 8 & 0x0ff]) + sbox4[nLoA & 0x0ff] ^ nPBox05;
+            nHiB ^= (sbox1[nLoB >>> 24] + sbox2[nLoB >>> 16 & 0x0ff] ^ sbox3[nLoB >>> 8 & 0x0ff]) + sbox4[nLoB & 0x0ff] ^ nPBox05;
+            nLoA ^= (sbox1[nHiA >>> 24] + sbox2[nHiA >>> 16 & 0x0ff] ^ sbox3[nHiA >>> 8 & 0x0ff]) + sbox4[nHiA & 0x0ff] ^ nPBox04;
+            nLoB ^= (sbox1[nHiB >>> 24] + sbox2[nHiB >>> 16 & 0x0ff] ^ sbox3[nHiB >>> 8 & 0x0ff]) + sbox4[nHiB & 0x0ff] ^ nPBox04;
+            nHiA ^= (sbox1[nLoA >>> 24] + sbox2[nLoA >>> 16 & 0x0ff] ^ sbox3[nLoA >>> 8 & 0x0ff]) + sbox4[nLoA & 0x0ff] ^ nPBox03;
+            nHiB ^= (sbox1[nLoB >>> 24] + sbox2[nLoB >>> 16 & 0x0ff] ^ sbox3[nLoB >>> 8 & 0x0ff]) + sbox4[nLoB & 0x0ff] ^ nPBox03;
+            nLoA ^= (sbox1[nHiA >>> 24] + sbox2[nHiA >>> 16 & 0x0ff] ^ sbox3[nHiA >>> 8 & 0x0ff]) + sbox4[nHiA & 0x0ff] ^ nPBox02;
+            nLoB ^= (sbox1[nHiB >>> 24] + sbox2[nHiB >>> 16 & 0x0ff] ^ sbox3[nHiB >>> 8 & 0x0ff]) + sbox4[nHiB & 0x0ff] ^ nPBox02;
+            nHiA ^= (sbox1[nLoA >>> 24] + sbox2[nLoA >>> 16 & 0x0ff] ^ sbox3[nLoA >>> 8 & 0x0ff]) + sbox4[nLoA & 0x0ff] ^ nPBox01;
+            nHiB ^= (sbox1[nLoB >>> 24] + sbox2[nLoB >>> 16 & 0x0ff] ^ sbox3[nLoB >>> 8 & 0x0ff]) + sbox4[nLoB & 0x0ff] ^ nPBox01;
+
+            nLoA ^= nPBox00;
+            nLoB ^= nPBox00;
+
+            BigEndian.putInt(outBuf, nOutPos, nLoA);
+            BigEndian.putInt(outBuf, nOutPos + 4, nHiA);
+            nOutPos += BLOCKSIZE;
+
+            BigEndian.putInt(outBuf, nOutPos, nLoB);
+            BigEndian.putInt(outBuf, nOutPos + 4, nHiB);
+            nOutPos += BLOCKSIZE;
+        }
+    }
+
+    /**
+     * Decrypts an integer buffer to another integer buffer.
+     *
+     * @param inBuf   buffer with ciphertext data
+     * @param nInPos  where to start reading the ciphertext data
+     * @param outBuf  buffer to get the plaintext data
+     * @param nOutPos where to start writing the plaintext data
+     * @param nLen    number of integers to decrypt (two make a block, an odd
+     *                one at the end will not be processed)
+     */
+    public void decrypt(
+            int[] inBuf,
+            int nInPos,
+            int[] outBuf,
+            int nOutPos,
+            int nLen) {
+        checkKey();
+
+        int nC = nInPos + (nLen & ~1);
+
+        int[] pbox = this.pbox;
+        int nPBox00 = pbox[0];
+        int nPBox01 = pbox[1];
+        int nPBox02 = pbox[2];
+        int nPBox03 = pbox[3];
+        int nPBox04 = pbox[4];
+        int nPBox05 = pbox[5];
+        int nPBox06 = pbox[6];
+        int nPBox07 = pbox[7];
+        int nPBox08 = pbox[8];
+        int nPBox09 = pbox[9];
+        int nPBox10 = pbox[10];
+        int nPBox11 = pbox[11];
+        int nPBox12 = pbox[12];
+        int nPBox13 = pbox[13];
+        int nPBox14 = pbox[14];
+        int nPBox15 = pbox[15];
+        int nPBox16 = pbox[16];
+        int nPBox17 = pbox[17];
+
+        int[] sbox1 = this.sbox1;
+        int[] sbox2 = this.sbox2;
+        int[] sbox3 = this.sbox3;
+        int[] sbox4 = this.sbox4;
+
+        while (nInPos < nC) {
+            int nHi = inBuf[nInPos++];
+            int nLo = inBuf[nInPos++];
+
+            nHi ^= nPBox17;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox16;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox15;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox14;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox13;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox12;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox11;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox10;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox09;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox08;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox07;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox06;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox05;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox04;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox03;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox02;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox01;
+
+            nLo ^= nPBox00;
+
+            outBuf[nOutPos++] = nLo;
+            outBuf[nOutPos++] = nHi;
+        }
+    }
+
+    /**
+     * Decrypts a long buffer to another long buffer.
+     *
+     * @param inBuf   buffer with ciphertext data
+     * @param nInPos  where to start reading the ciphertext data
+     * @param outBuf  buffer to write the plaintext data
+     * @param nOutPos where to start writing the plaintext data
+     * @param nLen    number of longs to decrypt
+     */
+    public void decrypt(
+            long[] inBuf,
+            int nInPos,
+            long[] outBuf,
+            int nOutPos,
+            int nLen) {
+        checkKey();
+
+        int nC = nInPos + nLen;
+
+        int[] pbox = this.pbox;
+        int nPBox00 = pbox[0];
+        int nPBox01 = pbox[1];
+        int nPBox02 = pbox[2];
+        int nPBox03 = pbox[3];
+        int nPBox04 = pbox[4];
+        int nPBox05 = pbox[5];
+        int nPBox06 = pbox[6];
+        int nPBox07 = pbox[7];
+        int nPBox08 = pbox[8];
+        int nPBox09 = pbox[9];
+        int nPBox10 = pbox[10];
+        int nPBox11 = pbox[11];
+        int nPBox12 = pbox[12];
+        int nPBox13 = pbox[13];
+        int nPBox14 = pbox[14];
+        int nPBox15 = pbox[15];
+        int nPBox16 = pbox[16];
+        int nPBox17 = pbox[17];
+
+        int[] sbox1 = this.sbox1;
+        int[] sbox2 = this.sbox2;
+        int[] sbox3 = this.sbox3;
+        int[] sbox4 = this.sbox4;
+
+        while (nInPos < nC) {
+            long lBlock = inBuf[nInPos++];
+            int nHi = (int) (lBlock >>> 32);
+            int nLo = (int) lBlock;
+
+            nHi ^= nPBox17;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox16;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox15;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox14;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox13;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox12;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox11;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox10;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox09;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox08;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox07;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox06;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox05;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox04;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox03;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox02;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox01;
+
+            nLo ^= nPBox00;
+
+            outBuf[nOutPos++] = (long) nLo << 32 | nHi & 0x0ffffffffL;
+        }
+    }
+
+    /**
+     * Encrypts the remaining data of a byte buffer into another buffer, extra
+     * misaligned data will not be processed. Heap buffers are handled by the
+     * byte array routine, direct buffers are accessed in place. Both
+     * positions get advanced by the number of bytes processed, the byte order
+     * of the buffers doesn't matter.
+     *
+     * @param src buffer with plaintext data
+     * @param dst buffer to put the ciphertext data
+     * @return number of bytes encrypted
+     * @throws BufferOverflowException if dst has not enough room left
+     */
+    public int encrypt(
+            ByteBuffer src,
+            ByteBuffer dst) {
+        checkKey();
+
+        int nLen = src.remaining();
+        nLen -= nLen % BLOCKSIZE;
+
+        if (dst.remaining() < nLen) {
+            throw new BufferOverflowException();
+        }
+
+        int nSrcPos = src.position();
+        int nDstPos = dst.position();
+
+        if (src.hasArray() && dst.hasArray()) {
+            encrypt(
+                    src.array(),
+                    src.arrayOffset() + nSrcPos,
+                    dst.array(),
+                    dst.arrayOffset() + nDstPos,
+                    nLen);
+        } else {
+            encryptPrv(bigEndian(src), nSrcPos, bigEndian(dst), nDstPos, nLen);
+        }
+
+        ((Buffer) src).position(nSrcPos + nLen);
+        ((Buffer) dst).position(nDstPos + nLen);
+
+        return nLen;
+    }
+
+    /**
+     * Encrypts the remaining data of a byte buffer in place, extra misaligned
+     * data will not be processed. The position gets advanced by the number of
+     * bytes processed.
+     *
+     * @param buf buffer with plaintext data
+     * @return number of bytes encrypted
+     */
+    public int encrypt(
+            ByteBuffer buf) {
+        checkKey();
+
+        int nLen = buf.remaining();
+        nLen -= nLen % BLOCKSIZE;
+
+        int nPos = buf.position();
+
+        if (buf.hasArray()) {
+            int nOfs = buf.arrayOffset() + nPos;
+            encrypt(buf.array(), nOfs, buf.array(), nOfs, nLen);
+        } else {
+            ByteBuffer beBuf = bigEndian(buf);
+            encryptPrv(beBuf, nPos, beBuf, nPos, nLen);
+        }
+
+        ((Buffer) buf).position(nPos + nLen);
+
+        return nLen;
+    }
+
+    /**
+     * Decrypts the remaining data of a byte buffer into another buffer, extra
+     * misaligned data will not be processed. Heap buffers are handled by the
+     * byte array routine, direct buffers are accessed in place. Both
+     * positions get advanced by the number of bytes processed, the byte order
+     * of the buffers doesn't matter.
+     *
+     * @param src buffer with ciphertext data
+     * @param dst buffer to put the plaintext data
+     * @return number of bytes decrypted
+     * @throws BufferOverflowException if dst has not enough room left
+     */
+    public int decrypt(
+            ByteBuffer src,
+            ByteBuffer dst) {
+        checkKey();
+
+        int nLen = src.remaining();
+        nLen -= nLen % BLOCKSIZE;
+
+        if (dst.remaining() < nLen) {
+            throw new BufferOverflowException();
+        }
+
+        int nSrcPos = src.position();
+        int nDstPos = dst.position();
+
+        if (src.hasArray() && dst.hasArray()) {
+            decrypt(
+                    src.array(),
+                    src.arrayOffset() + nSrcPos,
+                    dst.array(),
+                    dst.arrayOffset() + nDstPos,
+                    nLen);
+        } else {
+            decryptPrv(bigEndian(src), nSrcPos, bigEndian(dst), nDstPos, nLen);
+        }
+
+        ((Buffer) src).position(nSrcPos + nLen);
+        ((Buffer) dst).position(nDstPos + nLen);
+
+        return nLen;
+    }
+
+    /**
+     * Decrypts the remaining data of a byte buffer in place, extra misaligned
+     * data will not be processed. The position gets advanced by the number of
+     * bytes processed.
+     *
+     * @param buf buffer with ciphertext data
+     * @return number of bytes decrypted
+     */
+    public int decrypt(
+            ByteBuffer buf) {
+        checkKey();
+
+        int nLen = buf.remaining();
+        nLen -= nLen % BLOCKSIZE;
+
+        int nPos = buf.position();
+
+        if (buf.hasArray()) {
+            int nOfs = buf.arrayOffset() + nPos;
+            decrypt(buf.array(), nOfs, buf.array(), nOfs, nLen);
+        } else {
+            ByteBuffer beBuf = bigEndian(buf);
+            decryptPrv(beBuf, nPos, beBuf, nPos, nLen);
+        }
+
+        ((Buffer) buf).position(nPos + nLen);
+
+        return nLen;
+    }
+
+    /**
+     * Encrypts the remaining data of a sequence of byte buffers into another
+     * sequence, like a GatheringByteChannel and a ScatteringByteChannel would
+     * see them. Blocks may straddle buffer edges on either side, they get
+     * carried over without coalescing the data first. Extra misaligned data
+     * at the end of the sequence will not be processed. All positions get
+     * advanced by the number of bytes consumed or produced. The two sequences
+     * must not share buffer instances, for in place processing pass
+     * duplicates.
+     *
+     * @param srcs buffers with plaintext data
+     * @param dsts buffers to put the ciphertext data
+     * @return number of bytes encrypted
+     * @throws BufferOverflowException if dsts have not enough room left
+     */
+    public long encrypt(
+            ByteBuffer[] srcs,
+            ByteBuffer[] dsts) {
+        checkKey();
+
+        long lLen = remaining(srcs);
+        lLen -= lLen % BLOCKSIZE;
+
+        if (remaining(dsts) < lLen) {
+            throw new BufferOverflowException();
+        }
+
+        scatterGather(srcs, dsts, lLen, false);
+
+        return lLen;
+    }
+
+    /**
+     * Decrypts the remaining data of a sequence of byte buffers into another
+     * sequence, blocks may straddle buffer edges on either side. Extra
+     * misaligned data at the end of the sequence will not be processed. All
+     * positions get advanced by the number of bytes consumed or produced. The
+     * two sequences must not share buffer instances, for in place processing
+     * pass duplicates.
+     *
+     * @param srcs buffers with ciphertext data
+     * @param dsts buffers to put the plaintext data
+     * @return number of bytes decrypted
+     * @throws BufferOverflowException if dsts have not enough room left
+     */
+    public long decrypt(
+            ByteBuffer[] srcs,
+            ByteBuffer[] dsts) {
+        checkKey();
+
+        long lLen = remaining(srcs);
+        lLen -= lLen % BLOCKSIZE;
+
+        if (remaining(dsts) < lLen) {
+            throw new BufferOverflowException();
+        }
+
+        scatterGather(srcs, dsts, lLen, true);
+
+        return lLen;
+    }
+
+    // walks both sequences, runs of whole blocks inside a buffer pair go
+    // through the regular buffer routines, a block crossing an edge gets
+    // gathered into a long and sent through the single block primitive (so
+    // derived classes keep their chaining in both cases)
+
+    private void scatterGather(
+            ByteBuffer[] srcs,
+            ByteBuffer[] dsts,
+            long lLen,
+            boolean blDecrypt) {
+        int nSrc = 0;
+        int nDst = 0;
+
+        while (lLen > 0) {
+            ByteBuffer src = srcs[nSrc];
+            if (!src.hasRemaining()) {
+                nSrc++;
+                continue;
+            }
+
+            ByteBuffer dst = dsts[nDst];
+            if (!dst.hasRemaining()) {
+                nDst++;
+                continue;
+            }
+
+            int nRun = Math.min(src.remaining(), dst.remaining());
+            if (nRun > lLen) {
+                nRun = (int) lLen;
+            }
+            nRun -= nRun % BLOCKSIZE;
+
+            if (0 < nRun) {
+                int nSrcPos = src.position();
+                int nDstPos = dst.position();
+
+                if (src.hasArray() && dst.hasArray()) {
+                    int nInPos = src.arrayOffset() + nSrcPos;
+                    int nOutPos = dst.arrayOffset() + nDstPos;
+                    if (blDecrypt) {
+                        decrypt(src.array(), nInPos, dst.array(), nOutPos, nRun);
+                    } else {
+                        encrypt(src.array(), nInPos, dst.array(), nOutPos, nRun);
+                    }
+                } else if (blDecrypt) {
+                    decryptPrv(bigEndian(src), nSrcPos, bigEndian(dst), nDstPos, nRun);
+                } else {
+                    encryptPrv(bigEndian(src), nSrcPos, bigEndian(dst), nDstPos, nRun);
+                }
+
+                ((Buffer) src).position(nSrcPos + nRun);
+                ((Buffer) dst).position(nDstPos + nRun);
+
+                lLen -= nRun;
+                continue;
+            }
+
+            long lBlock = 0;
+            for (int nI = 0; nI < BLOCKSIZE; nI++) {
+                while (!srcs[nSrc].hasRemaining()) {
+                    nSrc++;
+                }
+                lBlock = lBlock << 8 | srcs[nSrc].get() & 0x0ff;
+            }
+
+            lBlock = blDecrypt ? decryptBlock(lBlock) : encryptBlock(lBlock);
+
+            for (int nShift = 56; nShift >= 0; nShift -= 8) {
+                while (!dsts[nDst].hasRemaining()) {
+                    nDst++;
+                }
+                dsts[nDst].put((byte) (lBlock >>> nShift));
+            }
+
+            lLen -= BLOCKSIZE;
+        }
+    }
+
+    private static long remaining(
+            ByteBuffer[] bufs) {
+        long lResult = 0;
+        for (ByteBuffer buf : bufs) {
+            lResult += buf.remaining();
+        }
+        return lResult;
+    }
+
+    /**
+     * Encrypts whole blocks between (usually direct) byte buffers,
+     * positions and limits are left alone.
+     *
+     * @param src     big endian buffer with the plaintext data
+     * @param nSrcPos absolute index where to start reading
+     * @param dst     big endian buffer to write the ciphertext data
+     * @param nDstPos absolute index where to start writing
+     * @param nLen    number of bytes, a multiple of BLOCKSIZE
+     */
+    protected void encryptPrv(
+            ByteBuffer src,
+            int nSrcPos,
+            ByteBuffer dst,
+            int nDstPos,
+            int nLen) {
+        int nC = nSrcPos + nLen;
+
+        int[] pbox = this.pbox;
+        int nPBox00 = pbox[0];
+        int nPBox01 = pbox[1];
+        int nPBox02 = pbox[2];
+        int nPBox03 = pbox[3];
+        int nPBox04 = pbox[4];
+        int nPBox05 = pbox[5];
+        int nPBox06 = pbox[6];
+        int nPBox07 = pbox[7];
+        int nPBox08 = pbox[8];
+        int nPBox09 = pbox[9];
+        int nPBox10 = pbox[10];
+        int nPBox11 = pbox[11];
+        int nPBox12 = pbox[12];
+        int nPBox13 = pbox[13];
+        int nPBox14 = pbox[14];
+        int nPBox15 = pbox[15];
+        int nPBox16 = pbox[16];
+        int nPBox17 = pbox[17];
+
+        int[] sbox1 = this.sbox1;
+        int[] sbox2 = this.sbox2;
+        int[] sbox3 = this.sbox3;
+        int[] sbox4 = this.sbox4;
+
+        while (nSrcPos < nC) {
+            int nHi = src.getInt(nSrcPos);
+            int nLo = src.getInt(nSrcPos + 4);
+
+            nHi ^= nPBox00;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox01;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox02;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox03;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox04;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox05;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox06;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox07;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox08;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox09;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox10;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox11;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox12;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox13;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox14;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox15;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox16;
+
+            nLo ^= nPBox17;
+
+            dst.putInt(nDstPos, nLo);
+            dst.putInt(nDstPos + 4, nHi);
+
+            nSrcPos += BLOCKSIZE;
+            nDstPos += BLOCKSIZE;
+        }
+    }
+
+    /**
+     * Decrypts whole blocks between (usually direct) byte buffers,
+     * positions and limits are left alone.
+     *
+     * @param src     big endian buffer with the ciphertext data
+     * @param nSrcPos absolute index where to start reading
+     * @param dst     big endian buffer to write the plaintext data
+     * @param nDstPos absolute index where to start writing
+     * @param nLen    number of bytes, a multiple of BLOCKSIZE
+     */
+    protected void decryptPrv(
+            ByteBuffer src,
+            int nSrcPos,
+            ByteBuffer dst,
+            int nDstPos,
+            int nLen) {
+        int nC = nSrcPos + nLen;
+
+        int[] pbox = this.pbox;
+        int nPBox00 = pbox[0];
+        int nPBox01 = pbox[1];
+        int nPBox02 = pbox[2];
+        int nPBox03 = pbox[3];
+        int nPBox04 = pbox[4];
+        int nPBox05 = pbox[5];
+        int nPBox06 = pbox[6];
+        int nPBox07 = pbox[7];
+        int nPBox08 = pbox[8];
+        int nPBox09 = pbox[9];
+        int nPBox10 = pbox[10];
+        int nPBox11 = pbox[11];
+        int nPBox12 = pbox[12];
+        int nPBox13 = pbox[13];
+        int nPBox14 = pbox[14];
+        int nPBox15 = pbox[15];
+        int nPBox16 = pbox[16];
+        int nPBox17 = pbox[17];
+
+        int[] sbox1 = this.sbox1;
+        int[] sbox2 = this.sbox2;
+        int[] sbox3 = this.sbox3;
+        int[] sbox4 = this.sbox4;
+
+        while (nSrcPos < nC) {
+            int nHi = src.getInt(nSrcPos);
+            int nLo = src.getInt(nSrcPos + 4);
+
+            nHi ^= nPBox17;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox16;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox15;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox14;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox13;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox12;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox11;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox10;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox09;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox08;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox07;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox06;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox05;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox04;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox03;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox02;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox01;
+
+            nLo ^= nPBox00;
+
+            dst.putInt(nDstPos, nLo);
+            dst.putInt(nDstPos + 4, nHi);
+
+            nSrcPos += BLOCKSIZE;
+            nDstPos += BLOCKSIZE;
+        }
+    }
+
+    // the word access on buffers depends on their byte order, so make sure
+    // we always see big endian data
+
+    private static ByteBuffer bigEndian(
+            ByteBuffer buf) {
+        return buf.order() == ByteOrder.BIG_ENDIAN ?
+                buf :
+                buf.duplicate().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Gets the P-array. This is the live array, which must not be modified;
+     * for instances running on a BlowfishKeySchedule it is a copy, the
+     * schedule's array is shared with other instances.
+     *
+     * @return the P-array
+     */
+    public int[] getPbox() {
+        checkKey();
+
+        return blShared ? (int[]) pbox.clone() : pbox;
+    }
+
+    /**
+     * Gets S-box 1, the live array which must not be modified (a copy for
+     * instances running on a BlowfishKeySchedule).
+     *
+     * @return S-box 1
+     */
+    public int[] getSbox1() {
+        checkKey();
+
+        return blShared ? (int[]) sbox1.clone() : sbox1;
+    }
+
+    /**
+     * Gets S-box 2, the live array which must not be modified (a copy for
+     * instances running on a BlowfishKeySchedule).
+     *
+     * @return S-box 2
+     */
+    public int[] getSbox2() {
+        checkKey();
+
+        return blShared ? (int[]) sbox2.clone() : sbox2;
+    }
+
+    /**
+     * Gets S-box 3, the live array which must not be modified (a copy for
+     * instances running on a BlowfishKeySchedule).
+     *
+     * @return S-box 3
+     */
+    public int[] getSbox3() {
+        checkKey();
+
+        return blShared ? (int[]) sbox3.clone() : sbox3;
+    }
+
+    /**
+     * Gets S-box 4, the live array which must not be modified (a copy for
+     * instances running on a BlowfishKeySchedule).
+     *
+     * @return S-box 4
+     */
+    public int[] getSbox4() {
+        checkKey();
+
+        return blShared ? (int[]) sbox4.clone() : sbox4;
+    }
+
+    // the live arrays for the engines and schedules of this package, which
+    // never modify them
+
+    int[] livePbox() {
+        checkKey();
+
+        return pbox;
+    }
+
+    int[] liveSbox1() {
+        checkKey();
+
+        return sbox1;
+    }
+
+    int[] liveSbox2() {
+        checkKey();
+
+        return sbox2;
+    }
+
+    int[] liveSbox3() {
+        checkKey();
+
+        return sbox3;
+    }
+
+    int[] liveSbox4() {
+        checkKey();
+
         return sbox4;
     }
 }
@@ -0,0 +1,222 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.crypt;
+
+/**
+ * Blowfish in ECB mode with all four S-boxes packed into one table of 1024
+ * entries. The round function then works on a single array reference, and
+ * every index is masked into its quarter of the table, instead of juggling
+ * four arrays of 256 entries each. Results are exactly the same as with
+ * BlowfishECB. Only the byte array routines use the packed table, all the
+ * other ones are inherited unchanged.
+ */
+public class BlowfishFlatECB extends BlowfishECB {
+    // the four s-boxes, one after the other (no initializer, the table gets
+    // set up by initialize(), which runs within the super constructor)
+    private int[] sbox;
+
+    /**
+     * @see BlowfishECB#initialize(byte[], int, int)
+     */
+    public BlowfishFlatECB(
+            byte[] key,
+            int nOfs,
+            int nLen) {
+        super(key, nOfs, nLen);
+    }
+
+    /**
+     * Constructor to run on an already expanded key. Unlike with BlowfishECB
+     * the s-boxes get copied into the packed table.
+     *
+     * @param ks the key schedule
+     */
+    public BlowfishFlatECB(
+            BlowfishKeySchedule ks) {
+        super(ks);
+
+        pack();
+    }
+
+    @Override
+    public void initialize(
+            byte[] key,
+            int nOfs,
+            int nLen) {
+        super.initialize(key, nOfs, nLen);
+
+        pack();
+    }
+
+    @Override
+    public void cleanUp() {
+        super.cleanUp();
+
+        for (int nI = 0; nI < sbox.length; nI++) {
+            sbox[nI] = 0;
+        }
+    }
+
+    // copies the s-boxes into the packed table
+
+    private void pack() {
+        if (sbox == null) {
+            sbox = new int[1024];
+        }
+
+        System.arraycopy(liveSbox1(), 0, sbox, 0, 256);
+        System.arraycopy(liveSbox2(), 0, sbox, 256, 256);
+        System.arraycopy(liveSbox3(), 0, sbox, 512, 256);
+        System.arraycopy(liveSbox4(), 0, sbox, 768, 256);
+    }
+
+    @Override
+    public int encrypt(
+            byte[] inBuf,
+            int nInPos,
+            byte[] outBuf,
+            int nOutPos,
+            int nLen) {
+        checkKey();
+
+        nLen -= nLen % BLOCKSIZE;
+
+        int nC = nInPos + nLen;
+
+        int[] pbox = livePbox();
+        int nPBox00 = pbox[0];
+        int nPBox01 = pbox[1];
+        int nPBox02 = pbox[2];
+        int nPBox03 = pbox[3];
+        int nPBox04 = pbox[4];
+        int nPBox05 = pbox[5];
+        int nPBox06 = pbox[6];
+        int nPBox07 = pbox[7];
+        int nPBox08 = pbox[8];
+        int nPBox09 = pbox[9];
+        int nPBox10 = pbox[10];
+        int nPBox11 = pbox[11];
+        int nPBox12 = pbox[12];
+        int nPBox13 = pbox[13];
+        int nPBox14 = pbox[14];
+        int nPBox15 = pbox[15];
+        int nPBox16 = pbox[16];
+        int nPBox17 = pbox[17];
+
+        int[] sbox = this.sbox;
+
+        while (nInPos < nC) {
+            int nHi = BigEndian.getInt(inBuf, nInPos);
+            int nLo = BigEndian.getInt(inBuf, nInPos + 4);
+            nInPos += BLOCKSIZE;
+
+            nHi ^= nPBox00;
+            nLo ^= (sbox[nHi >>> 24] + sbox[0x100 | nHi >>> 16 & 0x0ff] ^ sbox[0x200 | nHi >>> 8 & 0x0ff]) + sbox[0x300 | nHi & 0x0ff] ^ nPBox01;
+            nHi ^= (sbox[nLo >>> 24] + sbox[0x100 | nLo >>> 16 & 0x0ff] ^ sbox[0x200 | nLo >>> 8 & 0x0ff]) + sbox[0x300 | nLo & 0x0ff] ^ nPBox02;
+            nLo ^= (sbox[nHi >>> 24] + sbox[0x100 | nHi >>> 16 & 0x0ff] ^ sbox[0x200 | nHi >>> 8 & 0x0ff]) + sbox[0x300 | nHi & 0x0ff] ^ nPBox03;
+            nHi ^= (sbox[nLo >>> 24] + sbox[0x100 | nLo >>> 16 & 0x0ff] ^ sbox[0x200 | nLo >>> 8 & 0x0ff]) + sbox[0x300 | nLo & 0x0ff] ^ nPBox04;
+            nLo ^= (sbox[nHi >>> 24] + sbox[0x100 | nHi >>> 16 & 0x0ff] ^ sbox[0x200 | nHi >>> 8 & 0x0ff]) + sbox[0x300 | nHi & 0x0ff] ^ nPBox05;
+            nHi ^= (sbox[nLo >>> 24] + sbox[0x100 | nLo >>> 16 & 0x0ff] ^ sbox[0x200 | nLo >>> 8 & 0x0ff]) + sbox[0x300 | nLo & 0x0ff] ^ nPBox06;
+            nLo ^= (sbox[nHi >>> 24] + sbox[0x100 | nHi >>> 16 & 0x0ff] ^ sbox[0x200 | nHi >>> 8 & 0x0ff]) + sbox[0x300 | nHi & 0x0ff] ^ nPBox07;
+            nHi ^= (sbox[nLo >>> 24] + sbox[0x100 | nLo >>> 16 & 0x0ff] ^ sbox[0x200 | nLo >>> 8 & 0x0ff]) + sbox[0x300 | nLo & 0x0ff] ^ nPBox08;
+            nLo ^= (sbox[nHi >>> 24] + sbox[0x100 | nHi >>> 16 & 0x0ff] ^ sbox[0x200 | nHi >>> 8 & 0x0ff]) + sbox[0x300 | nHi & 0x0ff] ^ nPBox09;
+            nHi ^= (sbox[nLo >>> 24] + sbox[0x100 | nLo >>> 16 & 0x0ff] ^ sbox[0x200 | nLo >>> 8 & 0x0ff]) + sbox[0x300 | nLo & 0x0ff] ^ nPBox10;
+            nLo ^= (sbox[nHi >>> 24] + sbox[0x100 | nHi >>> 16 & 0x0ff] ^ sbox[0x200 | nHi >>> 8 & 0x0ff]) + sbox[0x300 | nHi & 0x0ff] ^ nPBox11;
+            nHi ^= (sbox[nLo >>> 24] + sbox[0x100 | nLo >>> 16 & 0x0ff] ^ sbox[0x200 | nLo >>> 8 & 0x0ff]) + sbox[0x300 | nLo & 0x0ff] ^ nPBox12;
+            nLo ^= (sbox[nHi >>> 24] + sbox[0x100 | nHi >>> 16 & 0x0ff] ^ sbox[0x200 | nHi >>> 8 & 0x0ff]) + sbox[0x300 | nHi & 0x0ff] ^ nPBox13;
+            nHi ^= (sbox[nLo >>> 24] + sbox[0x100 | nLo >>> 16 & 0x0ff] ^ sbox[0x200 | nLo >>> 8 & 0x0ff]) + sbox[0x300 | nLo & 0x0ff] ^ nPBox14;
+            nLo ^= (sbox[nHi >>> 24] + sbox[0x100 | nHi >>> 16 & 0x0ff] ^ sbox[0x200 | nHi >>> 8 & 0x0ff]) + sbox[0x300 | nHi & 0x0ff] ^ nPBox15;
+            nHi ^= (sbox[nLo >>> 24] + sbox[0x100 | nLo >>> 16 & 0x0ff] ^ sbox[0x200 | nLo >>> 8 & 0x0ff]) + sbox[0x300 | nLo & 0x0ff] ^ nPBox16;
+
+            nLo ^= nPBox17;
+
+            BigEndian.putInt(outBuf, nOutPos, nLo);
+            BigEndian.putInt(outBuf, nOutPos + 4, nHi);
+            nOutPos += BLOCKSIZE;
+        }
+
+        return nLen;
+    }
+
+    @Override
+    public int decrypt(
+            byte[] inBuf,
+            int nInPos,
+            byte[] outBuf,
+            int nOutPos,
+            int nLen) {
+        checkKey();
+
+        nLen -= nLen % BLOCKSIZE;
+
+        int nC = nInPos + nLen;
+
+        int[] pbox = livePbox();
+        int nPBox00 = pbox[0];
+        int nPBox01 = pbox[1];
+        int nPBox02 = pbox[2];
+        int nPBox03 = pbox[3];
+        int nPBox04 = pbox[4];
+        int nPBox05 = pbox[5];
+        int nPBox06 = pbox[6];
+        int nPBox07 = pbox[7];
+        int nPBox08 = pbox[8];
+        int nPBox09 = pbox[9];
+        int nPBox10 = pbox[10];
+        int nPBox11 = pbox[11];
+        int nPBox12 = pbox[12];
+        int nPBox13 = pbox[13];
+        int nPBox14 = pbox[14];
+        int nPBox15 = pbox[15];
+        int nPBox16 = pbox[16];
+        int nPBox17 = pbox[17];
+
+        int[] sbox = this.sbox;
+
+        while (nInPos < nC) {
+            int nHi = BigEndian.getInt(inBuf, nInPos);
+            int nLo = BigEndian.getInt(inBuf, nInPos + 4);
+            nInPos += BLOCKSIZE;
+
+            nHi ^= nPBox17;
+            nLo ^= (sbox[nHi >>> 24] + sbox[0x100 | nHi >>> 16 & 0x0ff] ^ sbox[0x200 | nHi >>> 8 & 0x0ff]) + sbox[0x300 | nHi & 0x0ff] ^ nPBox16;
+            nHi ^= (sbox[nLo >>> 24] + sbox[0x100 | nLo >>> 16 & 0x0ff] ^ sbox[0x200 | nLo >>> 8 & 0x0ff]) + sbox[0x300 | nLo & 0x0ff] ^ nPBox15;
+            nLo ^= (sbox[nHi >>> 24] + sbox[0x100 | nHi >>> 16 & 0x0ff] ^ sbox[0x200 | nHi >>> 8 & 0x0ff]) + sbox[0x300 | nHi & 0x0ff] ^ nPBox14;
+            nHi ^= (sbox[nLo >>> 24] + sbox[0x100 | nLo >>> 16 & 0x0ff] ^ sbox[0x200 | nLo >>> 8 & 0x0ff]) + sbox[0x300 | nLo & 0x0ff] ^ nPBox13;
+            nLo ^= (sbox[nHi >>> 24] + sbox[0x100 | nHi >>> 16 & 0x0ff] ^ sbox[0x200 | nHi >>> 8 & 0x0ff]) + sbox[0x300 | nHi & 0x0ff] ^ nPBox12;
+            nHi ^= (sbox[nLo >>> 24] + sbox[0x100 | nLo >>> 16 & 0x0ff] ^ sbox[0x200 | nLo >>> 8 & 0x0ff]) + sbox[0x300 | nLo & 0x0ff] ^ nPBox11;
+            nLo ^= (sbox[nHi >>> 24] + sbox[0x100 | nHi >>> 16 & 0x0ff] ^ sbox[0x200 | nHi >>> 8 & 0x0ff]) + sbox[0x300 | nHi & 0x0ff] ^ nPBox10;
+            nHi ^= (sbox[nLo >>> 24] + sbox[0x100 | nLo >>> 16 & 0x0ff] ^ sbox[0x200 | nLo >>> 8 & 0x0ff]) + sbox[0x300 | nLo & 0x0ff] ^ nPBox09;
+            nLo ^= (sbox[nHi >>> 24] + sbox[0x100 | nHi >>> 16 & 0x0ff] ^ sbox[0x200 | nHi >>> 8 & 0x0ff]) + sbox[0x300 | nHi & 0x0ff] ^ nPBox08;
+            nHi ^= (sbox[nLo >>> 24] + sbox[0x100 | nLo >>> 16 & 0x0ff] ^ sbox[0x200 | nLo >>> 8 & 0x0ff]) + sbox[0x300 | nLo & 0x0ff] ^ nPBox07;
+            nLo ^= (sbox[nHi >>> 24] + sbox[0x100 | nHi >>> 16 & 0x0ff] ^ sbox[0x200 | nHi >>> 8 & 0x0ff]) + sbox[0x300 | nHi & 0x0ff] ^ nPBox06;
+            nHi ^= (sbox[nLo >>> 24] + sbox[0x100 | nLo >>> 16 & 0x0ff] ^ sbox[0x200 | nLo >>> 8 & 0x0ff]) + sbox[0x300 | nLo & 0x0ff] ^ nPBox05;
+            nLo ^= (sbox[nHi >>> 24] + sbox[0x100 | nHi >>> 16 & 0x0ff] ^ sbox[0x200 | nHi >>> 8 & 0x0ff]) + sbox[0x300 | nHi & 0x0ff] ^ nPBox04;
+            nHi ^= (sbox[nLo >>> 24] + sbox[0x100 | nLo >>> 16 & 0x0ff] ^ sbox[0x200 | nLo >>> 8 & 0x0ff]) + sbox[0x300 | nLo & 0x0ff] ^ nPBox03;
+            nLo ^= (sbox[nHi >>> 24] + sbox[0x100 | nHi >>> 16 & 0x0ff] ^ sbox[0x200 | nHi >>> 8 & 0x0ff]) + sbox[0x300 | nHi & 0x0ff] ^ nPBox02;
+            nHi ^= (sbox[nLo >>> 24] + sbox[0x100 | nLo >>> 16 & 0x0ff] ^ sbox[0x200 | nLo >>> 8 & 0x0ff]) + sbox[0x300 | nLo & 0x0ff] ^ nPBox01;
+
+            nLo ^= nPBox00;
+
+            BigEndian.putInt(outBuf, nOutPos, nLo);
+            BigEndian.putInt(outBuf, nOutPos + 4, nHi);
+            nOutPos += BLOCKSIZE;
+        }
+
+        return nLen;
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.crypt;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * An expanded Blowfish key, i.e. the P-array and the S-boxes after the key
+ * setup. Instances never change, so one schedule can be shared by any number
+ * of threads, each of them running its own lightweight BlowfishECB or
+ * BlowfishCBC instance on it, and the key expansion happens only once.
+ * <p>
+ * Schedules can be exported to a compact binary form and restored from it
+ * (e.g. from a memory mapped file) without running the key setup again. The
+ * format is the magic "BFKS", a version number, the P-array and the four
+ * S-boxes as big endian integers and a SHA-1 digest of all the former. Be
+ * aware that an exported schedule is just as secret as the key itself.
+ */
+public final class BlowfishKeySchedule {
+    /**
+     * size of an exported schedule in bytes
+     */
+    public static final int SERIALIZED_SIZE = 8 + (18 + 4 * 256) * 4 + SHA1.DIGEST_SIZE;
+
+    // "BFKS"
+    private static final int MAGIC = 0x42464b53;
+    private static final int VERSION = 1;
+
+    // (package visible, so the engines can run on them without copying)
+    final int[] pbox;
+    final int[] sbox1;
+    final int[] sbox2;
+    final int[] sbox3;
+    final int[] sbox4;
+
+    // weak key indicator, -1 until checked (racy, but every thread would
+    // store the same value, like String.hashCode() does)
+    private int nWeakKey = -1;
+
+    /**
+     * Constructor, runs the key setup.
+     *
+     * @param key  key material, up to BlowfishECB.MAXKEYLENGTH bytes
+     * @param nOfs where to start reading the key
+     * @param nLen size of the key in bytes
+     */
+    public BlowfishKeySchedule(
+            byte[] key,
+            int nOfs,
+            int nLen) {
+        this(new BlowfishECB(key, nOfs, nLen));
+    }
+
+    /**
+     * Expands lots of keys at once on the default fork/join pool.
+     *
+     * @param keys the keys, each one all of its array
+     * @return the schedules to come, in the order of the keys
+     * @see #expandAll(byte[][], ExecutorService)
+     */
+    public static List<Future<BlowfishKeySchedule>> expandAll(
+            byte[][] keys) {
+        return expandAll(keys, BlowfishECB.DefaultPool.POOL);
+    }
+
+    /**
+     * Expands lots of keys at once, in parallel on the given executor. Each
+     * key is a task of its own and the tasks get submitted in order, so the
+     * first schedules are ready while the rest is still being worked on. The
+     * keys get copied, the caller may wipe them right after this returns.
+     *
+     * @param keys     the keys, each one all of its array
+     * @param executor where to run the key setups
+     * @return the schedules to come, in the order of the keys
+     */
+    public static List<Future<BlowfishKeySchedule>> expandAll(
+            byte[][] keys,
+            ExecutorService executor) {
+        List<Future<BlowfishKeySchedule>> result =
+                new ArrayList<Future<BlowfishKeySchedule>>(keys.length);
+
+        for (byte[] key : keys) {
+            final byte[] keyCopy = key.clone();
+
+            result.add(executor.submit(new Callable<BlowfishKeySchedule>() {
+                @Override
+                public BlowfishKeySchedule call() {
+                    try {
+                        return new BlowfishKeySchedule(keyCopy, 0, keyCopy.length);
+                    } finally {
+                        Arrays.fill(keyCopy, (byte) 0);
+                    }
+                }
+            }));
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates a schedule from the current boxes of an instance, e.g. to
+     * export it.
+     *
+     * @param bfe the instance to copy the boxes from
+     * @return the new schedule
+     */
+    public static BlowfishKeySchedule copyOf(
+            BlowfishECB bfe) {
+        return new BlowfishKeySchedule(
+                (int[]) bfe.livePbox().clone(),
+                (int[]) bfe.liveSbox1().clone(),
+                (int[]) bfe.liveSbox2().clone(),
+                (int[]) bfe.liveSbox3().clone(),
+                (int[]) bfe.liveSbox4().clone());
+    }
+
+    /**
+     * Restores a schedule exported by toByteArray() or writeTo().
+     *
+     * @param data buffer with the exported schedule
+     * @param nOfs where the schedule starts
+     * @return the restored schedule
+     * @throws IllegalArgumentException if the data is not a valid schedule
+     */
+    public static BlowfishKeySchedule fromByteArray(
+            byte[] data,
+            int nOfs) {
+        if (data.length - nOfs < SERIALIZED_SIZE) {
+            throw new IllegalArgumentException("key schedule data too short");
+        }
+
+        if (BinConverter.byteArrayToInt(data, nOfs) != MAGIC) {
+            throw new IllegalArgumentException("not a key schedule");
+        }
+
+        if (BinConverter.byteArrayToInt(data, nOfs + 4) != VERSION) {
+            throw new IllegalArgumentException("unsupported key schedule version");
+        }
+
+        // verify the digest before trusting anything
+
+        int nDigestOfs = nOfs + SERIALIZED_SIZE - SHA1.DIGEST_SIZE;
+
+        SHA1 sh = new SHA1();
+        sh.update(data, nOfs, nDigestOfs - nOfs);
+        sh.finalize();
+
+        byte[] digest = sh.getDigest();
+        sh.clear();
+
+        int nDiff = 0;
+        for (int nI = 0; nI < SHA1.DIGEST_SIZE; nI++) {
+            nDiff |= digest[nI] ^ data[nDigestOfs + nI];
+        }
+
+        if (nDiff != 0) {
+            throw new IllegalArgumentException("corrupted key schedule");
+        }
+
+        int[] pbox = new int[18];
+        int[] sbox1 = new int[256];
+        int[] sbox2 = new int[256];
+        int[] sbox3 = new int[256];
+        int[] sbox4 = new int[256];
+
+        int nPos = nOfs + 8;
+        nPos = readBox(data, nPos, pbox);
+        nPos = readBox(data, nPos, sbox1);
+        nPos = readBox(data, nPos, sbox2);
+        nPos = readBox(data, nPos, sbox3);
+        readBox(data, nPos, sbox4);
+
+        return new BlowfishKeySchedule(pbox, sbox1, sbox2, sbox3, sbox4);
+    }
+
+    /**
+     * Restores a schedule exported by toByteArray() or writeTo(), the position
+     * of the buffer gets advanced by SERIALIZED_SIZE (if there are enough
+     * bytes left, otherwise it stays where it is).
+     *
+     * @param buf buffer with the exported schedule
+     * @return the restored schedule
+     * @throws IllegalArgumentException if the data is not a valid schedule
+     */
+    public static BlowfishKeySchedule readFrom(
+            ByteBuffer buf) {
+        if (buf.remaining() < SERIALIZED_SIZE) {
+            throw new IllegalArgumentException("key schedule data too short");
+        }
+
+        byte[] data = new byte[SERIALIZED_SIZE];
+        try {
+            buf.get(data);
+
+            return fromByteArray(data, 0);
+        } finally {
+            // (the copy is just as secret as the key itself)
+            Arrays.fill(data, (byte) 0);
+        }
+    }
+
+    // takes over the boxes of a freshly keyed instance, which must not be
+    // used afterwards
+
+    private BlowfishKeySchedule(
+            BlowfishECB bfe) {
+        this(bfe.livePbox(),
+                bfe.liveSbox1(),
+                bfe.liveSbox2(),
+                bfe.liveSbox3(),
+                bfe.liveSbox4());
+    }
+
+    BlowfishKeySchedule(
+            int[] pbox,
+            int[] sbox1,
+            int[] sbox2,
+            int[] sbox3,
+            int[] sbox4) {
+        this.pbox = pbox;
+        this.sbox1 = sbox1;
+        this.sbox2 = sbox2;
+        this.sbox3 = sbox3;
+        this.sbox4 = sbox4;
+    }
+
+    /**
+     * Gets a copy of the P-array.
+     *
+     * @return the P-array
+     */
+    public int[] getPbox() {
+        return (int[]) pbox.clone();
+    }
+
+    /**
+     * Gets a copy of S-box 1.
+     *
+     * @return S-box 1
+     */
+    public int[] getSbox1() {
+        return (int[]) sbox1.clone();
+    }
+
+    /**
+     * Gets a copy of S-box 2.
+     *
+     * @return S-box 2
+     */
+    public int[] getSbox2() {
+        return (int[]) sbox2.clone();
+    }
+
+    /**
+     * Gets a copy of S-box 3.
+     *
+     * @return S-box 3
+     */
+    public int[] getSbox3() {
+        return (int[]) sbox3.clone();
+    }
+
+    /**
+     * Gets a copy of S-box 4.
+     *
+     * @return S-box 4
+     */
+    public int[] getSbox4() {
+        return (int[]) sbox4.clone();
+    }
+
+    /**
+     * Checks if the key behind this schedule is a weak one, i.e. created
+     * identical entries in at least one of the S-boxes. The result gets
+     * remembered, so this is cheap to call again.
+     *
+     * @return true: weak key detected / false: key is fine
+     */
+    public boolean isWeak() {
+        int nWeak = nWeakKey;
+        if (nWeak == -1) {
+            nWeak = BlowfishECB.weakSboxes(sbox1, sbox2, sbox3, sbox4) ? 1 : 0;
+            nWeakKey = nWeak;
+        }
+
+        return nWeak == 1;
+    }
+
+    /**
+     * Exports the schedule.
+     *
+     * @return the schedule in binary form, SERIALIZED_SIZE bytes
+     */
+    public byte[] toByteArray() {
+        byte[] result = new byte[SERIALIZED_SIZE];
+
+        BinConverter.intToByteArray(MAGIC, result, 0);
+        BinConverter.intToByteArray(VERSION, result, 4);
+
+        int nPos = 8;
+        nPos = writeBox(pbox, result, nPos);
+        nPos = writeBox(sbox1, result, nPos);
+        nPos = writeBox(sbox2, result, nPos);
+        nPos = writeBox(sbox3, result, nPos);
+        nPos = writeBox(sbox4, result, nPos);
+
+        SHA1 sh = new SHA1();
+        sh.update(result, 0, nPos);
+        sh.finalize();
+        sh.getDigest(result, nPos);
+        sh.clear();
+
+        return result;
+    }
+
+    /**
+     * Exports the schedule into a buffer, its position gets advanced by
+     * SERIALIZED_SIZE.
+     *
+     * @param buf where to put the schedule
+     * @throws BufferOverflowException if buf has not enough room left
+     */
+    public void writeTo(
+            ByteBuffer buf) {
+        byte[] data = toByteArray();
+        try {
+            buf.put(data);
+        } finally {
+            Arrays.fill(data, (byte) 0);
+        }
+    }
+
+    private static int readBox(
+            byte[] data,
+            int nPos,
+            int[] box) {
+        for (int nI = 0; nI < box.length; nI++) {
+            box[nI] = BinConverter.byteArrayToInt(data, nPos);
+            nPos += 4;
+        }
+        return nPos;
+    }
+
+    private static int writeBox(
+            int[] box,
+            byte[] data,
+            int nPos) {
+        for (int nI = 0; nI < box.length; nI++) {
+            BinConverter.intToByteArray(box[nI], data, nPos);
+            nPos += 4;
+        }
+        return nPos;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.crypt;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size bounded cache mapping key material to expanded key schedules, for
+ * applications which see the same keys over and over again. The cache is
+ * split into segments by key hash, each one with its own lock and its own
+ * LRU order, so threads looking up different keys rarely wait for each
+ * other; the least recently used schedule of a segment gets evicted when that
+ * segment is full. All methods are thread safe; the key setup of a missing
+ * schedule runs outside of the lock, so two threads missing the same key at
+ * once may both expand it (only the first result is kept).
+ * <p>
+ * Be aware that the cache keeps copies of the key material and the expanded
+ * keys until they are evicted or clear() gets called.
+ */
+public class BlowfishKeyScheduleCache {
+    /**
+     * Most segments a cache gets by default.
+     */
+    public static final int DEFAULT_SEGMENTS = 16;
+
+    // (fewer entries per segment would make the eviction too uneven)
+    private static final int MIN_SEGMENT_SIZE = 16;
+
+    private final Segment[] m_segments;
+
+    private final AtomicLong m_lHits = new AtomicLong();
+    private final AtomicLong m_lMisses = new AtomicLong();
+
+
+    /**
+     * Constructor. Small caches get a single segment, i.e. exact LRU
+     * eviction, larger ones up to DEFAULT_SEGMENTS segments.
+     *
+     * @param nMaxEntries maximum number of schedules to keep
+     */
+    public BlowfishKeyScheduleCache(
+            int nMaxEntries) {
+        this(nMaxEntries, Math.max(1, Math.min(DEFAULT_SEGMENTS, nMaxEntries / MIN_SEGMENT_SIZE)));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param nMaxEntries maximum number of schedules to keep
+     * @param nSegments   number of independently locked segments, between 1
+     *                    and nMaxEntries
+     */
+    public BlowfishKeyScheduleCache(
+            int nMaxEntries,
+            int nSegments) {
+        if (nMaxEntries < 1) {
+            throw new IllegalArgumentException("cache size must be positive");
+        }
+        if (nSegments < 1 || nSegments > nMaxEntries) {
+            throw new IllegalArgumentException("invalid number of segments");
+        }
+
+        // (the capacity gets spread as evenly as possible, so the segments
+        // add up to the exact maximum)
+        m_segments = new Segment[nSegments];
+        for (int nI = 0; nI < nSegments; nI++) {
+            m_segments[nI] = new Segment(
+                    nMaxEntries / nSegments + (nI < nMaxEntries % nSegments ? 1 : 0));
+        }
+    }
+
+    /**
+     * Gets the schedule for a key, expands and caches it if necessary.
+     *
+     * @param key  key material, up to BlowfishECB.MAXKEYLENGTH bytes
+     * @param nOfs where to start reading the key
+     * @param nLen size of the key in bytes
+     * @return the key schedule
+     */
+    public BlowfishKeySchedule get(
+            byte[] key,
+            int nOfs,
+            int nLen) {
+        CacheKey ck = new CacheKey(key, nOfs, nLen);
+
+        // (the upper bits of the hash get mixed in, the array hash is weak
+        // in its lower ones for short keys)
+        int nHash = ck.hashCode();
+        nHash ^= nHash >>> 16;
+        Segment seg = m_segments[(nHash & 0x7fffffff) % m_segments.length];
+
+        BlowfishKeySchedule result;
+
+        synchronized (seg) {
+            result = seg.get(ck);
+        }
+        if (result != null) {
+            m_lHits.incrementAndGet();
+            return result;
+        }
+        m_lMisses.incrementAndGet();
+
+        result = new BlowfishKeySchedule(key, nOfs, nLen);
+
+        synchronized (seg) {
+            BlowfishKeySchedule other = seg.get(ck);
+            if (other != null) {
+                return other;
+            }
+            seg.put(ck, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * @return number of lookups which found their schedule in the cache
+     */
+    public long getHits() {
+        return m_lHits.get();
+    }
+
+    /**
+     * @return number of lookups which had to run the key setup
+     */
+    public long getMisses() {
+        return m_lMisses.get();
+    }
+
+    /**
+     * @return number of segments the cache is split into
+     */
+    public int getSegments() {
+        return m_segments.length;
+    }
+
+    /**
+     * @return number of schedules currently cached
+     */
+    public int size() {
+        int nResult = 0;
+        for (Segment seg : m_segments) {
+            synchronized (seg) {
+                nResult += seg.size();
+            }
+        }
+        return nResult;
+    }
+
+    /**
+     * Removes all schedules, the counters are kept.
+     */
+    public void clear() {
+        for (Segment seg : m_segments) {
+            synchronized (seg) {
+                seg.clear();
+            }
+        }
+    }
+
+    // one LRU list, access order turns the map into that (guarded by the
+    // instance itself, since even reads change the order)
+
+    private static final class Segment extends LinkedHashMap<CacheKey, BlowfishKeySchedule> {
+        private static final long serialVersionUID = 1L;
+
+        private final int m_nMaxEntries;
+
+        Segment(
+                int nMaxEntries) {
+            super(16, 0.75f, true);
+            m_nMaxEntries = nMaxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(
+                Map.Entry<CacheKey, BlowfishKeySchedule> eldest) {
+            return size() > m_nMaxEntries;
+        }
+    }
+
+    // copy of the key material, compared by content
+
+    private static final class CacheKey {
+        private final byte[] m_key;
+        private final int m_nHash;
+
+        CacheKey(
+                byte[] key,
+                int nOfs,
+                int nLen) {
+            m_key = Arrays.copyOfRange(key, nOfs, nOfs + nLen);
+            m_nHash = Arrays.hashCode(m_key);
+        }
+
+        @Override
+        public int hashCode() {
+            return m_nHash;
+        }
+
+        @Override
+        public boolean equals(
+                Object obj) {
+            return obj instanceof CacheKey
+                    && Arrays.equals(m_key, ((CacheKey) obj).m_key);
+        }
+    }
+}
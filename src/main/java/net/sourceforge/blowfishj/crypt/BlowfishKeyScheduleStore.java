@@ -0,0 +1,260 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.crypt;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Stores large numbers of expanded keys outside of the Java heap. Schedules
+ * get packed into slots of big direct buffers (slabs), so a few hundred
+ * thousand of them cost the garbage collector nothing but a handful of
+ * buffer objects. Each slot is addressed by a number, which the application
+ * keeps instead of the schedule; BlowfishSlotECB engines run straight on a
+ * slot. Removing a schedule wipes its slot and hands it out again later.
+ * <p>
+ * Reading the S-boxes through a buffer is slower than array access, so this
+ * pays off for large numbers of keys which are used rarely each; for a few
+ * hot keys BlowfishKeySchedule is the better choice.
+ * <p>
+ * All methods are thread safe. Engines created via engine() see their
+ * schedule completely, even if it was stored by a different thread. Every
+ * slot has a generation, which remove() and clear() advance; an engine
+ * remembers the generation of its slot and refuses to work once the slot got
+ * removed or reused (removing a slot while one of its engines is still
+ * running is not detected though).
+ */
+public class BlowfishKeyScheduleStore {
+    /**
+     * size of a slot in bytes (the P-array and the four S-boxes)
+     */
+    public static final int SLOT_SIZE = (18 + 4 * 256) * 4;
+
+    // where the S-boxes start within a slot
+    static final int SBOX1 = 18 * 4;
+
+    private final int m_nSlotsPerSlab;
+    private final List<ByteBuffer> m_slabs = new ArrayList<ByteBuffer>();
+    // the generations of the slots, one array per slab
+    private final List<AtomicIntegerArray> m_generations = new ArrayList<AtomicIntegerArray>();
+
+    // slots in use, the lowest free one gets handed out next
+    private final BitSet m_used = new BitSet();
+    private int m_nSize;
+
+
+    /**
+     * Constructor.
+     *
+     * @param nSlotsPerSlab number of schedules per slab, i.e. how many of
+     *                      them to allocate memory for at once
+     */
+    public BlowfishKeyScheduleStore(
+            int nSlotsPerSlab) {
+        if (nSlotsPerSlab < 1 || nSlotsPerSlab > Integer.MAX_VALUE / SLOT_SIZE) {
+            throw new IllegalArgumentException("invalid number of slots per slab");
+        }
+
+        m_nSlotsPerSlab = nSlotsPerSlab;
+    }
+
+    /**
+     * Expands a key and stores its schedule.
+     *
+     * @param key  key material, up to BlowfishECB.MAXKEYLENGTH bytes
+     * @param nOfs where to start reading the key
+     * @param nLen size of the key in bytes
+     * @return the slot number
+     */
+    public int put(
+            byte[] key,
+            int nOfs,
+            int nLen) {
+        BlowfishECB bfe = new BlowfishECB(key, nOfs, nLen);
+        try {
+            return put(bfe.livePbox(), bfe.liveSbox1(), bfe.liveSbox2(), bfe.liveSbox3(), bfe.liveSbox4());
+        } finally {
+            bfe.cleanUp();
+        }
+    }
+
+    /**
+     * Stores a copy of a schedule.
+     *
+     * @param ks the key schedule
+     * @return the slot number
+     */
+    public int put(
+            BlowfishKeySchedule ks) {
+        return put(ks.pbox, ks.sbox1, ks.sbox2, ks.sbox3, ks.sbox4);
+    }
+
+    private synchronized int put(
+            int[] pbox,
+            int[] sbox1,
+            int[] sbox2,
+            int[] sbox3,
+            int[] sbox4) {
+        int nSlot = m_used.nextClearBit(0);
+
+        int nSlab = nSlot / m_nSlotsPerSlab;
+        if (nSlab == m_slabs.size()) {
+            m_slabs.add(ByteBuffer.allocateDirect(m_nSlotsPerSlab * SLOT_SIZE)
+                    .order(ByteOrder.nativeOrder()));
+            m_generations.add(new AtomicIntegerArray(m_nSlotsPerSlab));
+        }
+
+        ByteBuffer slab = m_slabs.get(nSlab);
+        int nBase = nSlot % m_nSlotsPerSlab * SLOT_SIZE;
+
+        int nI;
+        for (nI = 0; nI < 18; nI++) {
+            slab.putInt(nBase + nI * 4, pbox[nI]);
+        }
+
+        int nS1 = nBase + SBOX1;
+        for (nI = 0; nI < 256; nI++) {
+            slab.putInt(nS1 + nI * 4, sbox1[nI]);
+            slab.putInt(nS1 + 1024 + nI * 4, sbox2[nI]);
+            slab.putInt(nS1 + 2048 + nI * 4, sbox3[nI]);
+            slab.putInt(nS1 + 3072 + nI * 4, sbox4[nI]);
+        }
+
+        m_used.set(nSlot);
+        m_nSize++;
+
+        return nSlot;
+    }
+
+    /**
+     * Copies a schedule back onto the heap.
+     *
+     * @param nSlot the slot number
+     * @return the key schedule
+     * @throws IllegalArgumentException if the slot is not in use
+     */
+    public synchronized BlowfishKeySchedule get(
+            int nSlot) {
+        ByteBuffer slab = slab(nSlot);
+        int nBase = nSlot % m_nSlotsPerSlab * SLOT_SIZE;
+
+        int[] pbox = new int[18];
+        int[] sbox1 = new int[256];
+        int[] sbox2 = new int[256];
+        int[] sbox3 = new int[256];
+        int[] sbox4 = new int[256];
+
+        int nI;
+        for (nI = 0; nI < 18; nI++) {
+            pbox[nI] = slab.getInt(nBase + nI * 4);
+        }
+
+        int nS1 = nBase + SBOX1;
+        for (nI = 0; nI < 256; nI++) {
+            sbox1[nI] = slab.getInt(nS1 + nI * 4);
+            sbox2[nI] = slab.getInt(nS1 + 1024 + nI * 4);
+            sbox3[nI] = slab.getInt(nS1 + 2048 + nI * 4);
+            sbox4[nI] = slab.getInt(nS1 + 3072 + nI * 4);
+        }
+
+        return new BlowfishKeySchedule(pbox, sbox1, sbox2, sbox3, sbox4);
+    }
+
+    /**
+     * Creates an engine running on a slot.
+     *
+     * @param nSlot the slot number
+     * @return the engine
+     * @throws IllegalArgumentException if the slot is not in use
+     */
+    public synchronized BlowfishSlotECB engine(
+            int nSlot) {
+        return new BlowfishSlotECB(
+                slab(nSlot),
+                nSlot % m_nSlotsPerSlab * SLOT_SIZE,
+                m_generations.get(nSlot / m_nSlotsPerSlab),
+                nSlot % m_nSlotsPerSlab);
+    }
+
+    /**
+     * Wipes a slot and frees it for the next put(). Engines running on the
+     * slot can't be used anymore.
+     *
+     * @param nSlot the slot number
+     * @throws IllegalArgumentException if the slot is not in use
+     */
+    public synchronized void remove(
+            int nSlot) {
+        ByteBuffer slab = slab(nSlot);
+        int nBase = nSlot % m_nSlotsPerSlab * SLOT_SIZE;
+
+        // (before the wipe, so that engines stop before they could see it)
+        m_generations.get(nSlot / m_nSlotsPerSlab).incrementAndGet(nSlot % m_nSlotsPerSlab);
+
+        for (int nI = 0; nI < SLOT_SIZE; nI += 4) {
+            slab.putInt(nBase + nI, 0);
+        }
+
+        m_used.clear(nSlot);
+        m_nSize--;
+    }
+
+    /**
+     * Wipes all slots, all engines become unusable. The slabs are kept for
+     * reuse.
+     */
+    public synchronized void clear() {
+        for (int nSlot = m_used.nextSetBit(0); nSlot >= 0; nSlot = m_used.nextSetBit(nSlot + 1)) {
+            m_generations.get(nSlot / m_nSlotsPerSlab).incrementAndGet(nSlot % m_nSlotsPerSlab);
+        }
+
+        for (ByteBuffer slab : m_slabs) {
+            for (int nI = 0, nC = slab.capacity(); nI < nC; nI += 8) {
+                slab.putLong(nI, 0L);
+            }
+        }
+
+        m_used.clear();
+        m_nSize = 0;
+    }
+
+    /**
+     * @return number of schedules stored
+     */
+    public synchronized int size() {
+        return m_nSize;
+    }
+
+    /**
+     * @return number of bytes allocated off the heap
+     */
+    public synchronized long getAllocated() {
+        return (long) m_slabs.size() * m_nSlotsPerSlab * SLOT_SIZE;
+    }
+
+    private ByteBuffer slab(
+            int nSlot) {
+        if (nSlot < 0 || !m_used.get(nSlot)) {
+            throw new IllegalArgumentException("slot not in use");
+        }
+        return m_slabs.get(nSlot / m_nSlotsPerSlab);
+    }
+}
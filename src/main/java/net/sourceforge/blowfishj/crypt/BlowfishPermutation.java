@@ -0,0 +1,265 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.crypt;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A keyed permutation of the numbers 0 to N-1, for any N, e.g. to turn
+ * sequential order numbers into unpredictable ones of the same range without
+ * a lookup table. The numbers are run through a Feistel network just as wide
+ * as N needs (with halves differing by one bit for odd widths, like FF1 does),
+ * with the round function of Blowfish and the P-array as the round keys;
+ * results outside of the range get encrypted again until they fall into it
+ * (cycle walking), which takes less than two passes through the network on
+ * average.
+ * <p>
+ * This is meant for obfuscation, it is built like the FF1 format preserving
+ * encryption but is neither FF1 nor has it been analyzed as a cipher of its
+ * own. Instances never change and are thread safe.
+ */
+public final class BlowfishPermutation implements Iterable<Long> {
+    private static final int ROUNDS = 16;
+
+    private final long m_lDomain;
+    // the upper half (A) gets the bit less for odd widths
+    private final int m_nBitsB;
+    private final int m_nMaskA;
+    private final int m_nMaskB;
+
+    private final int[] m_pbox;
+    private final int[] m_sbox1;
+    private final int[] m_sbox2;
+    private final int[] m_sbox3;
+    private final int[] m_sbox4;
+
+
+    /**
+     * Constructor, runs the key setup.
+     *
+     * @param key     key material, up to BlowfishECB.MAXKEYLENGTH bytes
+     * @param nOfs    where to start reading the key
+     * @param nLen    size of the key in bytes
+     * @param lDomain N, the number of values to permute
+     */
+    public BlowfishPermutation(
+            byte[] key,
+            int nOfs,
+            int nLen,
+            long lDomain) {
+        this(new BlowfishKeySchedule(key, nOfs, nLen), lDomain);
+    }
+
+    /**
+     * Constructor to run on an already expanded key.
+     *
+     * @param ks      the key schedule
+     * @param lDomain N, the number of values to permute
+     */
+    public BlowfishPermutation(
+            BlowfishKeySchedule ks,
+            long lDomain) {
+        if (lDomain < 1) {
+            throw new IllegalArgumentException("domain must not be empty");
+        }
+
+        m_lDomain = lDomain;
+
+        // (at least one bit for each half)
+        int nBits = Math.max(2, 64 - Long.numberOfLeadingZeros(lDomain - 1));
+        m_nBitsB = nBits - (nBits >> 1);
+        m_nMaskA = (int) ((1L << (nBits >> 1)) - 1);
+        m_nMaskB = (int) ((1L << m_nBitsB) - 1);
+
+        m_pbox = ks.pbox;
+        m_sbox1 = ks.sbox1;
+        m_sbox2 = ks.sbox2;
+        m_sbox3 = ks.sbox3;
+        m_sbox4 = ks.sbox4;
+    }
+
+    /**
+     * @return N, the number of values permuted
+     */
+    public long getDomain() {
+        return m_lDomain;
+    }
+
+    /**
+     * Maps a value to its place in the permutation.
+     *
+     * @param lValue the value, between 0 and N-1
+     * @return the permuted value, between 0 and N-1
+     * @throws IllegalArgumentException if the value is out of range
+     */
+    public long permute(
+            long lValue) {
+        checkRange(lValue);
+
+        do {
+            lValue = encipher(lValue);
+        } while (lValue >= m_lDomain);
+
+        return lValue;
+    }
+
+    /**
+     * Reverses permute().
+     *
+     * @param lValue the permuted value, between 0 and N-1
+     * @return the original value, between 0 and N-1
+     * @throws IllegalArgumentException if the value is out of range
+     */
+    public long invert(
+            long lValue) {
+        checkRange(lValue);
+
+        do {
+            lValue = decipher(lValue);
+        } while (lValue >= m_lDomain);
+
+        return lValue;
+    }
+
+    /**
+     * Permutes a buffer of values.
+     *
+     * @param inBuf   the values
+     * @param nInPos  where to start reading
+     * @param outBuf  where to put the permuted values (can be the same as inBuf)
+     * @param nOutPos where to start writing
+     * @param nLen    number of values
+     * @throws IllegalArgumentException if a value is out of range
+     */
+    public void permute(
+            long[] inBuf,
+            int nInPos,
+            long[] outBuf,
+            int nOutPos,
+            int nLen) {
+        for (int nI = 0; nI < nLen; nI++) {
+            outBuf[nOutPos + nI] = permute(inBuf[nInPos + nI]);
+        }
+    }
+
+    /**
+     * Reverses a buffer of permuted values.
+     *
+     * @param inBuf   the permuted values
+     * @param nInPos  where to start reading
+     * @param outBuf  where to put the original values (can be the same as inBuf)
+     * @param nOutPos where to start writing
+     * @param nLen    number of values
+     * @throws IllegalArgumentException if a value is out of range
+     */
+    public void invert(
+            long[] inBuf,
+            int nInPos,
+            long[] outBuf,
+            int nOutPos,
+            int nLen) {
+        for (int nI = 0; nI < nLen; nI++) {
+            outBuf[nOutPos + nI] = invert(inBuf[nInPos + nI]);
+        }
+    }
+
+    /**
+     * Walks through the whole permutation, i.e. returns permute(0),
+     * permute(1) and so on, computed one by one (to do without the boxing,
+     * just call permute() in a loop).
+     *
+     * @return all of the values 0 to N-1, shuffled
+     */
+    @Override
+    public Iterator<Long> iterator() {
+        return new Iterator<Long>() {
+            private long m_lNext;
+
+            @Override
+            public boolean hasNext() {
+                return m_lNext < m_lDomain;
+            }
+
+            @Override
+            public Long next() {
+                if (m_lNext >= m_lDomain) {
+                    throw new NoSuchElementException();
+                }
+                return permute(m_lNext++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    // one pass through the network; instead of swapping the halves (which
+    // differ in size) after every round, A and B take turns in getting the
+    // output of the round function xored in
+
+    private long encipher(
+            long lValue) {
+        int nMaskA = m_nMaskA;
+        int nMaskB = m_nMaskB;
+        int[] pbox = m_pbox;
+
+        int nA = (int) (lValue >>> m_nBitsB) & nMaskA;
+        int nB = (int) lValue & nMaskB;
+
+        for (int nI = 0; nI < ROUNDS; nI += 2) {
+            nA ^= f(nB ^ pbox[nI]) & nMaskA;
+            nB ^= f(nA ^ pbox[nI + 1]) & nMaskB;
+        }
+
+        return (long) nA << m_nBitsB | nB & 0x0ffffffffL;
+    }
+
+    private long decipher(
+            long lValue) {
+        int nMaskA = m_nMaskA;
+        int nMaskB = m_nMaskB;
+        int[] pbox = m_pbox;
+
+        int nA = (int) (lValue >>> m_nBitsB) & nMaskA;
+        int nB = (int) lValue & nMaskB;
+
+        for (int nI = ROUNDS - 2; nI >= 0; nI -= 2) {
+            nB ^= f(nA ^ pbox[nI + 1]) & nMaskB;
+            nA ^= f(nB ^ pbox[nI]) & nMaskA;
+        }
+
+        return (long) nA << m_nBitsB | nB & 0x0ffffffffL;
+    }
+
+    // the round function of Blowfish
+
+    private int f(
+            int nX) {
+        return (m_sbox1[nX >>> 24] + m_sbox2[nX >>> 16 & 0x0ff] ^ m_sbox3[nX >>> 8 & 0x0ff])
+                + m_sbox4[nX & 0x0ff];
+    }
+
+    private void checkRange(
+            long lValue) {
+        if (lValue < 0 || lValue >= m_lDomain) {
+            throw new IllegalArgumentException("value out of range");
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.crypt;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Blowfish ECB engine running on a slot of a BlowfishKeyScheduleStore, i.e.
+ * with the S-boxes read straight from the off-heap slab. Instances are tiny
+ * (just a copy of the P-array) and can be created per thread or per message
+ * via BlowfishKeyScheduleStore.engine(). Once the slot got removed from the
+ * store (or the store got cleared) the engine refuses to work, instead of
+ * silently running on a wiped or reused slot.
+ */
+public final class BlowfishSlotECB {
+    /**
+     * block size of Blowfish in bytes
+     */
+    public static final int BLOCKSIZE = BlowfishECB.BLOCKSIZE;
+
+    private final int[] pbox;
+    // the slab and where the S-boxes start in it (in bytes)
+    private final ByteBuffer slab;
+    private final int nSbox1;
+    // the generations of the slab, our slot's index and what it was when the
+    // engine got created
+    private final AtomicIntegerArray generations;
+    private final int nIndex;
+    private final int nGeneration;
+
+    BlowfishSlotECB(
+            ByteBuffer slab,
+            int nBase,
+            AtomicIntegerArray generations,
+            int nIndex) {
+        pbox = new int[18];
+        for (int nI = 0; nI < pbox.length; nI++) {
+            pbox[nI] = slab.getInt(nBase + nI * 4);
+        }
+
+        this.slab = slab;
+        nSbox1 = nBase + BlowfishKeyScheduleStore.SBOX1;
+
+        this.generations = generations;
+        this.nIndex = nIndex;
+        nGeneration = generations.get(nIndex);
+    }
+
+    /**
+     * Tells whether the engine can still be used, i.e. its slot hasn't been
+     * removed from the store.
+     *
+     * @return true if the slot is still valid
+     */
+    public boolean isValid() {
+        return generations.get(nIndex) == nGeneration;
+    }
+
+    private void checkSlot() {
+        if (generations.get(nIndex) != nGeneration) {
+            throw new IllegalStateException("slot got removed from the store");
+        }
+    }
+
+    /**
+     * Encrypts a buffer (ECB).
+     *
+     * @param inBuf   buffer with the data
+     * @param nInPos  where to start reading
+     * @param outBuf  buffer to put the result (can be the same as inBuf)
+     * @param nOutPos where to start writing
+     * @param nLen    number of bytes, whole blocks only (rest is ignored)
+     * @return number of bytes processed
+     * @throws IllegalStateException if the slot got removed from the store
+     */
+    public int encrypt(
+            byte[] inBuf,
+            int nInPos,
+            byte[] outBuf,
+            int nOutPos,
+            int nLen) {
+        checkSlot();
+
+        nLen -= nLen % BLOCKSIZE;
+
+        int nInPos1 = nInPos;
+        int nC = nInPos1 + nLen;
+
+        int[] pbox = this.pbox;
+        ByteBuffer slab = this.slab;
+
+        int nS1 = nSbox1;
+        int nS2 = nS1 + 1024;
+        int nS3 = nS2 + 1024;
+        int nS4 = nS3 + 1024;
+
+        int nOutPos1 = nOutPos;
+        while (nInPos1 < nC) {
+            int nHi = BigEndian.getInt(inBuf, nInPos1);
+            int nLo = BigEndian.getInt(inBuf, nInPos1 + 4);
+            nInPos1 += BLOCKSIZE;
+
+            // (rolled up, the buffer accesses would exceed the inlining
+            // budget of the JIT otherwise)
+
+            nHi ^= pbox[0];
+            for (int nR = 1; nR < 17; nR += 2) {
+                nLo ^= (slab.getInt(nS1 + (nHi >>> 24 << 2)) + slab.getInt(nS2 + (nHi >>> 14 & 0x3fc))
+                        ^ slab.getInt(nS3 + (nHi >>> 6 & 0x3fc))) + slab.getInt(nS4 + (nHi << 2 & 0x3fc))
+                        ^ pbox[nR];
+                nHi ^= (slab.getInt(nS1 + (nLo >>> 24 << 2)) + slab.getInt(nS2 + (nLo >>> 14 & 0x3fc))
+                        ^ slab.getInt(nS3 + (nLo >>> 6 & 0x3fc))) + slab.getInt(nS4 + (nLo << 2 & 0x3fc))
+                        ^ pbox[nR + 1];
+            }
+            nLo ^= pbox[17];
+
+            BigEndian.putInt(outBuf, nOutPos1, nLo);
+            BigEndian.putInt(outBuf, nOutPos1 + 4, nHi);
+            nOutPos1 += BLOCKSIZE;
+        }
+
+        return nLen;
+    }
+
+    /**
+     * Decrypts a buffer (ECB).
+     *
+     * @param inBuf   buffer with the data
+     * @param nInPos  where to start reading
+     * @param outBuf  buffer to put the result (can be the same as inBuf)
+     * @param nOutPos where to start writing
+     * @param nLen    number of bytes, whole blocks only (rest is ignored)
+     * @return number of bytes processed
+     * @throws IllegalStateException if the slot got removed from the store
+     */
+    public int decrypt(
+            byte[] inBuf,
+            int nInPos,
+            byte[] outBuf,
+            int nOutPos,
+            int nLen) {
+        checkSlot();
+
+        nLen -= nLen % BLOCKSIZE;
+
+        int nInPos1 = nInPos;
+        int nC = nInPos1 + nLen;
+
+        int[] pbox = this.pbox;
+        ByteBuffer slab = this.slab;
+
+        int nS1 = nSbox1;
+        int nS2 = nS1 + 1024;
+        int nS3 = nS2 + 1024;
+        int nS4 = nS3 + 1024;
+
+        int nOutPos1 = nOutPos;
+        while (nInPos1 < nC) {
+            int nHi = BigEndian.getInt(inBuf, nInPos1);
+            int nLo = BigEndian.getInt(inBuf, nInPos1 + 4);
+            nInPos1 += BLOCKSIZE;
+
+            // (rolled up, the buffer accesses would exceed the inlining
+            // budget of the JIT otherwise)
+
+            nHi ^= pbox[17];
+            for (int nR = 16; nR > 0; nR -= 2) {
+                nLo ^= (slab.getInt(nS1 + (nHi >>> 24 << 2)) + slab.getInt(nS2 + (nHi >>> 14 & 0x3fc))
+                        ^ slab.getInt(nS3 + (nHi >>> 6 & 0x3fc))) + slab.getInt(nS4 + (nHi << 2 & 0x3fc))
+                        ^ pbox[nR];
+                nHi ^= (slab.getInt(nS1 + (nLo >>> 24 << 2)) + slab.getInt(nS2 + (nLo >>> 14 & 0x3fc))
+                        ^ slab.getInt(nS3 + (nLo >>> 6 & 0x3fc))) + slab.getInt(nS4 + (nLo << 2 & 0x3fc))
+                        ^ pbox[nR - 1];
+            }
+            nLo ^= pbox[0];
+
+            BigEndian.putInt(outBuf, nOutPos1, nLo);
+            BigEndian.putInt(outBuf, nOutPos1 + 4, nHi);
+            nOutPos1 += BLOCKSIZE;
+        }
+
+        return nLen;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.crypt;
+
+/**
+ * Blowfish in ECB mode, running the byte array routines on SIMD hardware
+ * through the Vector API if possible: the rounds of as many blocks as the
+ * vector registers have integer lanes (e.g. 8 with AVX2, 16 with AVX-512)
+ * are computed at once, with the S-box lookups done as gathers.
+ * <p>
+ * This needs Java 17 or later, started with
+ * <code>--add-modules jdk.incubator.vector</code>. Otherwise, and for the
+ * blocks not filling up all the lanes, the regular BlowfishECB code runs.
+ * The results are the same either way.
+ */
+public class BlowfishVectorECB extends BlowfishECB {
+    private static final BlockKernel KERNEL = loadKernel();
+
+    /**
+     * @see BlowfishECB#initialize(byte[], int, int)
+     */
+    public BlowfishVectorECB(
+            byte[] key,
+            int nOfs,
+            int nLen) {
+        super(key, nOfs, nLen);
+    }
+
+    /**
+     * @see BlowfishECB#BlowfishECB(BlowfishKeySchedule)
+     */
+    public BlowfishVectorECB(
+            BlowfishKeySchedule ks) {
+        super(ks);
+    }
+
+    /**
+     * Tells whether the Vector API is actually used.
+     *
+     * @return true if it is, false if everything runs on the regular code
+     */
+    public static boolean isVectorized() {
+        return KERNEL != null;
+    }
+
+    private static BlockKernel loadKernel() {
+        try {
+            return (BlockKernel) Class.forName(
+                    "net.sourceforge.blowfishj.crypt.VectorBlockKernel").getDeclaredConstructor().newInstance();
+        } catch (Exception | LinkageError e) {
+            // (older runtime, incubator module not added or not compiled in)
+            return null;
+        }
+    }
+
+    @Override
+    public int encrypt(
+            byte[] inBuf,
+            int nInPos,
+            byte[] outBuf,
+            int nOutPos,
+            int nLen) {
+        checkKey();
+
+        nLen -= nLen % BLOCKSIZE;
+
+        int nDone = 0;
+        if (KERNEL != null) {
+            nDone = KERNEL.encrypt(livePbox(), liveSbox1(), liveSbox2(), liveSbox3(), liveSbox4(),
+                    inBuf, nInPos, outBuf, nOutPos, nLen);
+        }
+
+        super.encrypt(inBuf, nInPos + nDone, outBuf, nOutPos + nDone, nLen - nDone);
+
+        return nLen;
+    }
+
+    @Override
+    public int decrypt(
+            byte[] inBuf,
+            int nInPos,
+            byte[] outBuf,
+            int nOutPos,
+            int nLen) {
+        checkKey();
+
+        nLen -= nLen % BLOCKSIZE;
+
+        int nDone = 0;
+        if (KERNEL != null) {
+            nDone = KERNEL.decrypt(livePbox(), liveSbox1(), liveSbox2(), liveSbox3(), liveSbox4(),
+                    inBuf, nInPos, outBuf, nOutPos, nLen);
+        }
+
+        super.decrypt(inBuf, nInPos + nDone, outBuf, nOutPos + nDone, nLen - nDone);
+
+        return nLen;
+    }
+}
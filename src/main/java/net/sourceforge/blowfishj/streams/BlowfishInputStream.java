@@ -19,11 +19,12 @@ package net.sourceforge.blowfishj.streams;
 import net.sourceforge.blowfishj.crypt.SHA1;
 import net.sourceforge.blowfishj.crypt.BlowfishCBC;
 import net.sourceforge.blowfishj.crypt.BlowfishECB;
+import net.sourceforge.blowfishj.crypt.BlowfishKeyScheduleCache;
 
-import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PushbackInputStream;
+import java.io.OutputStream;
 
 /**
  * An input stream that reads from a file created an instance of the
@@ -32,13 +33,21 @@ import java.io.PushbackInputStream;
  * @author original version by Dale Anson <danson@germane-software.com>
  */
 public class BlowfishInputStream extends InputStream {
-    private PushbackInputStream m_is;
+    /**
+     * default size of the internal decryption buffer (in bytes)
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private InputStream m_is;
 
     private BlowfishCBC m_bfc;
 
+    // the buffer holds the decrypted data in [m_nBufPos, m_nBufCount) and the
+    // still encrypted lookahead in [m_nBufCount, m_nRawCount)
     private byte[] m_buf;
     private int m_nBufPos;
     private int m_nBufCount;
+    private int m_nRawCount;
 
 
     /**
@@ -56,117 +65,278 @@ public class BlowfishInputStream extends InputStream {
             int nOfs,
             int nLen,
             InputStream is) throws IOException {
-        init(key, nOfs, nLen, is);
+        init(key, nOfs, nLen, is, DEFAULT_BUFFER_SIZE, null, false);
     }
 
-    private void init(
+    /**
+     * Constructor to define the size of the internal buffer. The key material
+     * gets transformed to a final 160bit key using SHA-1.
+     *
+     * @param key      key buffer
+     * @param nOfs     where the key material starts
+     * @param nLen     size of the key material (in bytes)
+     * @param is       the input stream from which bytes will be read
+     * @param nBufSize size of the decryption buffer, at least two blocks
+     * @throws IOException if the IV couldn't be read out
+     */
+    public BlowfishInputStream(
             byte[] key,
             int nOfs,
             int nLen,
-            InputStream is) throws IOException {
+            InputStream is,
+            int nBufSize) throws IOException {
+        init(key, nOfs, nLen, is, nBufSize, null, false);
+    }
 
+    /**
+     * Constructor to define the size of the internal buffer and to get the
+     * key schedule from a cache. The key material gets transformed to a final
+     * 160bit key using SHA-1, which is then looked up in the cache.
+     *
+     * @param key      key buffer
+     * @param nOfs     where the key material starts
+     * @param nLen     size of the key material (in bytes)
+     * @param is       the input stream from which bytes will be read
+     * @param nBufSize size of the decryption buffer, at least two blocks
+     * @param cache    where to get the key schedule from (null for none)
+     * @throws IOException if the IV couldn't be read out
+     */
+    public BlowfishInputStream(
+            byte[] key,
+            int nOfs,
+            int nLen,
+            InputStream is,
+            int nBufSize,
+            BlowfishKeyScheduleCache cache) throws IOException {
+        init(key, nOfs, nLen, is, nBufSize, cache, false);
+    }
 
-        m_nBufPos = m_nBufCount = 0;
+    /**
+     * Constructor to define the size of the internal buffer, with optional
+     * lazy key setup. If enabled the key gets expanded on the first read
+     * only, the IV is read right away nevertheless. The key material gets
+     * transformed to a final 160bit key using SHA-1.
+     *
+     * @param key      key buffer
+     * @param nOfs     where the key material starts
+     * @param nLen     size of the key material (in bytes)
+     * @param is       the input stream from which bytes will be read
+     * @param nBufSize size of the decryption buffer, at least two blocks
+     * @param blLazy   true: expand the key on first use
+     * @throws IOException if the IV couldn't be read out
+     */
+    public BlowfishInputStream(
+            byte[] key,
+            int nOfs,
+            int nLen,
+            InputStream is,
+            int nBufSize,
+            boolean blLazy) throws IOException {
+        init(key, nOfs, nLen, is, nBufSize, null, blLazy);
+    }
+
+    private void init(
+            byte[] key,
+            int nOfs,
+            int nLen,
+            InputStream is,
+            int nBufSize,
+            BlowfishKeyScheduleCache cache,
+            boolean blLazy) throws IOException {
+        if (nBufSize < BlowfishECB.BLOCKSIZE << 1) {
+            throw new IllegalArgumentException(
+                    "buffer size must be at least two blocks");
+        }
 
-        m_is = new PushbackInputStream(new BufferedInputStream(is));
+        m_nBufPos = m_nBufCount = m_nRawCount = 0;
+
+        m_is = is;
 
         SHA1 sh = new SHA1();
         sh.update(key, nOfs, nLen);
         sh.finalize();
 
         byte[] ckey = sh.getDigest();
-        m_bfc = new BlowfishCBC(ckey, 0, ckey.length, 0);
+        m_bfc = cache == null ?
+                new BlowfishCBC(ckey, 0, ckey.length, 0, blLazy) :
+                new BlowfishCBC(cache.get(ckey, 0, ckey.length));
 
-        m_buf = new byte[BlowfishECB.BLOCKSIZE];
+        m_buf = new byte[nBufSize - nBufSize % BlowfishECB.BLOCKSIZE];
 
         // read the IV
 
-        int nC;
-        int nI;
-        for (nI = 0, nC = m_buf.length; nI < nC; nI++) {
-            int nVal;
-            if ((nVal = m_is.read()) == -1) {
+        int nI = 0;
+        while (nI < BlowfishECB.BLOCKSIZE) {
+            int nRead = m_is.read(m_buf, nI, BlowfishECB.BLOCKSIZE - nI);
+            if (nRead == -1) {
                 throw new IOException("truncated stream, IV is missing");
             }
-            m_buf[nI] = (byte) nVal;
+            nI += nRead;
         }
 
         m_bfc.setCBCIV(m_buf, 0);
     }
 
     private void fillBuffer() throws IOException {
-        int nI;
-        int nC;
-        int nVal;
+        // move the lookahead to the front
+
+        int nRest = m_nRawCount - m_nBufCount;
+        System.arraycopy(m_buf, m_nBufCount, m_buf, 0, nRest);
+        m_nRawCount = nRest;
+        m_nBufPos = m_nBufCount = 0;
+
+        while (true) {
+            int nRead = m_is.read(m_buf, m_nRawCount, m_buf.length - m_nRawCount);
+
+            if (nRead == -1) {
+                lastBlock();
+                return;
+            }
+
+            m_nRawCount += nRead;
 
+            // every complete block followed by at least one more byte can't be
+            // the last one, so it can be decrypted right away (the rest stays
+            // as the lookahead for the next round)
 
-        // fill the whole buffer
+            int nSafe = m_nRawCount - 1 & ~(BlowfishECB.BLOCKSIZE - 1);
 
-        for (nI = 0, nC = m_buf.length; nI < nC; nI++) {
-            if ((nVal = m_is.read()) == -1) {
-                throw new IOException("truncated stream, unexpected end");
+            if (nSafe > 0) {
+                m_bfc.decrypt(m_buf, 0, m_buf, 0, nSafe);
+                m_nBufCount = nSafe;
+                return;
             }
-            m_buf[nI] = (byte) nVal;
         }
+    }
 
-        // decrypt the buffer
-        m_bfc.decrypt(m_buf, 0, m_buf, 0, m_buf.length);
+    private void lastBlock() throws IOException {
+        // the lookahead must be exactly the final (padded) block
 
-        // peek if this is the end of the stream
+        if (m_nRawCount != BlowfishECB.BLOCKSIZE) {
+            throw new IOException("truncated stream, unexpected end");
+        }
 
-        if ((nVal = m_is.read()) == -1) {
-            // this is the last block, so we can read out how much we actually
-            // got left
+        m_bfc.decrypt(m_buf, 0, m_buf, 0, BlowfishECB.BLOCKSIZE);
 
-            nC = m_buf[m_buf.length - 1];
+        // read out how much we actually got left
 
-            // validate the padding
+        int nC = m_buf[BlowfishECB.BLOCKSIZE - 1];
 
-            if (nC > m_buf.length || nC < 0) {
-                throw new IOException("unknown padding value detected");
-            }
+        // validate the padding
 
-            m_nBufCount = m_buf.length - nC;
+        if (nC > BlowfishECB.BLOCKSIZE || nC < 0) {
+            throw new IOException("unknown padding value detected");
+        }
+
+        m_nRawCount = m_nBufCount = BlowfishECB.BLOCKSIZE - nC;
 
-            for (nI = m_nBufCount; nI < m_buf.length; nI++) {
-                if (m_buf[nI] != (byte) nC) {
-                    throw new IOException("invalid padding data detected");
-                }
+        for (int nI = m_nBufCount; nI < BlowfishECB.BLOCKSIZE; nI++) {
+            if (m_buf[nI] != (byte) nC) {
+                throw new IOException("invalid padding data detected");
             }
+        }
 
-            m_bfc.cleanUp();
-            m_bfc = null;
-        } else {
-            // (a little bit clumsy, but avoid keeping and managing a more
-            // complex double buffer logic)
-            m_is.unread(nVal);
+        m_bfc.cleanUp();
+        m_bfc = null;
+    }
 
-            m_nBufCount = m_buf.length;
-        }
+    // makes sure that decrypted data is available, false on eos
 
-        m_nBufPos = 0;
+    private boolean ensureData() throws IOException {
+        while (m_nBufCount <= m_nBufPos) {
+            if (m_bfc == null) {
+                return false;
+            }
+            fillBuffer();
+        }
+        return true;
     }
 
     @Override
     public int read() throws IOException {
-        while (true) {
-            // out of (buffered) data?
-            if (m_nBufCount <= m_nBufPos) {
-                // eos?
-
-                if (m_bfc == null) {
-                    return -1;
-                } else {
-                    fillBuffer();
-                }
-            } else {
-                int result = m_buf[m_nBufPos] & 0x0ff;
-                m_nBufPos++;
-                return result;
-            }
+        if (!ensureData()) {
+            return -1;
         }
+
+        int result = m_buf[m_nBufPos] & 0x0ff;
+        m_nBufPos++;
+        return result;
+    }
+
+    @Override
+    public int read(
+            byte[] buf) throws IOException {
+        return read(buf, 0, buf.length);
     }
 
+    @Override
+    public int read(
+            byte[] buf,
+            int nOfs,
+            int nLen) throws IOException {
+        if (nOfs < 0 || nLen < 0 || nLen > buf.length - nOfs) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        if (nLen == 0) {
+            return 0;
+        }
+
+        if (!ensureData()) {
+            return -1;
+        }
+
+        int nAvail = m_nBufCount - m_nBufPos;
+        if (nLen > nAvail) {
+            nLen = nAvail;
+        }
+
+        System.arraycopy(m_buf, m_nBufPos, buf, nOfs, nLen);
+        m_nBufPos += nLen;
+
+        return nLen;
+    }
+
+    /**
+     * Reads all remaining bytes and writes them to the given stream, in chunks
+     * of the internal buffer size (overrides InputStream.transferTo() on Java
+     * 9 and later).
+     *
+     * @param os the stream to write to
+     * @return number of bytes transferred
+     * @throws IOException if reading or writing failed
+     */
+    public long transferTo(
+            OutputStream os) throws IOException {
+        long lTotal = 0;
+
+        while (ensureData()) {
+            int nAvail = m_nBufCount - m_nBufPos;
+            os.write(m_buf, m_nBufPos, nAvail);
+            m_nBufPos = m_nBufCount;
+            lTotal += nAvail;
+        }
+
+        return lTotal;
+    }
+
+    /**
+     * Reads all remaining bytes (overrides InputStream.readAllBytes() on Java
+     * 9 and later).
+     *
+     * @return the decrypted data
+     * @throws IOException if reading failed
+     */
+    public byte[] readAllBytes() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        transferTo(baos);
+        return baos.toByteArray();
+    }
+
+    @Override
+    public int available() {
+        return m_nBufCount - m_nBufPos;
+    }
 
     @Override
     public void close() throws IOException {
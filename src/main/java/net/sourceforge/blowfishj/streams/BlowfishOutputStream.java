@@ -19,6 +19,7 @@ package net.sourceforge.blowfishj.streams;
 import net.sourceforge.blowfishj.crypt.SHA1;
 import net.sourceforge.blowfishj.crypt.BlowfishCBC;
 import net.sourceforge.blowfishj.crypt.BlowfishECB;
+import net.sourceforge.blowfishj.crypt.BlowfishKeyScheduleCache;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -34,12 +35,17 @@ import java.util.Arrays;
  * @author original version by Dale Anson <danson@germane-software.com>
  */
 public class BlowfishOutputStream extends OutputStream {
+    /**
+     * default size of the internal encryption buffer (in bytes)
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
     private OutputStream m_os;
 
     private BlowfishCBC m_bfc;
 
-    private byte[] m_bufIn;
-    private byte[] m_bufOut;
+    // plaintext collected so far, gets encrypted in place when full
+    private byte[] m_buf;
     private int m_nBytesInBuf;
 
 
@@ -58,15 +64,89 @@ public class BlowfishOutputStream extends OutputStream {
             int nOfs,
             int nLen,
             OutputStream os) throws IOException {
-        init(key, nOfs, nLen, os);
+        init(key, nOfs, nLen, os, DEFAULT_BUFFER_SIZE, null, false);
     }
 
-    private void init(
+    /**
+     * Constructor to define the size of the internal buffer, which is also the
+     * maximum chunk size written to the wrapped stream. The key material gets
+     * transformed to a final 160bit key using SHA-1.
+     *
+     * @param key      key buffer
+     * @param nOfs     where the key material starts
+     * @param nLen     size of the key material (in bytes)
+     * @param os       the output stream to which bytes will be written
+     * @param nBufSize size of the encryption buffer, at least one block
+     * @throws IOException if the IV couldn't be written
+     */
+    public BlowfishOutputStream(
             byte[] key,
             int nOfs,
             int nLen,
-            OutputStream os) throws IOException {
+            OutputStream os,
+            int nBufSize) throws IOException {
+        init(key, nOfs, nLen, os, nBufSize, null, false);
+    }
+
+    /**
+     * Constructor to define the size of the internal buffer and to get the
+     * key schedule from a cache. The key material gets transformed to a final
+     * 160bit key using SHA-1, which is then looked up in the cache.
+     *
+     * @param key      key buffer
+     * @param nOfs     where the key material starts
+     * @param nLen     size of the key material (in bytes)
+     * @param os       the output stream to which bytes will be written
+     * @param nBufSize size of the encryption buffer, at least one block
+     * @param cache    where to get the key schedule from (null for none)
+     * @throws IOException if the IV couldn't be written
+     */
+    public BlowfishOutputStream(
+            byte[] key,
+            int nOfs,
+            int nLen,
+            OutputStream os,
+            int nBufSize,
+            BlowfishKeyScheduleCache cache) throws IOException {
+        init(key, nOfs, nLen, os, nBufSize, cache, false);
+    }
+
+    /**
+     * Constructor to define the size of the internal buffer, with optional
+     * lazy key setup. If enabled the key gets expanded on the first write
+     * only, the IV is written right away nevertheless. The key material gets
+     * transformed to a final 160bit key using SHA-1.
+     *
+     * @param key      key buffer
+     * @param nOfs     where the key material starts
+     * @param nLen     size of the key material (in bytes)
+     * @param os       the output stream to which bytes will be written
+     * @param nBufSize size of the encryption buffer, at least one block
+     * @param blLazy   true: expand the key on first use
+     * @throws IOException if the IV couldn't be written
+     */
+    public BlowfishOutputStream(
+            byte[] key,
+            int nOfs,
+            int nLen,
+            OutputStream os,
+            int nBufSize,
+            boolean blLazy) throws IOException {
+        init(key, nOfs, nLen, os, nBufSize, null, blLazy);
+    }
 
+    private void init(
+            byte[] key,
+            int nOfs,
+            int nLen,
+            OutputStream os,
+            int nBufSize,
+            BlowfishKeyScheduleCache cache,
+            boolean blLazy) throws IOException {
+        if (nBufSize < BlowfishECB.BLOCKSIZE) {
+            throw new IllegalArgumentException(
+                    "buffer size must be at least one block");
+        }
 
         m_os = os;
 
@@ -79,10 +159,14 @@ public class BlowfishOutputStream extends OutputStream {
         byte[] ckey = sh.getDigest();
         sh.clear();
 
-        m_bfc = new BlowfishCBC(
-                ckey,
-                0,
-                ckey.length);
+        m_bfc = cache == null ?
+                new BlowfishCBC(
+                        ckey,
+                        0,
+                        ckey.length,
+                        0,
+                        blLazy) :
+                new BlowfishCBC(cache.get(ckey, 0, ckey.length));
 
         Arrays.fill(
                 ckey,
@@ -90,46 +174,112 @@ public class BlowfishOutputStream extends OutputStream {
                 ckey.length,
                 (byte) 0);
 
-        m_bufIn = new byte[BlowfishECB.BLOCKSIZE];
-        m_bufOut = new byte[BlowfishECB.BLOCKSIZE];
+        m_buf = new byte[nBufSize - nBufSize % BlowfishECB.BLOCKSIZE];
 
         // (make sure the IV is written to output stream -- this is always the
         // first 8 bytes written out)
 
+        byte[] iv = new byte[BlowfishECB.BLOCKSIZE];
+
         SecureRandom srnd = new SecureRandom();
-        srnd.nextBytes(m_bufIn);
+        srnd.nextBytes(iv);
 
-        m_os.write(m_bufIn, 0, m_bufIn.length);
-        m_bfc.setCBCIV(m_bufIn, 0);
+        m_os.write(iv, 0, iv.length);
+        m_bfc.setCBCIV(iv, 0);
     }
 
-    @Override
-    public void write(
-            int nByte) throws IOException {
-        // if buffer isn't full, just store the input
-        ++m_nBytesInBuf;
-        if (m_nBytesInBuf < m_bufIn.length) {
-            m_bufIn[m_nBytesInBuf - 1] = (byte) nByte;
+    // encrypts and writes out all complete blocks in the buffer, a trailing
+    // partial block is moved to the front
+
+    private void flushBlocks() throws IOException {
+        int nBlocks = m_nBytesInBuf - m_nBytesInBuf % BlowfishECB.BLOCKSIZE;
+
+        if (nBlocks == 0) {
             return;
         }
 
-        // else this input will fill the buffer
-        m_bufIn[m_nBytesInBuf - 1] = (byte) nByte;
-        m_nBytesInBuf = 0;
-
-        // encrypt the buffer
         m_bfc.encrypt(
-                m_bufIn,
+                m_buf,
                 0,
-                m_bufOut,
+                m_buf,
                 0,
-                m_bufIn.length);
+                nBlocks);
 
-        // write the out_buffer to the wrapped output stream
         m_os.write(
-                m_bufOut,
+                m_buf,
                 0,
-                m_bufOut.length);
+                nBlocks);
+
+        m_nBytesInBuf -= nBlocks;
+
+        System.arraycopy(m_buf, nBlocks, m_buf, 0, m_nBytesInBuf);
+    }
+
+    @Override
+    public void write(
+            int nByte) throws IOException {
+        m_buf[m_nBytesInBuf] = (byte) nByte;
+        ++m_nBytesInBuf;
+
+        if (m_nBytesInBuf == m_buf.length) {
+            flushBlocks();
+        }
+    }
+
+    @Override
+    public void write(
+            byte[] buf,
+            int nOfs,
+            int nLen) throws IOException {
+        if (nOfs < 0 || nLen < 0 || nLen > buf.length - nOfs) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        // small amounts just get collected
+
+        if (nLen < m_buf.length - m_nBytesInBuf) {
+            System.arraycopy(buf, nOfs, m_buf, m_nBytesInBuf, nLen);
+            m_nBytesInBuf += nLen;
+            return;
+        }
+
+        // complete the pending partial block and get rid of the buffer content
+
+        int nFill = -m_nBytesInBuf & BlowfishECB.BLOCKSIZE - 1;
+
+        System.arraycopy(buf, nOfs, m_buf, m_nBytesInBuf, nFill);
+        m_nBytesInBuf += nFill;
+        nOfs += nFill;
+        nLen -= nFill;
+
+        flushBlocks();
+
+        // now encrypt all complete blocks straight from the caller's array,
+        // one buffer at a time
+
+        while (nLen >= BlowfishECB.BLOCKSIZE) {
+            int nChunk = Math.min(nLen - nLen % BlowfishECB.BLOCKSIZE, m_buf.length);
+
+            m_bfc.encrypt(
+                    buf,
+                    nOfs,
+                    m_buf,
+                    0,
+                    nChunk);
+
+            m_os.write(
+                    m_buf,
+                    0,
+                    nChunk);
+
+            nOfs += nChunk;
+            nLen -= nChunk;
+        }
+
+        // (only the trailing partial block remains for later)
+
+        System.arraycopy(buf, nOfs, m_buf, 0, nLen);
+        m_nBytesInBuf = nLen;
     }
 
 
@@ -150,27 +300,18 @@ public class BlowfishOutputStream extends OutputStream {
         // number between 1 and 8, inclusive. If this means adding an extra
         // block just for the pad count, then so be it. Minor correction: 8
         // isn't the magic number, rather it's BlowfishECB.BLOCKSIZE.
+        // (there is always room for the padding, since the buffer gets
+        // flushed as soon as it is full)
 
-        byte nPadVal = (byte) (m_bufIn.length - m_nBytesInBuf);
+        byte nPadVal = (byte) (BlowfishECB.BLOCKSIZE - m_nBytesInBuf % BlowfishECB.BLOCKSIZE);
 
-        while (m_nBytesInBuf < m_bufIn.length) {
-            m_bufIn[m_nBytesInBuf] = nPadVal;
+        for (int nI = 0; nI < nPadVal; nI++) {
+            m_buf[m_nBytesInBuf] = nPadVal;
             ++m_nBytesInBuf;
         }
 
-        // encrypt the buffer
-        m_bfc.encrypt(
-                m_bufIn,
-                0,
-                m_bufOut,
-                0,
-                m_bufIn.length);
-
-        // write the out_buffer to the wrapped output stream
-        m_os.write(
-                m_bufOut,
-                0,
-                m_bufOut.length);
+        // encrypt and write out the rest
+        flushBlocks();
 
         m_os.close();
         m_os = null;
@@ -179,8 +320,13 @@ public class BlowfishOutputStream extends OutputStream {
     }
 
 
+    /**
+     * Writes out all complete blocks collected so far and flushes the wrapped
+     * stream. A trailing partial block can only be written by close().
+     */
     @Override
     public void flush() throws IOException {
+        flushBlocks();
         m_os.flush();
     }
 }
@@ -50,8 +50,20 @@ public class BlowfishEasy {
      */
     public BlowfishEasy(
             char... passw) {
+        this(false, passw);
+    }
 
-
+    /**
+     * Constructor to use string data as the key, with optional lazy key
+     * setup. If enabled only the password gets hashed here, the key setup
+     * runs when the first string is encrypted or decrypted.
+     *
+     * @param blLazy true: expand the key on first use
+     * @param passw  the password, usually gained by String.toCharArray()
+     */
+    public BlowfishEasy(
+            boolean blLazy,
+            char... passw) {
         // hash down the password to a 160bit key, using SHA-1
 
         SHA1 sh = new SHA1();
@@ -70,7 +82,7 @@ public class BlowfishEasy {
         byte[] hash = new byte[SHA1.DIGEST_SIZE];
         sh.getDigest(hash, 0);
 
-        m_bfc = new BlowfishCBC(hash, 0, hash.length, 0);
+        m_bfc = new BlowfishCBC(hash, 0, hash.length, 0, blLazy);
     }
 
 
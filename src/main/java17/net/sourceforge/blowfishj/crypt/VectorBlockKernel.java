@@ -0,0 +1,157 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.crypt;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API implementation of the block routines, one block per integer
+ * lane. The words get moved in and out of the vectors via int arrays only,
+ * the byte array views of the API changed between the JDK releases.
+ */
+final class VectorBlockKernel implements BlockKernel {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public int encrypt(
+            int[] pbox,
+            int[] sbox1,
+            int[] sbox2,
+            int[] sbox3,
+            int[] sbox4,
+            byte[] inBuf,
+            int nInPos,
+            byte[] outBuf,
+            int nOutPos,
+            int nLen) {
+        int nLanes = SPECIES.length();
+        int nDone = nLen - nLen % (nLanes * BlowfishECB.BLOCKSIZE);
+
+        int[] hi = new int[nLanes];
+        int[] lo = new int[nLanes];
+        int[] idx = new int[nLanes];
+
+        int nC = nInPos + nDone;
+        while (nInPos < nC) {
+            for (int nI = 0; nI < nLanes; nI++) {
+                hi[nI] = BinConverter.byteArrayToInt(inBuf, nInPos);
+                lo[nI] = BinConverter.byteArrayToInt(inBuf, nInPos + 4);
+                nInPos += BlowfishECB.BLOCKSIZE;
+            }
+
+            IntVector vHi = IntVector.fromArray(SPECIES, hi, 0);
+            IntVector vLo = IntVector.fromArray(SPECIES, lo, 0);
+
+            vHi = vHi.lanewise(VectorOperators.XOR, pbox[0]);
+            for (int nR = 1; nR < 17; nR += 2) {
+                vLo = vLo.lanewise(VectorOperators.XOR,
+                        f(vHi, sbox1, sbox2, sbox3, sbox4, idx).lanewise(VectorOperators.XOR, pbox[nR]));
+                vHi = vHi.lanewise(VectorOperators.XOR,
+                        f(vLo, sbox1, sbox2, sbox3, sbox4, idx).lanewise(VectorOperators.XOR, pbox[nR + 1]));
+            }
+            vLo = vLo.lanewise(VectorOperators.XOR, pbox[17]);
+
+            vHi.intoArray(hi, 0);
+            vLo.intoArray(lo, 0);
+
+            for (int nI = 0; nI < nLanes; nI++) {
+                BinConverter.intToByteArray(lo[nI], outBuf, nOutPos);
+                BinConverter.intToByteArray(hi[nI], outBuf, nOutPos + 4);
+                nOutPos += BlowfishECB.BLOCKSIZE;
+            }
+        }
+
+        return nDone;
+    }
+
+    @Override
+    public int decrypt(
+            int[] pbox,
+            int[] sbox1,
+            int[] sbox2,
+            int[] sbox3,
+            int[] sbox4,
+            byte[] inBuf,
+            int nInPos,
+            byte[] outBuf,
+            int nOutPos,
+            int nLen) {
+        int nLanes = SPECIES.length();
+        int nDone = nLen - nLen % (nLanes * BlowfishECB.BLOCKSIZE);
+
+        int[] hi = new int[nLanes];
+        int[] lo = new int[nLanes];
+        int[] idx = new int[nLanes];
+
+        int nC = nInPos + nDone;
+        while (nInPos < nC) {
+            for (int nI = 0; nI < nLanes; nI++) {
+                hi[nI] = BinConverter.byteArrayToInt(inBuf, nInPos);
+                lo[nI] = BinConverter.byteArrayToInt(inBuf, nInPos + 4);
+                nInPos += BlowfishECB.BLOCKSIZE;
+            }
+
+            IntVector vHi = IntVector.fromArray(SPECIES, hi, 0);
+            IntVector vLo = IntVector.fromArray(SPECIES, lo, 0);
+
+            vHi = vHi.lanewise(VectorOperators.XOR, pbox[17]);
+            for (int nR = 16; nR > 0; nR -= 2) {
+                vLo = vLo.lanewise(VectorOperators.XOR,
+                        f(vHi, sbox1, sbox2, sbox3, sbox4, idx).lanewise(VectorOperators.XOR, pbox[nR]));
+                vHi = vHi.lanewise(VectorOperators.XOR,
+                        f(vLo, sbox1, sbox2, sbox3, sbox4, idx).lanewise(VectorOperators.XOR, pbox[nR - 1]));
+            }
+            vLo = vLo.lanewise(VectorOperators.XOR, pbox[0]);
+
+            vHi.intoArray(hi, 0);
+            vLo.intoArray(lo, 0);
+
+            for (int nI = 0; nI < nLanes; nI++) {
+                BinConverter.intToByteArray(lo[nI], outBuf, nOutPos);
+                BinConverter.intToByteArray(hi[nI], outBuf, nOutPos + 4);
+                nOutPos += BlowfishECB.BLOCKSIZE;
+            }
+        }
+
+        return nDone;
+    }
+
+    // the F function for all lanes, each S-box lookup is a gather (idx is
+    // just scratch space for the indices)
+
+    private static IntVector f(
+            IntVector x,
+            int[] sbox1,
+            int[] sbox2,
+            int[] sbox3,
+            int[] sbox4,
+            int[] idx) {
+        x.lanewise(VectorOperators.LSHR, 24).intoArray(idx, 0);
+        IntVector result = IntVector.fromArray(SPECIES, sbox1, 0, idx, 0);
+
+        x.lanewise(VectorOperators.LSHR, 16).lanewise(VectorOperators.AND, 0x0ff).intoArray(idx, 0);
+        result = result.add(IntVector.fromArray(SPECIES, sbox2, 0, idx, 0));
+
+        x.lanewise(VectorOperators.LSHR, 8).lanewise(VectorOperators.AND, 0x0ff).intoArray(idx, 0);
+        result = result.lanewise(VectorOperators.XOR, IntVector.fromArray(SPECIES, sbox3, 0, idx, 0));
+
+        x.lanewise(VectorOperators.AND, 0x0ff).intoArray(idx, 0);
+        return result.add(IntVector.fromArray(SPECIES, sbox4, 0, idx, 0));
+    }
+}
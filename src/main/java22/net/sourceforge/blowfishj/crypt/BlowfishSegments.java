@@ -0,0 +1,256 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.crypt;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+/**
+ * Encryption and decryption of memory segments, i.e. native memory or mapped
+ * files of any size, with long offsets and without copying anything onto the
+ * heap. The instance passed in decides on the mode: BlowfishCBC runs CBC
+ * (starting with its current IV and leaving it set for the next call), any
+ * other BlowfishECB runs ECB.
+ * <p>
+ * This class exists on Java 22 and later only (where the foreign memory API
+ * is final), in the multi-release part of the jar.
+ */
+public final class BlowfishSegments {
+    /**
+     * block size of Blowfish in bytes
+     */
+    public static final int BLOCKSIZE = BlowfishECB.BLOCKSIZE;
+
+    private static final ValueLayout.OfInt INT_BE =
+            ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfLong LONG_BE =
+            ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    private BlowfishSegments() {
+    }
+
+    /**
+     * Encrypts a segment in place, e.g. a mapped file.
+     *
+     * @param bfe the instance to run, a BlowfishCBC chains the blocks
+     * @param seg the data, only whole blocks get processed
+     * @return number of bytes processed
+     */
+    public static long encrypt(
+            BlowfishECB bfe,
+            MemorySegment seg) {
+        return encrypt(bfe, seg, seg);
+    }
+
+    /**
+     * Encrypts a segment into another one (or the same one).
+     *
+     * @param bfe the instance to run, a BlowfishCBC chains the blocks
+     * @param src the data
+     * @param dst where to put the result
+     * @return number of bytes processed, i.e. the whole blocks fitting into
+     * both segments
+     */
+    public static long encrypt(
+            BlowfishECB bfe,
+            MemorySegment src,
+            MemorySegment dst) {
+        long lLen = Math.min(src.byteSize(), dst.byteSize());
+        lLen -= lLen % BLOCKSIZE;
+
+        if (!(bfe instanceof BlowfishCBC)) {
+            return encryptECB(bfe, src, dst, lLen);
+        }
+
+        // CBC is sequential by nature, the instance keeps the IV going
+
+        for (long lPos = 0; lPos < lLen; lPos += BLOCKSIZE) {
+            dst.set(LONG_BE, lPos, bfe.encryptBlock(src.get(LONG_BE, lPos)));
+        }
+
+        return lLen;
+    }
+
+    /**
+     * Decrypts a segment in place, e.g. a mapped file.
+     *
+     * @param bfe the instance to run, a BlowfishCBC chains the blocks
+     * @param seg the data, only whole blocks get processed
+     * @return number of bytes processed
+     */
+    public static long decrypt(
+            BlowfishECB bfe,
+            MemorySegment seg) {
+        return decrypt(bfe, seg, seg);
+    }
+
+    /**
+     * Decrypts a segment into another one (or the same one).
+     *
+     * @param bfe the instance to run, a BlowfishCBC chains the blocks
+     * @param src the data
+     * @param dst where to put the result
+     * @return number of bytes processed, i.e. the whole blocks fitting into
+     * both segments
+     */
+    public static long decrypt(
+            BlowfishECB bfe,
+            MemorySegment src,
+            MemorySegment dst) {
+        long lLen = Math.min(src.byteSize(), dst.byteSize());
+        lLen -= lLen % BLOCKSIZE;
+
+        if (!(bfe instanceof BlowfishCBC)) {
+            return decryptECB(bfe, src, dst, lLen);
+        }
+
+        // CBC is sequential by nature, the instance keeps the IV going
+
+        for (long lPos = 0; lPos < lLen; lPos += BLOCKSIZE) {
+            dst.set(LONG_BE, lPos, bfe.decryptBlock(src.get(LONG_BE, lPos)));
+        }
+
+        return lLen;
+    }
+
+    private static long encryptECB(
+            BlowfishECB bfe,
+            MemorySegment src,
+            MemorySegment dst,
+            long lLen) {
+        // (same as the byte array routines of BlowfishECB, on the live boxes)
+
+        int[] pbox = bfe.livePbox();
+        int nPBox00 = pbox[0];
+        int nPBox01 = pbox[1];
+        int nPBox02 = pbox[2];
+        int nPBox03 = pbox[3];
+        int nPBox04 = pbox[4];
+        int nPBox05 = pbox[5];
+        int nPBox06 = pbox[6];
+        int nPBox07 = pbox[7];
+        int nPBox08 = pbox[8];
+        int nPBox09 = pbox[9];
+        int nPBox10 = pbox[10];
+        int nPBox11 = pbox[11];
+        int nPBox12 = pbox[12];
+        int nPBox13 = pbox[13];
+        int nPBox14 = pbox[14];
+        int nPBox15 = pbox[15];
+        int nPBox16 = pbox[16];
+        int nPBox17 = pbox[17];
+
+        int[] sbox1 = bfe.liveSbox1();
+        int[] sbox2 = bfe.liveSbox2();
+        int[] sbox3 = bfe.liveSbox3();
+        int[] sbox4 = bfe.liveSbox4();
+
+        for (long lPos = 0; lPos < lLen; lPos += BLOCKSIZE) {
+            int nHi = src.get(INT_BE, lPos);
+            int nLo = src.get(INT_BE, lPos + 4);
+
+            nHi ^= nPBox00;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox01;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox02;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox03;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox04;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox05;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox06;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox07;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox08;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox09;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox10;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox11;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox12;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox13;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox14;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox15;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox16;
+
+            nLo ^= nPBox17;
+
+            dst.set(INT_BE, lPos, nLo);
+            dst.set(INT_BE, lPos + 4, nHi);
+        }
+
+        return lLen;
+    }
+
+    private static long decryptECB(
+            BlowfishECB bfe,
+            MemorySegment src,
+            MemorySegment dst,
+            long lLen) {
+        // (same as the byte array routines of BlowfishECB, on the live boxes)
+
+        int[] pbox = bfe.livePbox();
+        int nPBox00 = pbox[0];
+        int nPBox01 = pbox[1];
+        int nPBox02 = pbox[2];
+        int nPBox03 = pbox[3];
+        int nPBox04 = pbox[4];
+        int nPBox05 = pbox[5];
+        int nPBox06 = pbox[6];
+        int nPBox07 = pbox[7];
+        int nPBox08 = pbox[8];
+        int nPBox09 = pbox[9];
+        int nPBox10 = pbox[10];
+        int nPBox11 = pbox[11];
+        int nPBox12 = pbox[12];
+        int nPBox13 = pbox[13];
+        int nPBox14 = pbox[14];
+        int nPBox15 = pbox[15];
+        int nPBox16 = pbox[16];
+        int nPBox17 = pbox[17];
+
+        int[] sbox1 = bfe.liveSbox1();
+        int[] sbox2 = bfe.liveSbox2();
+        int[] sbox3 = bfe.liveSbox3();
+        int[] sbox4 = bfe.liveSbox4();
+
+        for (long lPos = 0; lPos < lLen; lPos += BLOCKSIZE) {
+            int nHi = src.get(INT_BE, lPos);
+            int nLo = src.get(INT_BE, lPos + 4);
+
+            nHi ^= nPBox17;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox16;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox15;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox14;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox13;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox12;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox11;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox10;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox09;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox08;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox07;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox06;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox05;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox04;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox03;
+            nLo ^= (sbox1[nHi >>> 24] + sbox2[nHi >>> 16 & 0x0ff] ^ sbox3[nHi >>> 8 & 0x0ff]) + sbox4[nHi & 0x0ff] ^ nPBox02;
+            nHi ^= (sbox1[nLo >>> 24] + sbox2[nLo >>> 16 & 0x0ff] ^ sbox3[nLo >>> 8 & 0x0ff]) + sbox4[nLo & 0x0ff] ^ nPBox01;
+
+            nLo ^= nPBox00;
+
+            dst.set(INT_BE, lPos, nLo);
+            dst.set(INT_BE, lPos + 4, nHi);
+        }
+
+        return lLen;
+    }
+}
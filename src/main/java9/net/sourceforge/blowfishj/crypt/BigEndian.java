@@ -0,0 +1,63 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj.crypt;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Big endian access to byte arrays, Java 9+ version. The byte array views
+ * let the JIT emit one wide load or store (plus a byte swap) per value
+ * instead of single bytes with shifts and masks, which counts in the block
+ * loops of the engines.
+ */
+final class BigEndian {
+    private static final VarHandle INT =
+            MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private BigEndian() {
+    }
+
+    static int getInt(
+            byte[] buf,
+            int nOfs) {
+        return (int) INT.get(buf, nOfs);
+    }
+
+    static void putInt(
+            byte[] buf,
+            int nOfs,
+            int nValue) {
+        INT.set(buf, nOfs, nValue);
+    }
+
+    static long getLong(
+            byte[] buf,
+            int nOfs) {
+        return (long) LONG.get(buf, nOfs);
+    }
+
+    static void putLong(
+            byte[] buf,
+            int nOfs,
+            long lValue) {
+        LONG.set(buf, nOfs, lValue);
+    }
+}
@@ -16,12 +16,34 @@
 
 package net.sourceforge.blowfishj;
 
+import net.sourceforge.blowfishj.crypt.BCrypt;
+import net.sourceforge.blowfishj.crypt.BinConverter;
 import net.sourceforge.blowfishj.crypt.BlowfishCBC;
+import net.sourceforge.blowfishj.crypt.BlowfishCBCPool;
 import net.sourceforge.blowfishj.crypt.BlowfishECB;
+import net.sourceforge.blowfishj.crypt.BlowfishFlatECB;
+import net.sourceforge.blowfishj.crypt.BlowfishKeySchedule;
+import net.sourceforge.blowfishj.crypt.BlowfishKeyScheduleCache;
+import net.sourceforge.blowfishj.crypt.BlowfishKeyScheduleStore;
+import net.sourceforge.blowfishj.crypt.BlowfishPermutation;
+import net.sourceforge.blowfishj.crypt.BlowfishSlotECB;
+import net.sourceforge.blowfishj.crypt.BlowfishVectorECB;
 import net.sourceforge.blowfishj.tools.BlowfishEasy;
 import org.junit.Test;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
@@ -189,6 +211,910 @@ public class BlowfishTest {
         }
     }
 
+    @Test
+    public void testByteBufferHandling() {
+        byte[] key = {0x01, 0x02, 0x03, (byte) 0xaa, (byte) 0xee, (byte) 0xff};
+
+        // (three extra bytes which must stay untouched)
+        byte[] plain = new byte[259];
+        for (int nI = 0; nI < plain.length; nI++) {
+            plain[nI] = (byte) nI;
+        }
+
+        for (int nI = 0; nI < 2; nI++) {
+            BlowfishECB bf = nI == 0 ?
+                    new BlowfishECB(key, 0, key.length) :
+                    new BlowfishCBC(key, 0, key.length, 0x0102030405060708L);
+
+            byte[] cipherRef = new byte[256];
+            resetIV(bf);
+            bf.encrypt(plain, 0, cipherRef, 0, plain.length);
+
+            for (ByteBuffer src : new ByteBuffer[]{
+                    ByteBuffer.wrap(plain),
+                    ByteBuffer.allocateDirect(plain.length),
+                    ByteBuffer.allocateDirect(plain.length).order(ByteOrder.LITTLE_ENDIAN)}) {
+                if (src.isDirect()) {
+                    src.put(plain).flip();
+                }
+
+                for (ByteBuffer dst : new ByteBuffer[]{
+                        ByteBuffer.allocate(300),
+                        ByteBuffer.allocateDirect(300),
+                        ByteBuffer.allocateDirect(300).order(ByteOrder.LITTLE_ENDIAN)}) {
+                    src.position(0);
+                    dst.position(5);
+
+                    resetIV(bf);
+                    assertThat(bf.encrypt(src, dst), is(256));
+                    assertThat(src.position(), is(256));
+                    assertThat(dst.position(), is(261));
+
+                    byte[] cipher = new byte[256];
+                    dst.position(5);
+                    dst.get(cipher);
+                    assertThat(cipher, is(cipherRef));
+
+                    // decrypt in place
+
+                    dst.position(5).limit(261);
+                    resetIV(bf);
+                    assertThat(bf.decrypt(dst), is(256));
+                    assertThat(dst.position(), is(261));
+
+                    byte[] plain2 = new byte[256];
+                    dst.position(5);
+                    dst.get(plain2);
+                    assertThat(plain2, is(Arrays.copyOf(plain, 256)));
+                }
+            }
+
+            try {
+                bf.encrypt(ByteBuffer.allocateDirect(16), ByteBuffer.allocateDirect(15));
+                fail();
+            } catch (BufferOverflowException boe) {
+                // expected
+            }
+        }
+    }
+
+    private static void resetIV(
+            BlowfishECB bf) {
+        if (bf instanceof BlowfishCBC) {
+            ((BlowfishCBC) bf).setCBCIV(0x0102030405060708L);
+        }
+    }
+
+    @Test
+    public void testScatterGather() {
+        byte[] key = {0x01, 0x02, 0x03, (byte) 0xaa, (byte) 0xee, (byte) 0xff};
+
+        // (three extra bytes which must stay untouched)
+        byte[] plain = new byte[259];
+        for (int nI = 0; nI < plain.length; nI++) {
+            plain[nI] = (byte) nI;
+        }
+
+        for (int nI = 0; nI < 2; nI++) {
+            BlowfishECB bf = nI == 0 ?
+                    new BlowfishECB(key, 0, key.length) :
+                    new BlowfishCBC(key, 0, key.length, 0x0102030405060708L);
+
+            byte[] cipherRef = new byte[256];
+            resetIV(bf);
+            bf.encrypt(plain, 0, cipherRef, 0, plain.length);
+
+            // odd sizes, so that blocks straddle edges on both sides, mixed
+            // with whole block runs, empty buffers and all buffer kinds
+
+            ByteBuffer[] srcs = slice(plain, 3, 13, 0, 100, 143);
+            ByteBuffer[] dsts = {
+                    ByteBuffer.allocate(7),
+                    ByteBuffer.allocateDirect(64),
+                    ByteBuffer.allocate(0),
+                    ByteBuffer.allocateDirect(9).order(ByteOrder.LITTLE_ENDIAN),
+                    ByteBuffer.allocate(200)};
+
+            resetIV(bf);
+            assertThat(bf.encrypt(srcs, dsts), is(256L));
+            assertThat(srcs[4].remaining(), is(3));
+            assertThat(dsts[4].remaining(), is(24));
+
+            ByteBuffer cipher = ByteBuffer.allocate(256);
+            for (ByteBuffer dst : dsts) {
+                dst.flip();
+                cipher.put(dst.duplicate());
+            }
+            assertThat(cipher.array(), is(cipherRef));
+
+            ByteBuffer[] plains = slice(new byte[256], 1, 255);
+            resetIV(bf);
+            assertThat(bf.decrypt(dsts, plains), is(256L));
+
+            byte[] plain2 = new byte[256];
+            plains[0].flip();
+            plains[1].flip();
+            plains[0].get(plain2, 0, 1);
+            plains[1].get(plain2, 1, 255);
+            assertThat(plain2, is(Arrays.copyOf(plain, 256)));
+
+            try {
+                bf.encrypt(slice(new byte[16], 5, 11), slice(new byte[15], 7, 8));
+                fail();
+            } catch (BufferOverflowException boe) {
+                // expected
+            }
+        }
+    }
+
+    private static ByteBuffer[] slice(
+            byte[] data,
+            int... sizes) {
+        ByteBuffer[] result = new ByteBuffer[sizes.length];
+
+        int nPos = 0;
+        for (int nI = 0; nI < sizes.length; nI++) {
+            result[nI] = nI % 2 == 0 ?
+                    ByteBuffer.wrap(data, nPos, sizes[nI]).slice() :
+                    (ByteBuffer) ByteBuffer.allocateDirect(sizes[nI]).put(data, nPos, sizes[nI]).flip();
+            nPos += sizes[nI];
+        }
+
+        return result;
+    }
+
+    @Test
+    public void testInterleavedKernel() {
+        byte[] key = {0x01, 0x02, 0x03, (byte) 0xaa, (byte) 0xee, (byte) 0xff};
+
+        BlowfishECB bfe = new BlowfishECB(key, 0, key.length);
+
+        byte[] plain = new byte[3 + 8 * 41 + 5];
+        for (int nI = 0; nI < plain.length; nI++) {
+            plain[nI] = (byte) (nI * 7);
+        }
+
+        // reference: the very same data, one block per call
+
+        byte[] cipherRef = new byte[plain.length];
+        for (int nPos = 3; nPos + BlowfishECB.BLOCKSIZE <= plain.length; nPos += BlowfishECB.BLOCKSIZE) {
+            bfe.encrypt(plain, nPos, cipherRef, nPos, BlowfishECB.BLOCKSIZE);
+        }
+
+        // all lengths around and above the threshold, odd block counts
+        // leave a single block to the plain loop
+
+        for (int nBlocks = 0; nBlocks <= 41; nBlocks++) {
+            int nLen = nBlocks * BlowfishECB.BLOCKSIZE;
+
+            byte[] cipher = new byte[plain.length];
+            assertThat(bfe.encrypt(plain, 3, cipher, 3, nLen + 5), is(nLen));
+            assertThat(Arrays.copyOfRange(cipher, 3, 3 + nLen),
+                    is(Arrays.copyOfRange(cipherRef, 3, 3 + nLen)));
+            assertThat(cipher[3 + nLen], is((byte) 0));
+
+            // in place
+
+            byte[] work = plain.clone();
+            bfe.encrypt(work, 3, work, 3, nLen);
+            assertThat(Arrays.copyOfRange(work, 3, 3 + nLen),
+                    is(Arrays.copyOfRange(cipherRef, 3, 3 + nLen)));
+
+            assertThat(bfe.decrypt(work, 3, work, 3, nLen), is(nLen));
+            assertThat(work, is(plain));
+        }
+    }
+
+    @Test
+    public void testParallel() {
+        byte[] key = {0x01, 0x02, 0x03, (byte) 0xaa, (byte) 0xee, (byte) 0xff};
+
+        BlowfishECB bfe = new BlowfishECB(key, 0, key.length);
+
+        // odd sized, so the halves don't split evenly
+
+        byte[] plain = new byte[(BlowfishECB.PARALLEL_THRESHOLD << 2) + 8 * 3 + 5];
+        for (int nI = 0; nI < plain.length; nI++) {
+            plain[nI] = (byte) (nI * 13);
+        }
+        int nLen = plain.length - 5;
+
+        byte[] cipherRef = new byte[plain.length];
+        bfe.encrypt(plain, 0, cipherRef, 0, plain.length);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            byte[] cipher = new byte[plain.length];
+            assertThat(bfe.encryptParallel(plain, 0, cipher, 0, plain.length), is(nLen));
+            assertThat(cipher, is(cipherRef));
+
+            cipher = new byte[plain.length];
+            assertThat(bfe.encryptParallel(plain, 0, cipher, 0, plain.length, pool), is(nLen));
+            assertThat(cipher, is(cipherRef));
+
+            // in place, with an offset
+
+            byte[] work = new byte[plain.length + 3];
+            System.arraycopy(plain, 0, work, 3, plain.length);
+            bfe.encryptParallel(work, 3, work, 3, plain.length, pool);
+            assertThat(Arrays.copyOfRange(work, 3, 3 + nLen),
+                    is(Arrays.copyOfRange(cipherRef, 0, nLen)));
+
+            assertThat(bfe.decryptParallel(work, 3, work, 3, plain.length, pool), is(nLen));
+            assertThat(Arrays.copyOfRange(work, 3, work.length), is(plain));
+
+            // below the threshold
+
+            byte[] small = new byte[1000];
+            assertThat(bfe.encryptParallel(plain, 0, small, 0, small.length, pool), is(1000));
+            assertThat(small, is(Arrays.copyOf(cipherRef, 1000)));
+
+            // CBC stays sequential, but must still work
+
+            BlowfishCBC bfc = new BlowfishCBC(key, 0, key.length, 0x0102030405060708L);
+            bfc.encrypt(plain, 0, cipherRef, 0, plain.length);
+
+            bfc.setCBCIV(0x0102030405060708L);
+            cipher = new byte[plain.length];
+            bfc.encryptParallel(plain, 0, cipher, 0, plain.length, pool);
+            assertThat(cipher, is(cipherRef));
+
+            bfc.setCBCIV(0x0102030405060708L);
+            bfc.decryptParallel(cipher, 0, cipher, 0, nLen);
+            assertThat(Arrays.copyOf(cipher, nLen), is(Arrays.copyOf(plain, nLen)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testWordBuffers() {
+        byte[] key = {0x01, 0x02, 0x03, (byte) 0xaa, (byte) 0xee, (byte) 0xff};
+
+        long[] plainL = new long[9];
+        int[] plainI = new int[plainL.length * 2 + 1];
+        byte[] plainB = new byte[plainL.length * 8];
+        for (int nI = 0; nI < plainL.length; nI++) {
+            plainL[nI] = 0x8000000000000001L * nI ^ 0x0123456789abcdefL;
+            BinConverter.longToIntArray(plainL[nI], plainI, nI * 2);
+            BinConverter.longToByteArray(plainL[nI], plainB, nI * 8);
+        }
+        plainI[plainI.length - 1] = 0x55555555;
+
+        for (int nI = 0; nI < 2; nI++) {
+            BlowfishECB bf = nI == 0 ?
+                    new BlowfishECB(key, 0, key.length) :
+                    new BlowfishCBC(key, 0, key.length, 0x0102030405060708L);
+
+            byte[] cipherB = new byte[plainB.length];
+            resetIV(bf);
+            bf.encrypt(plainB, 0, cipherB, 0, plainB.length);
+
+            // all the 64 bits of every block must match the byte array path
+
+            long[] cipherL = new long[plainL.length];
+            resetIV(bf);
+            bf.encrypt(plainL, 0, cipherL, 0, plainL.length);
+            for (int nJ = 0; nJ < cipherL.length; nJ++) {
+                assertThat(cipherL[nJ], is(BinConverter.byteArrayToLong(cipherB, nJ * 8)));
+            }
+
+            // (the odd integer at the end must stay untouched)
+
+            int[] cipherI = new int[plainI.length];
+            resetIV(bf);
+            bf.encrypt(plainI, 0, cipherI, 0, plainI.length);
+            for (int nJ = 0; nJ < cipherL.length; nJ++) {
+                assertThat(BinConverter.intArrayToLong(cipherI, nJ * 2), is(cipherL[nJ]));
+            }
+            assertThat(cipherI[cipherI.length - 1], is(0));
+
+            // decrypt in place, with an offset
+
+            long[] workL = new long[cipherL.length + 1];
+            System.arraycopy(cipherL, 0, workL, 1, cipherL.length);
+            resetIV(bf);
+            bf.decrypt(workL, 1, workL, 1, cipherL.length);
+            assertThat(Arrays.copyOfRange(workL, 1, workL.length), is(plainL));
+
+            resetIV(bf);
+            bf.decrypt(cipherI, 0, cipherI, 0, cipherI.length);
+            assertThat(Arrays.copyOf(cipherI, cipherI.length - 1),
+                    is(Arrays.copyOf(plainI, plainI.length - 1)));
+        }
+    }
+
+    @Test
+    public void testBlockPrimitives() {
+        byte[] key = {5, 4, 3, 2, 1};
+        BlowfishECB bfe = new BlowfishECB(key, 0, key.length);
+
+        long[] plain = {0L, -1L, 0x0123456789abcdefL, Long.MIN_VALUE, 42L};
+        long[] cipher = new long[plain.length];
+        bfe.encrypt(plain, 0, cipher, 0, plain.length);
+
+        byte[] block = new byte[BlowfishECB.BLOCKSIZE];
+        for (int nI = 0; nI < plain.length; nI++) {
+            assertThat(bfe.encryptBlock(plain[nI]), is(cipher[nI]));
+            assertThat(bfe.decryptBlock(cipher[nI]), is(plain[nI]));
+
+            // (same byte order as the byte array routines)
+            BinConverter.longToByteArray(plain[nI], block, 0);
+            bfe.encrypt(block, 0, block, 0, block.length);
+            assertThat(BinConverter.byteArrayToLong(block, 0), is(cipher[nI]));
+        }
+
+        // CBC chains the blocks, just like its buffer routines
+
+        BlowfishCBC bfc = new BlowfishCBC(key, 0, key.length, 0x1111222233334444L);
+        bfc.encrypt(plain, 0, cipher, 0, plain.length);
+
+        bfc.setCBCIV(0x1111222233334444L);
+        for (int nI = 0; nI < plain.length; nI++) {
+            assertThat(bfc.encryptBlock(plain[nI]), is(cipher[nI]));
+        }
+        assertThat(bfc.getCBCIV(), is(cipher[plain.length - 1]));
+
+        bfc.setCBCIV(0x1111222233334444L);
+        for (int nI = 0; nI < plain.length; nI++) {
+            assertThat(bfc.decryptBlock(cipher[nI]), is(plain[nI]));
+        }
+    }
+
+    @Test
+    public void testPermutation() {
+        byte[] key = {1, 9, 8, 4};
+        BlowfishKeySchedule ks = new BlowfishKeySchedule(key, 0, key.length);
+
+        long[] domains = {1, 2, 3, 7, 16, 1000, 65537};
+        for (long lDomain : domains) {
+            BlowfishPermutation bp = new BlowfishPermutation(ks, lDomain);
+            assertThat(bp.getDomain(), is(lDomain));
+
+            // every value must show up exactly once
+            BitSet seen = new BitSet();
+            for (long lI = 0; lI < lDomain; lI++) {
+                long lPerm = bp.permute(lI);
+                assertTrue(lPerm >= 0 && lPerm < lDomain);
+                assertFalse(seen.get((int) lPerm));
+                seen.set((int) lPerm);
+                assertThat(bp.invert(lPerm), is(lI));
+            }
+
+            long lI = 0;
+            for (Long lPerm : bp) {
+                assertThat(lPerm, is(bp.permute(lI++)));
+            }
+            assertThat(lI, is(lDomain));
+        }
+
+        // (not just the identity, and the key matters)
+        BlowfishPermutation bp = new BlowfishPermutation(key, 0, key.length, 1000);
+        BlowfishPermutation other = new BlowfishPermutation(new byte[]{1, 9, 8, 5}, 0, 4, 1000);
+        int nFixed = 0;
+        int nSame = 0;
+        for (long lI = 0; lI < 1000; lI++) {
+            nFixed += bp.permute(lI) == lI ? 1 : 0;
+            nSame += bp.permute(lI) == other.permute(lI) ? 1 : 0;
+        }
+        assertTrue(nFixed < 10);
+        assertTrue(nSame < 10);
+
+        long[] values = {0, 999, 500, 1, 77};
+        long[] perm = new long[values.length + 1];
+        bp.permute(values, 0, perm, 1, values.length);
+        for (int nI = 0; nI < values.length; nI++) {
+            assertThat(perm[nI + 1], is(bp.permute(values[nI])));
+        }
+        bp.invert(perm, 1, perm, 1, values.length);
+        assertThat(Arrays.copyOfRange(perm, 1, perm.length), is(values));
+
+        // the widest domains, 32bit numbers and all positive longs
+
+        long[] wide = {1L << 32, Long.MAX_VALUE};
+        for (long lDomain : wide) {
+            bp = new BlowfishPermutation(ks, lDomain);
+            for (long lValue = 0; lValue < 1000; lValue++) {
+                long lTest = lValue * 0x9e3779b97f4a7c15L & Long.MAX_VALUE;
+                lTest %= lDomain;
+                long lPerm = bp.permute(lTest);
+                assertTrue(lPerm >= 0 && lPerm < lDomain);
+                assertThat(bp.invert(lPerm), is(lTest));
+            }
+        }
+
+        try {
+            bp.permute(-1);
+            fail();
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+        try {
+            new BlowfishPermutation(ks, 10).invert(10);
+            fail();
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testVectorEngine() {
+        byte[] key = {0x01, 0x02, 0x03, (byte) 0xaa, (byte) 0xee, (byte) 0xff};
+
+        // (builds on Java 17+ run the tests with the incubator module added)
+        assertThat(BlowfishVectorECB.isVectorized(), is(Boolean.getBoolean("blowfishj.vectorized")));
+
+        BlowfishECB bfe = new BlowfishECB(key, 0, key.length);
+        BlowfishVectorECB bfv = new BlowfishVectorECB(key, 0, key.length);
+
+        byte[] plain = new byte[3 + 8 * 70];
+        for (int nI = 0; nI < plain.length; nI++) {
+            plain[nI] = (byte) (nI * 11);
+        }
+
+        // every block count up to several rounds of 16 lanes
+
+        for (int nBlocks = 0; nBlocks <= 70; nBlocks++) {
+            int nLen = nBlocks * BlowfishECB.BLOCKSIZE;
+
+            byte[] cipherRef = new byte[plain.length];
+            bfe.encrypt(plain, 3, cipherRef, 3, nLen);
+
+            byte[] cipher = new byte[plain.length];
+            assertThat(bfv.encrypt(plain, 3, cipher, 3, nLen + 7), is(nLen));
+            assertThat(cipher, is(cipherRef));
+
+            byte[] work = plain.clone();
+            bfv.encrypt(work, 3, work, 3, nLen);
+            assertThat(Arrays.copyOfRange(work, 3, 3 + nLen),
+                    is(Arrays.copyOfRange(cipherRef, 3, 3 + nLen)));
+
+            assertThat(bfv.decrypt(work, 3, work, 3, nLen), is(nLen));
+            assertThat(work, is(plain));
+        }
+
+        // running on a key schedule
+
+        bfv = new BlowfishVectorECB(new BlowfishKeySchedule(key, 0, key.length));
+
+        byte[] cipherRef = new byte[plain.length];
+        bfe.encrypt(plain, 0, cipherRef, 0, plain.length);
+
+        byte[] cipher = new byte[plain.length];
+        bfv.encrypt(plain, 0, cipher, 0, plain.length);
+        assertThat(cipher, is(cipherRef));
+
+        // the parallel routines must run the slices on the engine's own
+        // kernel, not on the one of BlowfishECB
+
+        final AtomicInteger calls = new AtomicInteger();
+        BlowfishVectorECB bfvCounting = new BlowfishVectorECB(key, 0, key.length) {
+            @Override
+            public int decrypt(
+                    byte[] inBuf,
+                    int nInPos,
+                    byte[] outBuf,
+                    int nOutPos,
+                    int nLen) {
+                calls.incrementAndGet();
+                return super.decrypt(inBuf, nInPos, outBuf, nOutPos, nLen);
+            }
+        };
+
+        byte[] big = new byte[BlowfishECB.PARALLEL_THRESHOLD * 2];
+        for (int nI = 0; nI < big.length; nI++) {
+            big[nI] = (byte) (nI * 7);
+        }
+        byte[] bigRef = new byte[big.length];
+        bfe.encrypt(big, 0, bigRef, 0, big.length);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            BlowfishECB[] engines = {bfv, new BlowfishFlatECB(key, 0, key.length), bfvCounting};
+            for (BlowfishECB engine : engines) {
+                byte[] work = new byte[big.length];
+                assertThat(engine.encryptParallel(big, 0, work, 0, big.length, pool), is(big.length));
+                assertThat(work, is(bigRef));
+                assertThat(engine.decryptParallel(work, 0, work, 0, work.length, pool), is(big.length));
+                assertThat(work, is(big));
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue(calls.get() > 1);
+    }
+
+    @Test
+    public void testKeySchedule() throws Exception {
+        byte[] key = {0x01, 0x02, 0x03, (byte) 0xaa, (byte) 0xee, (byte) 0xff};
+
+        final byte[] plain = new byte[4096];
+        for (int nI = 0; nI < plain.length; nI++) {
+            plain[nI] = (byte) nI;
+        }
+
+        final byte[] ecbRef = new byte[plain.length];
+        new BlowfishECB(key, 0, key.length).encrypt(plain, 0, ecbRef, 0, plain.length);
+        final byte[] cbcRef = new byte[plain.length];
+        new BlowfishCBC(key, 0, key.length, 42L).encrypt(plain, 0, cbcRef, 0, plain.length);
+
+        final BlowfishKeySchedule ks = new BlowfishKeySchedule(key, 0, key.length);
+
+        // many threads on one schedule, each with its own instances
+
+        ExecutorService exec = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int nI = 0; nI < 16; nI++) {
+                results.add(exec.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        byte[] cipher = new byte[plain.length];
+                        for (int nJ = 0; nJ < 100; nJ++) {
+                            new BlowfishECB(ks).encrypt(plain, 0, cipher, 0, plain.length);
+                            if (!Arrays.equals(cipher, ecbRef)) {
+                                return false;
+                            }
+                            new BlowfishCBC(ks, 42L).encrypt(plain, 0, cipher, 0, plain.length);
+                            if (!Arrays.equals(cipher, cbcRef)) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            exec.shutdown();
+        }
+
+        // rekeying or cleaning up an instance must not touch the schedule
+
+        BlowfishCBC bfc = new BlowfishCBC(ks);
+        bfc.initialize(new byte[]{1, 2, 3}, 0, 3);
+        bfc.cleanUp();
+        new BlowfishECB(ks).cleanUp();
+
+        byte[] cipher = new byte[plain.length];
+        new BlowfishCBC(ks, 42L).encrypt(plain, 0, cipher, 0, plain.length);
+        assertThat(cipher, is(cbcRef));
+
+        // the getters only hand out copies
+
+        ks.getSbox1()[0] ^= 1;
+        new BlowfishECB(ks).encrypt(plain, 0, cipher, 0, plain.length);
+        assertThat(cipher, is(ecbRef));
+
+        // ... and so do the ones of instances running on the schedule
+
+        BlowfishECB bfe = new BlowfishECB(ks);
+        bfe.getPbox()[1] ^= 1;
+        bfe.getSbox1()[0] ^= 1;
+        bfe.getSbox4()[255] ^= 1;
+        bfe.encrypt(plain, 0, cipher, 0, plain.length);
+        assertThat(cipher, is(ecbRef));
+        new BlowfishECB(ks).encrypt(plain, 0, cipher, 0, plain.length);
+        assertThat(cipher, is(ecbRef));
+    }
+
+    @Test
+    public void testKeyScheduleCache() {
+        BlowfishKeyScheduleCache cache = new BlowfishKeyScheduleCache(2);
+
+        byte[] keys = {10, 1, 2, 3, 4, 5, 6};
+
+        BlowfishKeySchedule ks0 = cache.get(keys, 1, 3);
+        BlowfishKeySchedule ks1 = cache.get(keys, 2, 3);
+
+        // same content at a different offset is a hit
+
+        byte[] key0 = {1, 2, 3};
+        assertTrue(cache.get(key0, 0, key0.length) == ks0);
+        assertThat(cache.getHits(), is(1L));
+        assertThat(cache.getMisses(), is(2L));
+
+        // key 1 is the least recently used one now, so it gets evicted
+
+        BlowfishKeySchedule ks2 = cache.get(keys, 3, 3);
+        assertThat(cache.size(), is(2));
+        assertTrue(cache.get(keys, 1, 3) == ks0);
+        assertTrue(cache.get(keys, 3, 3) == ks2);
+        assertTrue(cache.get(keys, 2, 3) != ks1);
+        assertThat(cache.getHits(), is(3L));
+        assertThat(cache.getMisses(), is(4L));
+
+        // cached schedules must work like freshly expanded keys
+
+        byte[] block0 = new byte[BlowfishECB.BLOCKSIZE];
+        byte[] block1 = new byte[BlowfishECB.BLOCKSIZE];
+        new BlowfishECB(key0, 0, key0.length).encrypt(block0, 0, block0, 0, block0.length);
+        new BlowfishECB(cache.get(key0, 0, key0.length)).encrypt(block1, 0, block1, 0, block1.length);
+        assertThat(block1, is(block0));
+
+        cache.clear();
+        assertThat(cache.size(), is(0));
+        assertThat(cache.getSegments(), is(1));
+
+        // segmented, looked up from several threads at once: the total stays
+        // bounded and every lookup gets counted
+
+        final BlowfishKeyScheduleCache cache2 = new BlowfishKeyScheduleCache(64, 4);
+        assertThat(cache2.getSegments(), is(4));
+
+        Thread[] threads = new Thread[4];
+        for (int nI = 0; nI < threads.length; nI++) {
+            threads[nI] = new Thread() {
+                @Override
+                public void run() {
+                    for (int nJ = 0; nJ < 200; nJ++) {
+                        byte[] key = {(byte) (nJ % 100), 1, 2};
+                        cache2.get(key, 0, key.length);
+                    }
+                }
+            };
+            threads[nI].start();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException ie) {
+                throw new RuntimeException(ie);
+            }
+        }
+
+        assertTrue(cache2.size() <= 64);
+        assertThat(cache2.getHits() + cache2.getMisses(), is(800L));
+
+        byte[] key1 = {99, 1, 2};
+        assertTrue(cache2.get(key1, 0, key1.length) == cache2.get(key1, 0, key1.length));
+    }
+
+    @Test
+    public void testRekey() {
+        byte[] key0 = {1, 2, 3, 4, 5};
+        byte[] key1 = {9, 8, 7};
+
+        byte[] plain = new byte[BlowfishECB.BLOCKSIZE * 4];
+        for (int nI = 0; nI < plain.length; nI++) {
+            plain[nI] = (byte) (nI * 7);
+        }
+
+        byte[] expected = new byte[plain.length];
+        new BlowfishECB(key1, 0, key1.length).encrypt(plain, 0, expected, 0, plain.length);
+
+        // rekeying in place must be the same as a fresh instance, also if
+        // the instance ran on a shared schedule before
+
+        byte[] cipher = new byte[plain.length];
+        BlowfishECB bfe = new BlowfishECB(key0, 0, key0.length);
+        bfe.initialize(key1, 0, key1.length);
+        bfe.encrypt(plain, 0, cipher, 0, plain.length);
+        assertThat(cipher, is(expected));
+
+        BlowfishKeySchedule ks = new BlowfishKeySchedule(key0, 0, key0.length);
+        int[] pbox = ks.getPbox();
+        bfe = new BlowfishECB(ks);
+        bfe.initialize(key1, 0, key1.length);
+        bfe.encrypt(plain, 0, cipher, 0, plain.length);
+        assertThat(cipher, is(expected));
+        assertThat(ks.getPbox(), is(pbox));
+
+        // (an empty key means the initial boxes)
+        bfe.initialize(key0, 0, 0);
+        assertThat(bfe.getPbox()[0], is(0x243f6a88));
+
+        BlowfishCBCPool pool = new BlowfishCBCPool(2);
+
+        BlowfishCBC bfc0 = pool.borrow(key0, 0, key0.length, 0x0102030405060708L);
+        BlowfishCBC bfc1 = pool.borrow(key0, 0, key0.length);
+        assertThat(pool.getCreated(), is(2L));
+        pool.release(bfc0);
+        pool.release(bfc1);
+        pool.release(new BlowfishCBC(key0, 0, key0.length));
+        assertThat(pool.size(), is(2));
+
+        // a second release must not put an instance into the pool twice
+
+        try {
+            pool.release(bfc1);
+            fail();
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+        assertThat(pool.size(), is(2));
+
+        byte[] cipherCBC = new byte[plain.length];
+        new BlowfishCBC(key1, 0, key1.length, 0x1122334455667788L)
+                .encrypt(plain, 0, cipherCBC, 0, plain.length);
+
+        BlowfishCBC bfc = pool.borrow(key1, 0, key1.length, 0x1122334455667788L);
+        assertThat(pool.getCreated(), is(2L));
+        assertThat(pool.size(), is(1));
+        bfc.encrypt(plain, 0, cipher, 0, plain.length);
+        assertThat(cipher, is(cipherCBC));
+
+        bfc.setCBCIV(0x1122334455667788L);
+        bfc.decrypt(cipher, 0, cipher, 0, cipher.length);
+        assertThat(cipher, is(plain));
+        pool.release(bfc);
+
+        pool.clear();
+        assertThat(pool.size(), is(0));
+    }
+
+    @Test
+    public void testKeyScheduleStore() {
+        // (3 slots per slab, so the schedules spread over several slabs)
+        BlowfishKeyScheduleStore store = new BlowfishKeyScheduleStore(3);
+
+        byte[] plain = new byte[BlowfishECB.BLOCKSIZE * 5 + 3];
+        for (int nI = 0; nI < plain.length; nI++) {
+            plain[nI] = (byte) (nI * 13);
+        }
+        byte[] expected = new byte[plain.length];
+        byte[] cipher = new byte[plain.length];
+
+        int[] slots = new int[8];
+        for (int nI = 0; nI < slots.length; nI++) {
+            byte[] key = {(byte) nI, 1, 2, 3};
+            slots[nI] = nI % 2 == 0
+                    ? store.put(key, 0, key.length)
+                    : store.put(new BlowfishKeySchedule(key, 0, key.length));
+            assertThat(slots[nI], is(nI));
+        }
+        assertThat(store.size(), is(slots.length));
+        assertThat(store.getAllocated(), is(3L * 3 * BlowfishKeyScheduleStore.SLOT_SIZE));
+
+        for (int nI = 0; nI < slots.length; nI++) {
+            byte[] key = {(byte) nI, 1, 2, 3};
+            int nLen = new BlowfishECB(key, 0, key.length).encrypt(plain, 0, expected, 0, plain.length);
+
+            BlowfishSlotECB bse = store.engine(slots[nI]);
+            assertThat(bse.encrypt(plain, 0, cipher, 0, plain.length), is(nLen));
+            assertThat(Arrays.copyOf(cipher, nLen), is(Arrays.copyOf(expected, nLen)));
+            assertThat(bse.decrypt(cipher, 0, cipher, 0, nLen), is(nLen));
+            assertThat(Arrays.copyOf(cipher, nLen), is(Arrays.copyOf(plain, nLen)));
+
+            assertThat(store.get(slots[nI]).getPbox(),
+                    is(new BlowfishKeySchedule(key, 0, key.length).getPbox()));
+        }
+
+        // removed slots get wiped and reused, their engines stop working
+
+        BlowfishSlotECB bse4 = store.engine(slots[4]);
+        BlowfishSlotECB bse5 = store.engine(slots[5]);
+        store.remove(slots[4]);
+        assertThat(store.size(), is(slots.length - 1));
+        try {
+            store.engine(slots[4]);
+            fail();
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+        byte[] key = {42};
+        assertThat(store.put(key, 0, key.length), is(slots[4]));
+
+        assertFalse(bse4.isValid());
+        try {
+            bse4.encrypt(plain, 0, cipher, 0, plain.length);
+            fail();
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+        assertTrue(bse5.isValid());
+        assertTrue(store.engine(slots[4]).isValid());
+
+        store.clear();
+        assertThat(store.size(), is(0));
+        try {
+            bse5.decrypt(cipher, 0, cipher, 0, plain.length);
+            fail();
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+        try {
+            store.get(slots[0]);
+            fail();
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testExpandAll() throws Exception {
+        byte[][] keys = new byte[40][];
+        for (int nI = 0; nI < keys.length; nI++) {
+            keys[nI] = new byte[]{(byte) nI, 3, (byte) (nI * 11), 9, 1};
+        }
+
+        ExecutorService exec = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<BlowfishKeySchedule>> schedules = BlowfishKeySchedule.expandAll(keys, exec);
+            List<Future<BlowfishKeySchedule>> pooled = BlowfishKeySchedule.expandAll(keys);
+
+            // (the keys got copied)
+            byte[] key5 = keys[5].clone();
+            Arrays.fill(keys[5], (byte) 0);
+
+            assertThat(schedules.size(), is(keys.length));
+            for (int nI = 0; nI < keys.length; nI++) {
+                byte[] key = nI == 5 ? key5 : keys[nI];
+                BlowfishKeySchedule ks = new BlowfishKeySchedule(key, 0, key.length);
+                assertThat(schedules.get(nI).get().getPbox(), is(ks.getPbox()));
+                assertThat(schedules.get(nI).get().getSbox4(), is(ks.getSbox4()));
+                assertThat(pooled.get(nI).get().getSbox2(), is(ks.getSbox2()));
+            }
+        } finally {
+            exec.shutdown();
+        }
+
+        assertTrue(BlowfishKeySchedule.expandAll(new byte[0][]).isEmpty());
+    }
+
+    @Test
+    public void testKeyScheduleExport() {
+        byte[] key = {0x01, 0x02, 0x03, (byte) 0xaa, (byte) 0xee, (byte) 0xff};
+
+        BlowfishCBC bfc = new BlowfishCBC(key, 0, key.length, 42L);
+
+        byte[] data = BlowfishKeySchedule.copyOf(bfc).toByteArray();
+        assertThat(data.length, is(BlowfishKeySchedule.SERIALIZED_SIZE));
+
+        // restore from a (direct) buffer holding several schedules
+
+        ByteBuffer buf = ByteBuffer.allocateDirect(BlowfishKeySchedule.SERIALIZED_SIZE * 2);
+        new BlowfishKeySchedule(new byte[]{7}, 0, 1).writeTo(buf);
+        BlowfishKeySchedule.fromByteArray(data, 0).writeTo(buf);
+        buf.flip();
+        BlowfishKeySchedule.readFrom(buf);
+        BlowfishKeySchedule ks = BlowfishKeySchedule.readFrom(buf);
+        assertThat(buf.remaining(), is(0));
+
+        assertThat(ks.getPbox(), is(bfc.getPbox()));
+        assertThat(ks.getSbox4(), is(bfc.getSbox4()));
+
+        byte[] plain = new byte[64];
+        byte[] cipher = new byte[64];
+        byte[] cipherRef = new byte[64];
+        bfc.encrypt(plain, 0, cipherRef, 0, plain.length);
+        new BlowfishCBC(ks, 42L).encrypt(plain, 0, cipher, 0, plain.length);
+        assertThat(cipher, is(cipherRef));
+
+        // every single bit flip must be detected
+
+        for (int nI = 0; nI < data.length; nI++) {
+            data[nI] ^= 0x10;
+            try {
+                BlowfishKeySchedule.fromByteArray(data, 0);
+                fail("corruption at " + nI + " not detected");
+            } catch (IllegalArgumentException iae) {
+                // expected
+            }
+            data[nI] ^= 0x10;
+        }
+
+        try {
+            BlowfishKeySchedule.fromByteArray(data, 1);
+            fail();
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+
+        // a short buffer gets rejected without consuming anything
+
+        buf = ByteBuffer.wrap(data, 1, data.length - 1);
+        try {
+            BlowfishKeySchedule.readFrom(buf);
+            fail();
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+        assertThat(buf.position(), is(1));
+    }
+
     @Test
     public void testWeakKey() {
 
@@ -204,6 +1130,185 @@ public class BlowfishTest {
         assertFalse(bfe.weakKeyCheck());
     }
 
+    @Test
+    public void testWeakKeyBatch() {
+        byte[][] keys = new byte[100][];
+        for (int nI = 0; nI < keys.length; nI++) {
+            keys[nI] = new byte[]{(byte) nI, (byte) (nI * 3), 0x5a, (byte) (nI >> 2)};
+        }
+        keys[42] = KNOWN_WEAK_KEY.clone();
+        keys[77] = KNOWN_WEAK_KEY.clone();
+
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            boolean[] weak = BlowfishECB.weakKeyCheck(keys, pool);
+            assertThat(weak, is(BlowfishECB.weakKeyCheck(keys)));
+
+            for (int nI = 0; nI < keys.length; nI++) {
+                assertThat(weak[nI], is(nI == 42 || nI == 77));
+
+                // the sorting check must agree with comparing all the pairs
+                BlowfishKeySchedule ks = new BlowfishKeySchedule(keys[nI], 0, keys[nI].length);
+                assertThat(ks.isWeak(), is(weak[nI]));
+                assertThat(hasTwinsPairwise(ks), is(weak[nI]));
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertThat(BlowfishECB.weakKeyCheck(new byte[0][]).length, is(0));
+    }
+
+    private static boolean hasTwinsPairwise(
+            BlowfishKeySchedule ks) {
+        int[][] sboxes = {ks.getSbox1(), ks.getSbox2(), ks.getSbox3(), ks.getSbox4()};
+        for (int[] sbox : sboxes) {
+            for (int nI = 0; nI < sbox.length - 1; nI++) {
+                for (int nJ = nI + 1; nJ < sbox.length; nJ++) {
+                    if (sbox[nI] == sbox[nJ]) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testBCrypt() {
+        // (vectors of the OpenBSD implementation, as shipped with jBCrypt)
+        String[][] vectors = {
+                {"", "$2a$06$DCq7YPn5Rq63x1Lad4cll.TV4S6ytwfsfvkgY8jIucDrjc8deX1s."},
+                {"a", "$2a$06$m0CrhHm10qJ3lXRY.5zDGO3rS2KdeeWLuGmsfGlMfOxih58VYVfxe"},
+                {"abc", "$2a$06$If6bvum7DFjUnE9p2uDeDu0YHzrHM6tf.iqN8.yx.jNN1ILEf7h0i"},
+                {"abcdefghijklmnopqrstuvwxyz",
+                        "$2a$06$.rCVZVOThsIa97pEDOxvGuRRgzG64bvtJ0938xuqzv18d3ZpQhstC"},
+                {"~!@#$%^&*()      ~!@#$%^&*()PNBFRD",
+                        "$2a$06$fPIsBO8qRqkjj273rfaOI.HtSV9jLDpTbZn782DC6/t7qT67P6FfO"}
+        };
+
+        String[] passwords = new String[vectors.length * 2];
+        String[] hashes = new String[passwords.length];
+
+        for (int nI = 0; nI < vectors.length; nI++) {
+            assertThat(BCrypt.hash(vectors[nI][0], vectors[nI][1]), is(vectors[nI][1]));
+            assertTrue(BCrypt.verify(vectors[nI][0], vectors[nI][1]));
+            assertFalse(BCrypt.verify(vectors[nI][0] + "x", vectors[nI][1]));
+
+            passwords[nI * 2] = vectors[nI][0];
+            hashes[nI * 2] = vectors[nI][1];
+            passwords[nI * 2 + 1] = vectors[nI][0] + "!";
+            hashes[nI * 2 + 1] = vectors[nI][1];
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            boolean[] ok = BCrypt.verify(passwords, hashes, pool);
+            for (int nI = 0; nI < ok.length; nI++) {
+                assertThat(ok[nI], is(nI % 2 == 0));
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        String hash = BCrypt.hash("secret", BCrypt.MIN_COST);
+        assertTrue(hash.startsWith("$2b$04$"));
+        assertThat(hash.length(), is(60));
+        assertTrue(BCrypt.verify("secret", hash));
+        assertFalse(BCrypt.verify("Secret", hash));
+        assertThat(BCrypt.hash("secret", hash), is(hash));
+        assertThat(BCrypt.hash("secret", BCrypt.MIN_COST), is(not(hash)));
+
+        // only the first 72 bytes count
+        char[] longPassword = new char[80];
+        Arrays.fill(longPassword, 'x');
+        String longHash = BCrypt.hash(new String(longPassword), BCrypt.MIN_COST);
+        assertTrue(BCrypt.verify(new String(longPassword, 0, 72), longHash));
+
+        String[] invalid = {"", "$2c$06$DCq7YPn5Rq63x1Lad4cll.", "$2a$03$DCq7YPn5Rq63x1Lad4cll.",
+                "$2a$0x$DCq7YPn5Rq63x1Lad4cll.", "$2a$06$DCq7YPn5Rq63x1Lad4cl!."};
+        for (String salt : invalid) {
+            try {
+                BCrypt.hash("secret", salt);
+                fail();
+            } catch (IllegalArgumentException iae) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testLazyKeySetup() throws Exception {
+        byte[] key0 = {1, 2, 3, 4, 5, 6};
+        byte[] key1 = {7, 7, 7};
+
+        final byte[] plain = new byte[BlowfishECB.BLOCKSIZE * 9];
+        for (int nI = 0; nI < plain.length; nI++) {
+            plain[nI] = (byte) (nI * 5);
+        }
+
+        final byte[] expected = new byte[plain.length];
+        new BlowfishECB(key0, 0, key0.length).encrypt(plain, 0, expected, 0, plain.length);
+
+        // (the key gets copied, so changing it afterwards must not matter)
+        byte[] keyCopy = key0.clone();
+        BlowfishECB bfe = new BlowfishECB(keyCopy, 0, keyCopy.length, true);
+        Arrays.fill(keyCopy, (byte) 0);
+        byte[] cipher = new byte[plain.length];
+        bfe.encrypt(plain, 0, cipher, 0, plain.length);
+        assertThat(cipher, is(expected));
+
+        // the getters are entry points, too
+
+        bfe = new BlowfishECB(key0, 0, key0.length, true);
+        assertThat(bfe.getPbox(), is(new BlowfishECB(key0, 0, key0.length).getPbox()));
+        assertFalse(new BlowfishECB(key0, 0, key0.length, true).weakKeyCheck());
+
+        // a pending key gets replaced by initialize() and dropped by cleanUp()
+
+        bfe = new BlowfishECB(key1, 0, key1.length, true);
+        bfe.initialize(key0, 0, key0.length);
+        bfe.encrypt(plain, 0, cipher, 0, plain.length);
+        assertThat(cipher, is(expected));
+
+        bfe = new BlowfishECB(key0, 0, key0.length, true);
+        bfe.cleanUp();
+        assertThat(bfe.getPbox()[0], is(0));
+
+        // lots of threads racing for the first use of one instance
+
+        final BlowfishECB shared = new BlowfishECB(key0, 0, key0.length, true);
+        ExecutorService exec = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<byte[]>> results = new ArrayList<Future<byte[]>>();
+            for (int nI = 0; nI < 32; nI++) {
+                results.add(exec.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() {
+                        byte[] out = new byte[plain.length];
+                        shared.encrypt(plain, 0, out, 0, plain.length);
+                        return out;
+                    }
+                }));
+            }
+            for (Future<byte[]> result : results) {
+                assertThat(result.get(), is(expected));
+            }
+        } finally {
+            exec.shutdown();
+        }
+
+        BlowfishCBC bfc = new BlowfishCBC(key1, 0, key1.length, 0x1234L, true);
+        byte[] cipherCBC = new byte[plain.length];
+        new BlowfishCBC(key1, 0, key1.length, 0x1234L).encrypt(plain, 0, cipherCBC, 0, plain.length);
+        bfc.encrypt(plain, 0, cipher, 0, plain.length);
+        assertThat(cipher, is(cipherCBC));
+
+        BlowfishEasy bfes = new BlowfishEasy(true, "secret".toCharArray());
+        assertThat(new BlowfishEasy("secret".toCharArray()).decryptString(bfes.encryptString("lazy")),
+                is("lazy"));
+    }
+
     @Test
     public void testBlowfishEasy() {
         StringBuilder sbuf = new StringBuilder();
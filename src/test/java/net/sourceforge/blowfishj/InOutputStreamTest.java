@@ -17,17 +17,22 @@
 package net.sourceforge.blowfishj;
 
 import net.sourceforge.blowfishj.crypt.BlowfishECB;
+import net.sourceforge.blowfishj.crypt.BlowfishKeyScheduleCache;
 import net.sourceforge.blowfishj.streams.BlowfishInputStream;
 import net.sourceforge.blowfishj.streams.BlowfishOutputStream;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Simple tests for the BlowfishInputStream and BlowfishOutputStream.
@@ -127,4 +132,257 @@ public class InOutputStreamTest {
             assertTrue(bfis.read() == -1);
         }
     }
+
+    @Test
+    public void testBulkRead() throws IOException {
+        byte[] key = {1, 2, 3, 4, 5};
+
+        for (int SIZE : SIZES) {
+            byte[] plain = new byte[SIZE];
+            for (int nI = 0; nI < plain.length; nI++) {
+                plain[nI] = (byte) (nI * 7);
+            }
+
+            byte[] enc = encryptStream(key, plain);
+
+            // different chunk sizes, the smallest possible buffer and a
+            // source which returns one byte per call
+
+            for (int nChunk : new int[]{1, 7, 8, 100, 4096, 100000}) {
+                try (BlowfishInputStream bfis = new BlowfishInputStream(key, 0, key.length,
+                        new ByteArrayInputStream(enc), 16)) {
+                    assertThat(readChunked(bfis, nChunk), is(plain));
+                }
+
+                try (BlowfishInputStream bfis = new BlowfishInputStream(key, 0, key.length,
+                        new OneByteInputStream(new ByteArrayInputStream(enc)))) {
+                    assertThat(readChunked(bfis, nChunk), is(plain));
+                }
+            }
+
+            try (BlowfishInputStream bfis = new BlowfishInputStream(key, 0, key.length,
+                    new ByteArrayInputStream(enc))) {
+                assertThat(bfis.readAllBytes(), is(plain));
+                assertThat(bfis.read(), is(-1));
+            }
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (BlowfishInputStream bfis = new BlowfishInputStream(key, 0, key.length,
+                    new ByteArrayInputStream(enc))) {
+                assertThat(bfis.transferTo(baos), is((long) SIZE));
+            }
+            assertThat(baos.toByteArray(), is(plain));
+        }
+    }
+
+    @Test
+    public void testTruncatedStream() throws IOException {
+        byte[] key = {1, 2, 3, 4, 5};
+        byte[] enc = encryptStream(key, new byte[100]);
+
+        // (cuts at a block border can't be detected without a MAC, unless the
+        // IV or the padding block is missing)
+
+        for (int nLen = 0; nLen < enc.length; nLen++) {
+            if (nLen % BlowfishECB.BLOCKSIZE == 0 && nLen > BlowfishECB.BLOCKSIZE) {
+                continue;
+            }
+
+            byte[] truncated = Arrays.copyOf(enc, nLen);
+
+            try (BlowfishInputStream bfis = new BlowfishInputStream(key, 0, key.length,
+                    new ByteArrayInputStream(truncated))) {
+                bfis.readAllBytes();
+                fail("truncation at " + nLen + " not detected");
+            } catch (IOException ie) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testBulkWrite() throws IOException {
+        byte[] key = {1, 2, 3, 4, 5};
+
+        byte[] plain = new byte[70001];
+        for (int nI = 0; nI < plain.length; nI++) {
+            plain[nI] = (byte) (nI * 13);
+        }
+
+        // mix of single bytes and chunks of all sizes, with buffers from
+        // one block on
+
+        for (int nBufSize : new int[]{8, 15, 64, 8192}) {
+            for (int nChunk : new int[]{1, 3, 8, 9, 1000, 65536}) {
+                ChunkRecorder rec = new ChunkRecorder();
+
+                try (BlowfishOutputStream bfos = new BlowfishOutputStream(key, 0, key.length, rec, nBufSize)) {
+                    int nPos = 0;
+                    boolean blSingle = false;
+                    while (nPos < plain.length) {
+                        if (blSingle) {
+                            bfos.write(plain[nPos]);
+                            nPos++;
+                        } else {
+                            int nLen = Math.min(nChunk, plain.length - nPos);
+                            bfos.write(plain, nPos, nLen);
+                            nPos += nLen;
+                        }
+                        blSingle = !blSingle;
+                    }
+                }
+
+                byte[] enc = rec.toByteArray();
+
+                assertThat(enc.length, is(plain.length - plain.length % BlowfishECB.BLOCKSIZE +
+                        BlowfishECB.BLOCKSIZE * 2));
+                assertTrue(rec.m_nMaxChunk <= Math.max(nBufSize - nBufSize % BlowfishECB.BLOCKSIZE,
+                        BlowfishECB.BLOCKSIZE));
+
+                try (BlowfishInputStream bfis = new BlowfishInputStream(key, 0, key.length,
+                        new ByteArrayInputStream(enc))) {
+                    assertThat(bfis.readAllBytes(), is(plain));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFlush() throws IOException {
+        byte[] key = {1, 2, 3, 4, 5};
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        try (BlowfishOutputStream bfos = new BlowfishOutputStream(key, 0, key.length, baos)) {
+            bfos.write(new byte[21]);
+            bfos.flush();
+
+            // IV plus the two complete blocks, the partial one has to wait
+            assertThat(baos.size(), is(BlowfishECB.BLOCKSIZE * 3));
+        }
+
+        assertThat(baos.size(), is(BlowfishECB.BLOCKSIZE * 4));
+    }
+
+    @Test
+    public void testKeyScheduleCache() throws IOException {
+        BlowfishKeyScheduleCache cache = new BlowfishKeyScheduleCache(10);
+
+        byte[] key = {1, 2, 3, 4, 5};
+        byte[] plain = new byte[1000];
+        for (int nI = 0; nI < plain.length; nI++) {
+            plain[nI] = (byte) nI;
+        }
+
+        for (int nI = 0; nI < 3; nI++) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+            try (BlowfishOutputStream bfos = new BlowfishOutputStream(key, 0, key.length, baos,
+                    BlowfishOutputStream.DEFAULT_BUFFER_SIZE, cache)) {
+                bfos.write(plain);
+            }
+
+            // (also readable without the cache)
+            try (BlowfishInputStream bfis = new BlowfishInputStream(key, 0, key.length,
+                    new ByteArrayInputStream(baos.toByteArray()))) {
+                assertThat(bfis.readAllBytes(), is(plain));
+            }
+
+            try (BlowfishInputStream bfis = new BlowfishInputStream(key, 0, key.length,
+                    new ByteArrayInputStream(baos.toByteArray()),
+                    BlowfishInputStream.DEFAULT_BUFFER_SIZE, cache)) {
+                assertThat(bfis.readAllBytes(), is(plain));
+            }
+        }
+
+        assertThat(cache.getMisses(), is(1L));
+        assertThat(cache.getHits(), is(5L));
+    }
+
+    @Test
+    public void testLazyKeySetup() throws IOException {
+        byte[] key = {9, 8, 7, 6};
+        byte[] plain = new byte[777];
+        for (int nI = 0; nI < plain.length; nI++) {
+            plain[nI] = (byte) (nI * 3);
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        try (BlowfishOutputStream bfos = new BlowfishOutputStream(key, 0, key.length, baos,
+                BlowfishOutputStream.DEFAULT_BUFFER_SIZE, true)) {
+            // (the IV is there already)
+            assertThat(baos.size(), is(BlowfishECB.BLOCKSIZE));
+            bfos.write(plain);
+        }
+
+        try (BlowfishInputStream bfis = new BlowfishInputStream(key, 0, key.length,
+                new ByteArrayInputStream(baos.toByteArray()))) {
+            assertThat(bfis.readAllBytes(), is(plain));
+        }
+
+        try (BlowfishInputStream bfis = new BlowfishInputStream(key, 0, key.length,
+                new ByteArrayInputStream(baos.toByteArray()),
+                BlowfishInputStream.DEFAULT_BUFFER_SIZE, true)) {
+            assertThat(bfis.readAllBytes(), is(plain));
+        }
+
+        // (closing without any data must work as well)
+        new BlowfishInputStream(key, 0, key.length,
+                new ByteArrayInputStream(baos.toByteArray()),
+                BlowfishInputStream.DEFAULT_BUFFER_SIZE, true).close();
+    }
+
+    private static byte[] encryptStream(
+            byte[] key,
+            byte[] plain) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        try (BlowfishOutputStream bfos = new BlowfishOutputStream(key, 0, key.length, baos)) {
+            bfos.write(plain);
+        }
+        return baos.toByteArray();
+    }
+
+    private static byte[] readChunked(
+            InputStream is,
+            int nChunk) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] chunk = new byte[nChunk];
+
+        int nRead;
+        while ((nRead = is.read(chunk, 0, nChunk)) != -1) {
+            baos.write(chunk, 0, nRead);
+        }
+        return baos.toByteArray();
+    }
+
+    // (simulates a slow source, e.g. a network connection)
+    private static class OneByteInputStream extends FilterInputStream {
+        OneByteInputStream(InputStream is) {
+            super(is);
+        }
+
+        @Override
+        public int read(
+                byte[] buf,
+                int nOfs,
+                int nLen) throws IOException {
+            return super.read(buf, nOfs, Math.min(nLen, 1));
+        }
+    }
+
+    // (keeps track of the largest chunk written)
+    private static class ChunkRecorder extends ByteArrayOutputStream {
+        int m_nMaxChunk;
+
+        @Override
+        public synchronized void write(
+                byte[] buf,
+                int nOfs,
+                int nLen) {
+            m_nMaxChunk = Math.max(m_nMaxChunk, nLen);
+            super.write(buf, nOfs, nLen);
+        }
+    }
 }
@@ -17,6 +17,8 @@
 package net.sourceforge.blowfishj;
 
 import net.sourceforge.blowfishj.crypt.BlowfishECB;
+import net.sourceforge.blowfishj.crypt.BlowfishFlatECB;
+import net.sourceforge.blowfishj.crypt.BlowfishKeySchedule;
 import org.junit.Test;
 
 import static org.hamcrest.CoreMatchers.is;
@@ -69,8 +71,18 @@ public class VectorsTest {
 
     @Test
     public void testAllVectors() {
+        checkVectors(false);
+    }
+
+    // (the same vectors with the packed s-box variant, both ways)
 
+    @Test
+    public void testFlatVectors() {
+        checkVectors(true);
+    }
 
+    private static void checkVectors(
+            boolean blFlat) {
         byte[] key = new byte[8];
         byte[] plain = new byte[8];
         byte[] cipher = new byte[8];
@@ -96,13 +108,25 @@ public class VectorsTest {
                 lCipher >>>= 8;
             }
 
-            BlowfishECB bfecb = new BlowfishECB(key, 0, key.length);
+            BlowfishECB bfecb = blFlat ?
+                    new BlowfishFlatECB(key, 0, key.length) :
+                    new BlowfishECB(key, 0, key.length);
 
             bfecb.encrypt(plain, 0, testBuf, 0, plain.length);
 
             for (nJ = 0; nJ < 8; nJ++) {
                 assertThat(testBuf[nJ], is(cipher[nJ]));
             }
+
+            if (blFlat) {
+                bfecb = new BlowfishFlatECB(new BlowfishKeySchedule(key, 0, key.length));
+
+                bfecb.decrypt(cipher, 0, testBuf, 0, cipher.length);
+
+                for (nJ = 0; nJ < 8; nJ++) {
+                    assertThat(testBuf[nJ], is(plain[nJ]));
+                }
+            }
         }
     }
 }
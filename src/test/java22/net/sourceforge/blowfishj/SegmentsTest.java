@@ -0,0 +1,117 @@
+/*
+ * Copyright 1997-2005 Markus Hahn 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sourceforge.blowfishj;
+
+import net.sourceforge.blowfishj.crypt.BlowfishCBC;
+import net.sourceforge.blowfishj.crypt.BlowfishECB;
+import net.sourceforge.blowfishj.crypt.BlowfishSegments;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for BlowfishSegments, which only exists on Java 22+ (so this test
+ * does, too).
+ */
+public class SegmentsTest {
+    private static final byte[] KEY = {1, 2, 3, 4, 5, 6, 7};
+    private static final long IV = 0x0f1e2d3c4b5a6978L;
+
+    @Test
+    public void testSegments() {
+        byte[] plain = new byte[BlowfishECB.BLOCKSIZE * 100 + 5];
+        for (int nI = 0; nI < plain.length; nI++) {
+            plain[nI] = (byte) (nI * 31);
+        }
+        int nLen = plain.length - plain.length % BlowfishECB.BLOCKSIZE;
+
+        byte[] cipherECB = plain.clone();
+        new BlowfishECB(KEY, 0, KEY.length).encrypt(cipherECB, 0, cipherECB, 0, nLen);
+        byte[] cipherCBC = plain.clone();
+        new BlowfishCBC(KEY, 0, KEY.length, IV).encrypt(cipherCBC, 0, cipherCBC, 0, nLen);
+
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment seg = arena.allocate(plain.length);
+            MemorySegment.copy(plain, 0, seg, ValueLayout.JAVA_BYTE, 0, plain.length);
+
+            // ECB in place, the trailing bytes stay untouched
+
+            BlowfishECB bfe = new BlowfishECB(KEY, 0, KEY.length);
+            assertThat(BlowfishSegments.encrypt(bfe, seg), is((long) nLen));
+            assertThat(seg.toArray(ValueLayout.JAVA_BYTE), is(cipherECB));
+            assertThat(BlowfishSegments.decrypt(bfe, seg), is((long) nLen));
+            assertThat(seg.toArray(ValueLayout.JAVA_BYTE), is(plain));
+
+            // CBC into another segment, the IV carries on across calls
+
+            MemorySegment dst = arena.allocate(plain.length);
+            BlowfishCBC bfc = new BlowfishCBC(KEY, 0, KEY.length, IV);
+            long lHalf = nLen / 2 - nLen / 2 % BlowfishECB.BLOCKSIZE;
+            BlowfishSegments.encrypt(bfc, seg.asSlice(0, lHalf), dst.asSlice(0, lHalf));
+            BlowfishSegments.encrypt(bfc, seg.asSlice(lHalf), dst.asSlice(lHalf));
+            assertThat(Arrays.copyOf(dst.toArray(ValueLayout.JAVA_BYTE), nLen),
+                    is(Arrays.copyOf(cipherCBC, nLen)));
+
+            bfc.setCBCIV(IV);
+            assertThat(BlowfishSegments.decrypt(bfc, dst), is((long) nLen));
+            assertThat(Arrays.copyOf(dst.toArray(ValueLayout.JAVA_BYTE), nLen),
+                    is(Arrays.copyOf(plain, nLen)));
+
+            // (only what fits into both)
+            assertThat(BlowfishSegments.encrypt(bfe, seg, dst.asSlice(0, 20)), is(16L));
+        }
+    }
+
+    @Test
+    public void testMappedFile() throws IOException {
+        byte[] plain = new byte[65536];
+        for (int nI = 0; nI < plain.length; nI++) {
+            plain[nI] = (byte) (nI ^ nI >> 8);
+        }
+
+        byte[] cipher = plain.clone();
+        new BlowfishCBC(KEY, 0, KEY.length, IV).encrypt(cipher, 0, cipher, 0, cipher.length);
+
+        File file = File.createTempFile("blowfishj", ".bin");
+        try {
+            Files.write(file.toPath(), plain);
+
+            try (FileChannel fc = FileChannel.open(file.toPath(),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+                 Arena arena = Arena.ofConfined()) {
+                MemorySegment seg = fc.map(FileChannel.MapMode.READ_WRITE, 0, fc.size(), arena);
+                BlowfishSegments.encrypt(new BlowfishCBC(KEY, 0, KEY.length, IV), seg);
+                seg.force();
+            }
+
+            assertThat(Files.readAllBytes(file.toPath()), is(cipher));
+        } finally {
+            file.delete();
+        }
+    }
+}